@@ -0,0 +1,113 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package myfirstmodule.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import com.mendix.core.Core;
+import myfirstmodule.pdf.OrgChartBatchRenderer;
+import myfirstmodule.pdf.OrgChartJob;
+import myfirstmodule.pdf.RenderPipe;
+import myfirstmodule.pdf.mendix.MendixEngine;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PDFBatchRenderer extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String JobsJSON;
+	private java.lang.Long maxThreads;
+	private IMendixObject __OutputZip;
+	private system.proxies.FileDocument OutputZip;
+
+	public PDFBatchRenderer(IContext context, java.lang.String JobsJSON, java.lang.Long maxThreads, IMendixObject OutputZip)
+	{
+		super(context);
+		this.JobsJSON = JobsJSON;
+		this.maxThreads = maxThreads;
+		this.__OutputZip = OutputZip;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		this.OutputZip = this.__OutputZip == null ? null : system.proxies.FileDocument.initialize(getContext(), __OutputZip);
+
+		// BEGIN USER CODE
+		try {
+			MendixEngine.get();
+			List<OrgChartJob> jobs = OrgChartJob.listFromJson(this.JobsJSON);
+			if (jobs.isEmpty()) {
+				throw new IllegalArgumentException("At least one org chart job must be provided");
+			}
+			for (OrgChartJob job : jobs) {
+				job.applyDefaultLabels();
+			}
+
+			Core.getLogger("PDFBatchRenderer").info("Starting batch PDF generation for " + jobs.size() + " org charts...");
+
+			int threads = this.maxThreads != null ? this.maxThreads.intValue() : 0;
+			List<IMendixObject> documents = new ArrayList<>();
+			OrgChartBatchRenderer.BatchResult result;
+
+			OrgChartBatchRenderer batch = new OrgChartBatchRenderer(threads);
+			if (this.OutputZip != null) {
+				// One streamed ZIP archive holding every PDF
+				String zipName = (this.OutputZip.getName() != null && !this.OutputZip.getName().trim().isEmpty()) ? this.OutputZip.getName() : "OrgCharts.zip";
+				OrgChartBatchRenderer.BatchResult[] zipResult = new OrgChartBatchRenderer.BatchResult[1];
+				RenderPipe pipe = new RenderPipe(out -> zipResult[0] = batch.renderZip(jobs, out), "PDFBatchRenderer-zip");
+				try {
+					Core.storeFileDocumentContent(getContext(), this.__OutputZip, zipName, pipe);
+				} catch (Exception | Error e) {
+					pipe.close();
+					pipe.await(e);
+					throw e;
+				}
+				pipe.close();
+				pipe.await();
+				result = zipResult[0];
+				documents.add(this.__OutputZip);
+			} else {
+				// One FileDocument per org chart, created on this thread as results come in
+				result = batch.renderEach(jobs, (job, fileName, pdf) -> {
+					IMendixObject document = Core.instantiate(getContext(), system.proxies.FileDocument.entityName);
+					Core.storeFileDocumentContent(getContext(), document, fileName, new ByteArrayInputStream(pdf));
+					documents.add(document);
+				});
+			}
+
+			if (!result.getFailures().isEmpty()) {
+				Core.getLogger("PDFBatchRenderer").warn(result.getFailures().size() + " org charts failed: " + result.getFailures());
+			}
+			Core.getLogger("PDFBatchRenderer").info("Batch PDF generation finished: " + result.getRendered() + " of " + jobs.size() + " org charts rendered");
+
+			return documents;
+
+		} catch (Exception e) {
+			Core.getLogger("PDFBatchRenderer").error("Error generating PDF batch: " + e.getMessage(), e);
+			throw new com.mendix.systemwideinterfaces.MendixRuntimeException("Failed to generate PDF batch: " + e.getMessage(), e);
+		}
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "PDFBatchRenderer";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
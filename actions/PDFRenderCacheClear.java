@@ -0,0 +1,51 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package myfirstmodule.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import com.mendix.core.Core;
+import myfirstmodule.pdf.RenderCache;
+import myfirstmodule.pdf.mendix.MendixEngine;
+
+public class PDFRenderCacheClear extends CustomJavaAction<java.lang.String>
+{
+	public PDFRenderCacheClear(IContext context)
+	{
+		super(context);
+	}
+
+	@java.lang.Override
+	public java.lang.String executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		// Empties the render cache (memory and disk) and returns its statistics from before
+		MendixEngine.get();
+		RenderCache cache = RenderCache.getInstance();
+		String stats = cache.getStats().toString();
+		cache.invalidateAll();
+		Core.getLogger("PDFRenderCacheClear").info("Render cache cleared; it had " + stats);
+		return stats;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "PDFRenderCacheClear";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
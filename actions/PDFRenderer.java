@@ -12,9 +12,17 @@ package myfirstmodule.actions;
 import com.mendix.systemwideinterfaces.core.IContext;
 import com.mendix.webui.CustomJavaAction;
 import com.mendix.core.Core;
+import myfirstmodule.pdf.OrgChartEngine;
+import myfirstmodule.pdf.OrgChartJob;
 import myfirstmodule.pdf.Position;
-import myfirstmodule.pdf.OrgChartParser;
-import myfirstmodule.pdf.OrgChartRenderer;
+import myfirstmodule.pdf.RenderCache;
+import myfirstmodule.pdf.RenderExecutor;
+import myfirstmodule.pdf.RenderProfile;
+import myfirstmodule.pdf.RenderWorkerPool;
+import myfirstmodule.pdf.mendix.MendixEngine;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class PDFRenderer extends CustomJavaAction<java.lang.String>
@@ -33,8 +41,10 @@ public class PDFRenderer extends CustomJavaAction<java.lang.String>
 	private java.lang.String docDateEN;
 	private java.lang.String lastUpdateEN;
 	private java.lang.String imageUrlEN;
+	private java.lang.String rootHierarchyCode;
+	private java.lang.Long maxDepth;
 
-	public PDFRenderer(IContext context, java.lang.String OrgJSON_TR, java.lang.String OrgJSON_EN, java.lang.String titleTR, java.lang.String totalNormLabelTR, java.lang.String preparedByTR, java.lang.String docDateTR, java.lang.String lastUpdateTR, java.lang.String imageUrlTR, java.lang.String titleEN, java.lang.String totalNormLabelEN, java.lang.String preparedByEN, java.lang.String docDateEN, java.lang.String lastUpdateEN, java.lang.String imageUrlEN)
+	public PDFRenderer(IContext context, java.lang.String OrgJSON_TR, java.lang.String OrgJSON_EN, java.lang.String titleTR, java.lang.String totalNormLabelTR, java.lang.String preparedByTR, java.lang.String docDateTR, java.lang.String lastUpdateTR, java.lang.String imageUrlTR, java.lang.String titleEN, java.lang.String totalNormLabelEN, java.lang.String preparedByEN, java.lang.String docDateEN, java.lang.String lastUpdateEN, java.lang.String imageUrlEN, java.lang.String rootHierarchyCode, java.lang.Long maxDepth)
 	{
 		super(context);
 		this.OrgJSON_TR = OrgJSON_TR;
@@ -51,6 +61,8 @@ public class PDFRenderer extends CustomJavaAction<java.lang.String>
 		this.docDateEN = docDateEN;
 		this.lastUpdateEN = lastUpdateEN;
 		this.imageUrlEN = imageUrlEN;
+		this.rootHierarchyCode = rootHierarchyCode;
+		this.maxDepth = maxDepth;
 	}
 
 	@java.lang.Override
@@ -58,6 +70,7 @@ public class PDFRenderer extends CustomJavaAction<java.lang.String>
 	{
 		// BEGIN USER CODE
 		try {
+			OrgChartEngine engine = MendixEngine.get();
 			Core.getLogger("PDFRenderer").info("Starting PDF generation with provided JSON data...");
 			
 			// Use parameters instead of dummy data
@@ -174,53 +187,69 @@ public class PDFRenderer extends CustomJavaAction<java.lang.String>
 		jsonEN = dummyJsonEN;
 			}
 			
-			// Parse JSON data
-			Position dataTR = null;
-			Position dataEN = null;
+			OrgChartJob job = new OrgChartJob();
+			job.setOrgJsonTR(jsonTR);
+			job.setOrgJsonEN(jsonEN);
+			job.setTitleTR(this.titleTR);
+			job.setTotalNormLabelTR(this.totalNormLabelTR);
+			job.setPreparedByTR(this.preparedByTR);
+			job.setDocDateTR(this.docDateTR);
+			job.setLastUpdateTR(this.lastUpdateTR);
+			job.setImageUrlTR(this.imageUrlTR);
+			job.setTitleEN(this.titleEN);
+			job.setTotalNormLabelEN(this.totalNormLabelEN);
+			job.setPreparedByEN(this.preparedByEN);
+			job.setDocDateEN(this.docDateEN);
+			job.setLastUpdateEN(this.lastUpdateEN);
+			job.setImageUrlEN(this.imageUrlEN);
+			job.setRootHierarchyCode(this.rootHierarchyCode);
+			job.setMaxDepth(this.maxDepth != null ? (int) Math.min(this.maxDepth, Integer.MAX_VALUE) : null);
+			job.applyDefaultLabels();
 			
-			if (jsonTR != null && !jsonTR.trim().isEmpty()) {
-				Core.getLogger("PDFRenderer").info("Parsing Turkish JSON data...");
-				dataTR = OrgChartParser.parse(jsonTR);
+			// The same inputs always give the same PDF, so repeats are served from the render cache
+			// without parsing anything
+			RenderCache cache = RenderCache.getInstance();
+			final String cacheKey = job.cacheKey();
+			byte[] cached = cache.get(cacheKey);
+			if (cached != null) {
+				Core.getLogger("PDFRenderer").info("PDF served from the render cache");
+				return Base64.getEncoder().encodeToString(cached);
 			}
 			
-			if (jsonEN != null && !jsonEN.trim().isEmpty()) {
-				Core.getLogger("PDFRenderer").info("Parsing English JSON data...");
-				dataEN = OrgChartParser.parse(jsonEN);
-			}
-			
-			if (dataTR == null && dataEN == null) {
-				throw new IllegalArgumentException("At least one of TR or EN JSON data must be provided");
-			}
-			
-			// Create renderer
-			OrgChartRenderer renderer = new OrgChartRenderer();
-			
-			// Use parameters from constructor (with fallback defaults if null/empty)
-			String titleTR = (this.titleTR != null && !this.titleTR.trim().isEmpty()) ? this.titleTR : "Organizasyon Semasi";
-			String totalNormLabelTR = (this.totalNormLabelTR != null && !this.totalNormLabelTR.trim().isEmpty()) ? this.totalNormLabelTR : "Toplam Norm:";
-			String preparedByTR = (this.preparedByTR != null && !this.preparedByTR.trim().isEmpty()) ? this.preparedByTR : "Hazirlayan: Organizasyon ve Surec Gelisim Mudurlugu";
-			String docDateTR = (this.docDateTR != null && !this.docDateTR.trim().isEmpty()) ? this.docDateTR : "Dokuman Tarihi: Kasim 2025";
-			String lastUpdateTR = (this.lastUpdateTR != null && !this.lastUpdateTR.trim().isEmpty()) ? this.lastUpdateTR : "Son Guncelleme: Kasim 2025";
-			String imageUrlTR = (this.imageUrlTR != null && !this.imageUrlTR.trim().isEmpty()) ? this.imageUrlTR : "https://fintechtime.com/wp-content/uploads/2019/04/GarantiBBVA-logo.jpg";
-			
-			String titleEN = (this.titleEN != null && !this.titleEN.trim().isEmpty()) ? this.titleEN : "Organization Chart";
-			String totalNormLabelEN = (this.totalNormLabelEN != null && !this.totalNormLabelEN.trim().isEmpty()) ? this.totalNormLabelEN : "Total Norm:";
-			String preparedByEN = (this.preparedByEN != null && !this.preparedByEN.trim().isEmpty()) ? this.preparedByEN : "Prepared by: Organization and Process Development Directorate";
-			String docDateEN = (this.docDateEN != null && !this.docDateEN.trim().isEmpty()) ? this.docDateEN : "Document Date: November 2025";
-			String lastUpdateEN = (this.lastUpdateEN != null && !this.lastUpdateEN.trim().isEmpty()) ? this.lastUpdateEN : "Last Update: November 2025";
-			String imageUrlEN = (this.imageUrlEN != null && !this.imageUrlEN.trim().isEmpty()) ? this.imageUrlEN : "https://fintechtime.com/wp-content/uploads/2019/04/GarantiBBVA-logo.jpg";
-			
-			// Render PDF (TR and/or EN pages)
-			byte[] pdfBytes = renderer.render(
-				dataTR, titleTR, totalNormLabelTR, preparedByTR, docDateTR, lastUpdateTR, imageUrlTR,
-				dataEN, titleEN, totalNormLabelEN, preparedByEN, docDateEN, lastUpdateEN, imageUrlEN
-			);
-			
-			// Convert to Base64
-			String base64Pdf = Base64.getEncoder().encodeToString(pdfBytes);
+			// Parse the JSON data and render the PDF (TR and/or EN pages) on a render executor thread,
+			// Base64-encoding while the document is written. Only the requested subtree and depth are
+			// kept. The executor caps how many renders run at once and rejects when saturated. With
+			// render workers configured the worker process parses and renders, and this JVM only
+			// receives the PDF.
+			final RenderProfile profile = new RenderProfile();
+			final RenderWorkerPool workers = RenderWorkerPool.getInstance();
+			String base64Pdf = RenderExecutor.getInstance().execute(() -> {
+				ByteArrayOutputStream base64Bytes = new ByteArrayOutputStream();
+				try (OutputStream base64Out = Base64.getEncoder().wrap(base64Bytes)) {
+					RenderCache.Recorder recorder = cache.record(cacheKey, base64Out);
+					try {
+						if (workers != null) {
+							workers.render(job, recorder);
+						} else {
+							Position dataTR = engine.parse(job.getOrgJsonTR(), job, profile);
+							Position dataEN = engine.parse(job.getOrgJsonEN(), job, profile);
+							engine.render(job, dataTR, dataEN, profile, recorder);
+						}
+						recorder.finish();
+					} finally {
+						recorder.discard();
+					}
+				}
+				// Base64 is written along with the PDF (SAVE); only the final string is left
+				RenderProfile.Span encodeSpan = profile.start(RenderProfile.Phase.ENCODE);
+				try {
+					return base64Bytes.toString(StandardCharsets.US_ASCII);
+				} finally {
+					encodeSpan.end();
+				}
+			});
 			
-			Core.getLogger("PDFRenderer").info("PDF generated successfully! Size: " + pdfBytes.length + " bytes");
-			Core.getLogger("PDFRenderer").info("Base64 length: " + base64Pdf.length() + " chars");
+			profile.log("PDFRenderer", "PDF generated successfully! Base64 length: " + base64Pdf.length() + " chars");
 			
 			return base64Pdf;
 			
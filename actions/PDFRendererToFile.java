@@ -0,0 +1,316 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package myfirstmodule.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import com.mendix.core.Core;
+import myfirstmodule.pdf.OrgChartEngine;
+import myfirstmodule.pdf.OrgChartJob;
+import myfirstmodule.pdf.Position;
+import myfirstmodule.pdf.RenderCache;
+import myfirstmodule.pdf.RenderExecutor;
+import myfirstmodule.pdf.RenderPipe;
+import myfirstmodule.pdf.RenderProfile;
+import myfirstmodule.pdf.RenderWorkerPool;
+import myfirstmodule.pdf.mendix.MendixEngine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PDFRendererToFile extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String OrgJSON_TR;
+	private java.lang.String OrgJSON_EN;
+	private IMendixObject __OrgFileTR;
+	private system.proxies.FileDocument OrgFileTR;
+	private IMendixObject __OrgFileEN;
+	private system.proxies.FileDocument OrgFileEN;
+	private java.lang.String titleTR;
+	private java.lang.String totalNormLabelTR;
+	private java.lang.String preparedByTR;
+	private java.lang.String docDateTR;
+	private java.lang.String lastUpdateTR;
+	private java.lang.String imageUrlTR;
+	private java.lang.String titleEN;
+	private java.lang.String totalNormLabelEN;
+	private java.lang.String preparedByEN;
+	private java.lang.String docDateEN;
+	private java.lang.String lastUpdateEN;
+	private java.lang.String imageUrlEN;
+	private java.lang.String fileName;
+	private java.lang.Boolean compactLayout;
+	private java.lang.String pageFormat;
+	private java.lang.String rootHierarchyCode;
+	private java.lang.Long maxDepth;
+	private IMendixObject __OutputFile;
+	private system.proxies.FileDocument OutputFile;
+
+	public PDFRendererToFile(IContext context, java.lang.String OrgJSON_TR, java.lang.String OrgJSON_EN, IMendixObject OrgFileTR, IMendixObject OrgFileEN, java.lang.String titleTR, java.lang.String totalNormLabelTR, java.lang.String preparedByTR, java.lang.String docDateTR, java.lang.String lastUpdateTR, java.lang.String imageUrlTR, java.lang.String titleEN, java.lang.String totalNormLabelEN, java.lang.String preparedByEN, java.lang.String docDateEN, java.lang.String lastUpdateEN, java.lang.String imageUrlEN, java.lang.String fileName, java.lang.Boolean compactLayout, java.lang.String pageFormat, java.lang.String rootHierarchyCode, java.lang.Long maxDepth, IMendixObject OutputFile)
+	{
+		super(context);
+		this.OrgJSON_TR = OrgJSON_TR;
+		this.OrgJSON_EN = OrgJSON_EN;
+		this.__OrgFileTR = OrgFileTR;
+		this.__OrgFileEN = OrgFileEN;
+		this.titleTR = titleTR;
+		this.totalNormLabelTR = totalNormLabelTR;
+		this.preparedByTR = preparedByTR;
+		this.docDateTR = docDateTR;
+		this.lastUpdateTR = lastUpdateTR;
+		this.imageUrlTR = imageUrlTR;
+		this.titleEN = titleEN;
+		this.totalNormLabelEN = totalNormLabelEN;
+		this.preparedByEN = preparedByEN;
+		this.docDateEN = docDateEN;
+		this.lastUpdateEN = lastUpdateEN;
+		this.imageUrlEN = imageUrlEN;
+		this.fileName = fileName;
+		this.compactLayout = compactLayout;
+		this.pageFormat = pageFormat;
+		this.rootHierarchyCode = rootHierarchyCode;
+		this.maxDepth = maxDepth;
+		this.__OutputFile = OutputFile;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		this.OrgFileTR = this.__OrgFileTR == null ? null : system.proxies.FileDocument.initialize(getContext(), __OrgFileTR);
+
+		this.OrgFileEN = this.__OrgFileEN == null ? null : system.proxies.FileDocument.initialize(getContext(), __OrgFileEN);
+
+		this.OutputFile = this.__OutputFile == null ? null : system.proxies.FileDocument.initialize(getContext(), __OutputFile);
+
+		// BEGIN USER CODE
+		try {
+			if (this.OutputFile == null) {
+				throw new IllegalArgumentException("An output FileDocument must be provided");
+			}
+
+			OrgChartEngine engine = MendixEngine.get();
+			Core.getLogger("PDFRendererToFile").info("Starting streamed PDF generation...");
+
+			String name = (this.fileName != null && !this.fileName.trim().isEmpty()) ? this.fileName : "OrgChart.pdf";
+
+			OrgChartJob job = new OrgChartJob();
+			job.setOrgJsonTR(this.OrgJSON_TR);
+			job.setOrgJsonEN(this.OrgJSON_EN);
+			job.setTitleTR(this.titleTR);
+			job.setTotalNormLabelTR(this.totalNormLabelTR);
+			job.setPreparedByTR(this.preparedByTR);
+			job.setDocDateTR(this.docDateTR);
+			job.setLastUpdateTR(this.lastUpdateTR);
+			job.setImageUrlTR(this.imageUrlTR);
+			job.setTitleEN(this.titleEN);
+			job.setTotalNormLabelEN(this.totalNormLabelEN);
+			job.setPreparedByEN(this.preparedByEN);
+			job.setDocDateEN(this.docDateEN);
+			job.setLastUpdateEN(this.lastUpdateEN);
+			job.setImageUrlEN(this.imageUrlEN);
+			job.setCompactLayout(Boolean.TRUE.equals(this.compactLayout));
+			job.setPageFormat(this.pageFormat);
+			job.setRootHierarchyCode(this.rootHierarchyCode);
+			job.setMaxDepth(this.maxDepth != null ? (int) Math.min(this.maxDepth, Integer.MAX_VALUE) : null);
+			job.applyDefaultLabels();
+
+			// The same inputs always give the same PDF, so repeats are served from the render cache.
+			// A FileDocument holding an export replaces the JSON parameter. It is only opened once the
+			// render executor has admitted the job, so waiting or rejected requests hold no exports,
+			// and is hashed for the key while it is parsed or streamed into a render worker.
+			RenderCache cache = RenderCache.getInstance();
+			final RenderWorkerPool workers = RenderWorkerPool.getInstance();
+			final boolean fromFiles = this.OrgFileTR != null || this.OrgFileEN != null;
+			if (this.OrgFileTR != null) {
+				job.setOrgJsonTR(null);
+			}
+			if (this.OrgFileEN != null) {
+				job.setOrgJsonEN(null);
+			}
+			final String cacheKey = fromFiles ? null : job.cacheKey();
+			if (!fromFiles) {
+				InputStream cached = cache.open(cacheKey);
+				if (cached != null) {
+					try {
+						Core.storeFileDocumentContent(getContext(), this.__OutputFile, name, cached);
+					} finally {
+						cached.close();
+					}
+					Core.getLogger("PDFRendererToFile").info("PDF served from the render cache into FileDocument '" + name + "'");
+					return true;
+				}
+			}
+
+			// Parse and render on a render executor thread while Mendix stores the content as it is
+			// produced, so the document is never fully buffered in memory. The executor caps how many
+			// renders run at once and rejects when saturated. Only the requested subtree and depth are kept.
+			final RenderProfile profile = new RenderProfile();
+			final AtomicBoolean fromCache = new AtomicBoolean();
+			RenderPipe pipe = new RenderPipe(out -> {
+				CachedOutput output = new CachedOutput(cache, out);
+				try (RenderCache.JsonInput jsonTR = readingJson(this.__OrgFileTR);
+						RenderCache.JsonInput jsonEN = readingJson(this.__OrgFileEN)) {
+					if (workers != null) {
+						workers.render(job, jsonTR, jsonEN, () -> fromFiles
+								? output.lookup(job.cacheKey(jsonTR, jsonEN))
+								: output.record(cacheKey));
+					} else {
+						Position dataTR = jsonTR != null
+								? engine.parse(jsonTR, job, profile)
+								: engine.parse(job.getOrgJsonTR(), job, profile);
+						Position dataEN = jsonEN != null
+								? engine.parse(jsonEN, job, profile)
+								: engine.parse(job.getOrgJsonEN(), job, profile);
+						OutputStream pdf;
+						if (fromFiles) {
+							// Hash whatever the parser left unread
+							if (jsonTR != null) {
+								jsonTR.close();
+							}
+							if (jsonEN != null) {
+								jsonEN.close();
+							}
+							pdf = output.lookup(job.cacheKey(jsonTR, jsonEN));
+						} else {
+							pdf = output.record(cacheKey);
+						}
+						if (pdf != null) {
+							engine.render(job, dataTR, dataEN, profile, pdf);
+						}
+					}
+					fromCache.set(output.finish());
+				} finally {
+					output.discard();
+				}
+			}, RenderExecutor.getInstance());
+			try {
+				Core.storeFileDocumentContent(getContext(), this.__OutputFile, name, pipe);
+			} catch (Exception | Error e) {
+				pipe.close();
+				pipe.await(e);
+				throw e;
+			}
+			pipe.close();
+			pipe.await();
+
+			if (fromCache.get()) {
+				Core.getLogger("PDFRendererToFile").info("PDF served from the render cache into FileDocument '" + name + "'");
+				return true;
+			}
+
+			profile.log("PDFRendererToFile", "PDF generated successfully into FileDocument '" + name + "'");
+
+			return true;
+
+		} catch (Exception e) {
+			Core.getLogger("PDFRendererToFile").error("Error generating PDF: " + e.getMessage(), e);
+			throw new com.mendix.systemwideinterfaces.MendixRuntimeException("Failed to generate PDF: " + e.getMessage(), e);
+		}
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "PDFRendererToFile";
+	}
+
+	// BEGIN EXTRA CODE
+	/**
+	 * The content of an export FileDocument, hashed as it is read; null without a document
+	 */
+	private RenderCache.JsonInput readingJson(IMendixObject file)
+	{
+		return file != null ? RenderCache.readingJson(Core.getFileDocumentContent(getContext(), file)) : null;
+	}
+
+	/**
+	 * Output of a render that is looked up in the render cache once its key is known: a hit is
+	 * streamed out by finish(), so a large PDF cached on disk is never read into memory; a miss
+	 * is rendered through a recorder and cached by finish(), or dropped by discard() when the
+	 * render failed
+	 */
+	private static class CachedOutput
+	{
+		private final RenderCache cache;
+		private final OutputStream out;
+		private InputStream cached;
+		private RenderCache.Recorder recorder;
+
+		CachedOutput(RenderCache cache, OutputStream out)
+		{
+			this.cache = cache;
+			this.out = out;
+		}
+
+		/**
+		 * The stream to render into, or null if the PDF is cached
+		 */
+		OutputStream lookup(String key)
+		{
+			cached = cache.open(key);
+			return cached == null ? record(key) : null;
+		}
+
+		/**
+		 * The stream to render into when the key is known to be a miss
+		 */
+		OutputStream record(String key)
+		{
+			recorder = cache.record(key, out);
+			return recorder;
+		}
+
+		/**
+		 * Write the cached PDF, or cache the rendered one; true if it came from the cache
+		 */
+		boolean finish() throws IOException
+		{
+			if (cached != null) {
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = cached.read(buffer)) >= 0) {
+					out.write(buffer, 0, read);
+				}
+				return true;
+			}
+			if (recorder != null) {
+				recorder.finish();
+			}
+			return false;
+		}
+
+		/**
+		 * Close the cached PDF and drop a recorded copy that was not cached; call always,
+		 * also after finish()
+		 */
+		void discard()
+		{
+			if (cached != null) {
+				try {
+					cached.close();
+				} catch (IOException e) {
+					// Only read from, nothing is lost
+				}
+				cached = null;
+			}
+			if (recorder != null) {
+				recorder.discard();
+			}
+		}
+	}
+	// END EXTRA CODE
+}
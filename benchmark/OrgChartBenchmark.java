@@ -0,0 +1,277 @@
+package myfirstmodule.benchmark;
+
+import myfirstmodule.pdf.OrgChartEngine;
+import myfirstmodule.pdf.OrgChartJob;
+import myfirstmodule.pdf.RenderProfile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmarks the render pipeline stage by stage on synthetic organizations.
+ *
+ * Every operation parses a seeded export, builds the tree, lays it out, draws the
+ * pages, saves the document and Base64-encodes it through the standalone
+ * OrgChartEngine, exactly as the PDFRenderer action does inside Mendix. The
+ * RenderProfile of each operation splits its time and allocation into phases, which
+ * are averaged over the measured operations after a warmup. Allocation is per
+ * operation, like JMH's gc.alloc.rate.norm; output sizes are reported too.
+ * With --compression every shape and size is measured once per preset, and "saved"
+ * is the PDF size saved against the first preset listed.
+ *
+ * Options (all optional):
+ *   --shapes=WIDE,DEEP,BALANCED,DUPLICATED   --sizes=100,1000,10000,100000
+ *   --warmup=3   --iterations=5   --seed=42   --compact   --pageFormat=FIT|A3|A1
+ *   --subtreeCache=off   --compression=SPEED,BALANCED,SIZE   --csv=results.csv
+ *   --verify   (first check that every glyph shown is in the font subsets, see SubsetCheck)
+ */
+public class OrgChartBenchmark {
+
+    private static final RenderProfile.Phase[] PHASES = RenderProfile.Phase.values();
+
+    private static class Options {
+        List<SyntheticOrg.Shape> shapes = new ArrayList<>(List.of(SyntheticOrg.Shape.values()));
+        List<Integer> sizes = new ArrayList<>(List.of(100, 1000, 10000, 100000));
+        int warmup = 3;
+        int iterations = 5;
+        long seed = 42;
+        boolean compact;
+        String pageFormat;
+        List<String> compressions = new ArrayList<>();
+        String csv;
+        boolean verify;
+    }
+
+    /**
+     * Averages of one shape and size
+     */
+    private static class Result {
+        final SyntheticOrg.Shape shape;
+        final int positions;
+        final double[] millis = new double[PHASES.length];
+        final double[] allocated = new double[PHASES.length];
+        double opsPerSecond;
+        String compression;
+        long pdfBytes;
+        long base64Bytes;
+        double savedPercent;
+
+        Result(SyntheticOrg.Shape shape, int positions) {
+            this.shape = shape;
+            this.positions = positions;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = parse(args);
+        if (options.verify) {
+            SubsetCheck.run();
+            System.out.println("subset check passed");
+        }
+        String logo = logo();
+
+        PrintStream out = System.out;
+        out.printf(Locale.ROOT, "%-10s %8s %9s", "shape", "positions", "ops/s");
+        for (RenderProfile.Phase phase : PHASES) {
+            out.printf(Locale.ROOT, " %20s", phase.name().toLowerCase(Locale.ROOT) + " ms|MB");
+        }
+        out.printf(Locale.ROOT, " %12s %10s %7s %10s%n", "compression", "pdf KB", "saved", "base64 KB");
+
+        List<String> compressions = options.compressions.isEmpty() ? List.of("") : options.compressions;
+        List<Result> results = new ArrayList<>();
+        for (SyntheticOrg.Shape shape : options.shapes) {
+            for (int size : options.sizes) {
+                String json = SyntheticOrg.json(shape, size, options.seed);
+                Result baseline = null;
+                for (String compression : compressions) {
+                    if (!compression.isEmpty()) {
+                        System.setProperty("orgchart.pdf.compression", compression);
+                        // Compression is process-wide and applied when an engine is installed
+                        OrgChartEngine.install(OrgChartEngine.getInstance());
+                    }
+                    Result result = run(options, shape, size, json, logo);
+                    if (baseline == null) {
+                        baseline = result;
+                    }
+                    result.savedPercent = 100.0 * (baseline.pdfBytes - result.pdfBytes) / baseline.pdfBytes;
+                    results.add(result);
+                    print(out, result);
+                }
+            }
+        }
+
+        if (options.csv != null) {
+            writeCsv(options.csv, results);
+        }
+    }
+
+    private static Result run(Options options, SyntheticOrg.Shape shape, int size, String json, String logo) throws Exception {
+        for (int i = 0; i < options.warmup; i++) {
+            renderOnce(options, json, logo);
+        }
+        Result result = new Result(shape, size);
+        long start = System.nanoTime();
+        for (int i = 0; i < options.iterations; i++) {
+            Operation operation = renderOnce(options, json, logo);
+            for (RenderProfile.Phase phase : PHASES) {
+                result.millis[phase.ordinal()] += operation.profile.getNanos(phase) / 1e6 / options.iterations;
+                result.allocated[phase.ordinal()] += operation.profile.getAllocatedBytes(phase) / (double) options.iterations;
+            }
+            result.compression = operation.profile.getCompression();
+            result.pdfBytes = operation.pdfBytes;
+            result.base64Bytes = operation.base64Bytes;
+        }
+        result.opsPerSecond = options.iterations / ((System.nanoTime() - start) / 1e9);
+        return result;
+    }
+
+    private static class Operation {
+        final RenderProfile profile;
+        final long pdfBytes;
+        final long base64Bytes;
+
+        Operation(RenderProfile profile, long pdfBytes, long base64Bytes) {
+            this.profile = profile;
+            this.pdfBytes = pdfBytes;
+            this.base64Bytes = base64Bytes;
+        }
+    }
+
+    private static Operation renderOnce(Options options, String json, String logo) throws Exception {
+        OrgChartJob job = new OrgChartJob();
+        job.setOrgJsonTR(json);
+        job.setImageUrlTR(logo);
+        job.setCompactLayout(options.compact);
+        job.setPageFormat(options.pageFormat);
+        job.applyDefaultLabels();
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        RenderProfile profile = OrgChartEngine.getInstance().render(job, pdf);
+
+        String base64;
+        RenderProfile.Span encodeSpan = profile.start(RenderProfile.Phase.ENCODE);
+        try {
+            base64 = Base64.getEncoder().encodeToString(pdf.toByteArray());
+        } finally {
+            encodeSpan.end();
+        }
+        return new Operation(profile, pdf.size(), base64.length());
+    }
+
+    private static void print(PrintStream out, Result result) {
+        out.printf(Locale.ROOT, "%-10s %8d %9.2f", result.shape, result.positions, result.opsPerSecond);
+        for (RenderProfile.Phase phase : PHASES) {
+            out.printf(Locale.ROOT, " %20s", String.format(Locale.ROOT, "%.2f|%.1f",
+                    result.millis[phase.ordinal()], result.allocated[phase.ordinal()] / (1024 * 1024)));
+        }
+        out.printf(Locale.ROOT, " %12s %10.1f %6.1f%% %10.1f%n", result.compression, result.pdfBytes / 1024.0,
+                result.savedPercent, result.base64Bytes / 1024.0);
+    }
+
+    private static void writeCsv(String file, List<Result> results) throws IOException {
+        StringBuilder csv = new StringBuilder("shape,positions,ops_per_s");
+        for (RenderProfile.Phase phase : PHASES) {
+            String name = phase.name().toLowerCase(Locale.ROOT);
+            csv.append(',').append(name).append("_ms,").append(name).append("_alloc_bytes");
+        }
+        csv.append(",compression,pdf_bytes,saved_percent,base64_bytes\n");
+        for (Result result : results) {
+            csv.append(result.shape).append(',').append(result.positions).append(',')
+                    .append(String.format(Locale.ROOT, "%.3f", result.opsPerSecond));
+            for (RenderProfile.Phase phase : PHASES) {
+                csv.append(',').append(String.format(Locale.ROOT, "%.3f", result.millis[phase.ordinal()]))
+                        .append(',').append(Math.round(result.allocated[phase.ordinal()]));
+            }
+            csv.append(',').append(result.compression).append(',').append(result.pdfBytes)
+                    .append(',').append(String.format(Locale.ROOT, "%.2f", result.savedPercent))
+                    .append(',').append(result.base64Bytes).append('\n');
+        }
+        Files.write(Paths.get(file), csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A small generated PNG as a data URI, so the footer image path is measured too
+     */
+    static String logo() throws IOException {
+        BufferedImage image = new BufferedImage(240, 80, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 240, 80);
+        g.setColor(new Color(0x00, 0x44, 0x81));
+        g.fillRoundRect(10, 10, 220, 60, 20, 20);
+        g.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(png.toByteArray());
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "shapes":
+                    options.shapes.clear();
+                    for (String shape : value.split(",")) {
+                        options.shapes.add(SyntheticOrg.Shape.valueOf(shape.trim().toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "sizes":
+                    options.sizes.clear();
+                    for (String size : value.split(",")) {
+                        options.sizes.add(Integer.parseInt(size.trim()));
+                    }
+                    break;
+                case "warmup":
+                    options.warmup = Integer.parseInt(value);
+                    break;
+                case "iterations":
+                    options.iterations = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "compact":
+                    options.compact = true;
+                    break;
+                case "pageFormat":
+                    options.pageFormat = value;
+                    break;
+                case "subtreeCache":
+                    // Read once when the renderer first draws a subtree, so it must be set before that
+                    if ("off".equalsIgnoreCase(value)) {
+                        System.setProperty("orgchart.subtreeCache.maxBytes", "0");
+                    }
+                    break;
+                case "compression":
+                    options.compressions.clear();
+                    for (String compression : value.split(",")) {
+                        options.compressions.add(compression.trim());
+                    }
+                    break;
+                case "csv":
+                    options.csv = value;
+                    break;
+                case "verify":
+                    options.verify = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return options;
+    }
+}
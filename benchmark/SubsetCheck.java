@@ -0,0 +1,139 @@
+package myfirstmodule.benchmark;
+
+import myfirstmodule.pdf.OrgChartEngine;
+import myfirstmodule.pdf.OrgChartJob;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks that every glyph shown in a saved PDF is in its embedded font subset.
+ *
+ * The content streams of all pages and the forms they draw are scanned for text; each
+ * character code shown in a Type 0 font must map to a glyph other than .notdef. Words
+ * with ligatures ("Workflow", "Office") catch substituted glyphs that were written but
+ * left out of the subset, as happens when pages or cached subtree forms drawn with other
+ * font instances only hand over their code points.
+ */
+class SubsetCheck {
+
+    private SubsetCheck() {
+    }
+
+    /**
+     * Render a small TR chart with ligatures twice, the second time from the subtree
+     * cache, then a bilingual chart with them only on the EN pages, which are drawn in
+     * parallel with fonts of their own; fails with the codes missing from the subsets
+     */
+    static void run() throws Exception {
+        String cached = ligatures(SyntheticOrg.json(SyntheticOrg.Shape.BALANCED, 30, 8));
+        verify(render(cached, null));
+        verify(render(cached, null));
+        String plain = SyntheticOrg.json(SyntheticOrg.Shape.BALANCED, 120, 7);
+        verify(render(plain, ligatures(SyntheticOrg.json(SyntheticOrg.Shape.BALANCED, 120, 9))));
+    }
+
+    private static String ligatures(String json) {
+        return json.replace("Hazine", "Workflow Office").replace("Hukuk", "Financial Affairs");
+    }
+
+    private static byte[] render(String jsonTR, String jsonEN) throws Exception {
+        OrgChartJob job = new OrgChartJob();
+        job.setOrgJsonTR(jsonTR);
+        job.setOrgJsonEN(jsonEN);
+        job.applyDefaultLabels();
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        OrgChartEngine.getInstance().render(job, pdf);
+        return pdf.toByteArray();
+    }
+
+    /**
+     * Fail if any character code shown in the PDF maps to .notdef in its font
+     */
+    static void verify(byte[] pdf) throws IOException {
+        Set<String> missing = new TreeSet<>();
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            int pageNumber = 0;
+            for (PDPage page : document.getPages()) {
+                pageNumber++;
+                scan(page, page.getResources(), "page " + pageNumber, missing);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Glyphs missing from the font subsets: " + missing);
+        }
+    }
+
+    private static void scan(PDContentStream stream, PDResources resources, String where, Set<String> missing) throws IOException {
+        if (resources == null) {
+            return;
+        }
+        List<COSBase> operands = new ArrayList<>();
+        PDFont font = null;
+        PDFStreamParser parser = new PDFStreamParser(stream);
+        for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+            if (!(token instanceof Operator)) {
+                operands.add((COSBase) token);
+                continue;
+            }
+            String operator = ((Operator) token).getName();
+            if (operator.equals("Tf") && !operands.isEmpty() && operands.get(0) instanceof COSName) {
+                font = resources.getFont((COSName) operands.get(0));
+            } else if (operator.equals("Tj") || operator.equals("TJ") || operator.equals("'") || operator.equals("\"")) {
+                for (COSBase operand : operands) {
+                    if (operand instanceof COSString) {
+                        check(font, (COSString) operand, where, missing);
+                    } else if (operand instanceof COSArray) {
+                        for (COSBase element : (COSArray) operand) {
+                            if (element instanceof COSString) {
+                                check(font, (COSString) element, where, missing);
+                            }
+                        }
+                    }
+                }
+            } else if (operator.equals("Do") && !operands.isEmpty() && operands.get(0) instanceof COSName) {
+                PDXObject xObject = resources.getXObject((COSName) operands.get(0));
+                if (xObject instanceof PDFormXObject) {
+                    PDFormXObject form = (PDFormXObject) xObject;
+                    scan(form, form.getResources(), where + " form " + operands.get(0).toString(), missing);
+                }
+            }
+            operands.clear();
+        }
+    }
+
+    private static void check(PDFont font, COSString text, String where, Set<String> missing) throws IOException {
+        if (!(font instanceof PDType0Font)) {
+            return;
+        }
+        PDType0Font type0 = (PDType0Font) font;
+        InputStream codes = new ByteArrayInputStream(text.getBytes());
+        while (codes.available() > 0) {
+            int code = type0.readCode(codes);
+            if (type0.codeToGID(code) == 0) {
+                missing.add(font.getName() + " code " + code + " on " + where);
+            }
+        }
+    }
+}
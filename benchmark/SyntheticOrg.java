@@ -0,0 +1,141 @@
+package myfirstmodule.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of org chart exports in the flat JSON format the parser reads.
+ *
+ * The same shape, size and seed always give the same JSON, so runs are comparable
+ * across changes. Names, norms and title codes are drawn from small pools, like real
+ * exports where many positions share a title.
+ */
+public class SyntheticOrg {
+
+    public enum Shape {
+        /** Root with a few directorates, each with many direct reports */
+        WIDE,
+        /** Long reporting chains: most managers have a single report */
+        DEEP,
+        /** Every manager has four to six reports */
+        BALANCED,
+        /** Like BALANCED, but every parent also carries copies of its children in Positions, as in the dummy data */
+        DUPLICATED
+    }
+
+    private static final String[] UNITS = {
+        "Bilgi Teknolojileri", "Mali Isler", "Operasyon", "Insan Kaynaklari", "Risk Yonetimi",
+        "Hazine", "Pazarlama", "Hukuk", "Satin Alma", "Kurumsal Iletisim"
+    };
+    private static final String[] ROLES = {
+        "Direktoru", "Muduru", "Yonetmeni", "Uzmani", "Kidemli Uzmani", "Takim Lideri", "Analisti"
+    };
+    private static final String[] TITLE_CODES = {"1", "4", "9", "11", "12", "13", "37", "38", "39", "40"};
+
+    private static class Node {
+        final int id;
+        final String code;
+        final String parentCode;
+        final String name;
+        final int norm;
+        final String titleCode;
+        final List<Node> children = new ArrayList<>();
+
+        Node(int id, String code, String parentCode, String name, int norm, String titleCode) {
+            this.id = id;
+            this.code = code;
+            this.parentCode = parentCode;
+            this.name = name;
+            this.norm = norm;
+            this.titleCode = titleCode;
+        }
+    }
+
+    private SyntheticOrg() {
+    }
+
+    /**
+     * JSON export of an organization with the given number of positions
+     */
+    public static String json(Shape shape, int positions, long seed) {
+        Random random = new Random(seed);
+        List<Node> nodes = build(shape, Math.max(1, positions), random);
+        StringBuilder json = new StringBuilder(positions * 240);
+        json.append('[');
+        boolean first = true;
+        for (Node node : nodes) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            append(json, node, shape == Shape.DUPLICATED);
+        }
+        return json.append(']').toString();
+    }
+
+    private static List<Node> build(Shape shape, int positions, Random random) {
+        List<Node> nodes = new ArrayList<>(positions);
+        Node root = node(1, "/1/", "", 0, random);
+        nodes.add(root);
+        // Breadth-first: parents are handed out in order, each gets a shape-dependent number of children
+        int parent = 0;
+        while (nodes.size() < positions) {
+            Node manager = nodes.get(parent++);
+            int level = manager.code.split("/").length - 2;
+            int children;
+            switch (shape) {
+                case WIDE:
+                    children = level == 0 ? 8 : 20 + random.nextInt(30);
+                    break;
+                case DEEP:
+                    // Levels grow by about a third, so 100k positions are some 40 levels deep
+                    children = random.nextInt(10) < 7 ? 1 : 2;
+                    break;
+                default:
+                    children = 4 + random.nextInt(3);
+                    break;
+            }
+            for (int k = 0; k < children && nodes.size() < positions; k++) {
+                int id = nodes.size() + 1;
+                Node child = node(id, manager.code + id + "/", manager.code, level + 1, random);
+                manager.children.add(child);
+                nodes.add(child);
+            }
+        }
+        return nodes;
+    }
+
+    private static Node node(int id, String code, String parentCode, int level, Random random) {
+        String name = UNITS[random.nextInt(UNITS.length)] + " " + ROLES[Math.min(level, ROLES.length - 1)];
+        int norm = level == 0 ? 1 : 1 + random.nextInt(level + 2);
+        return new Node(id, code, parentCode, name, norm, TITLE_CODES[random.nextInt(TITLE_CODES.length)]);
+    }
+
+    private static void append(StringBuilder json, Node node, boolean nestChildren) {
+        fields(json, node);
+        if (nestChildren) {
+            for (int k = 0; k < node.children.size(); k++) {
+                if (k > 0) {
+                    json.append(',');
+                }
+                fields(json, node.children.get(k));
+                json.append("]}");
+            }
+        }
+        json.append("]}");
+    }
+
+    /**
+     * The position's object up to and including the opening bracket of its Positions array
+     */
+    private static void fields(StringBuilder json, Node node) {
+        json.append("{\"PositionID\": ").append(node.id)
+                .append(", \"PositionName\": \"").append(node.name)
+                .append("\", \"Norm\": \"").append(node.norm)
+                .append("\", \"TitleCode\": \"").append(node.titleCode)
+                .append("\", \"HierarchyCode\": \"").append(node.code)
+                .append("\", \"ParentHierarchyCode\": \"").append(node.parentCode)
+                .append("\", \"Positions\": [");
+    }
+}
@@ -0,0 +1,188 @@
+package myfirstmodule.benchmark;
+
+import myfirstmodule.pdf.LayoutStore;
+import myfirstmodule.pdf.OrgChartEngine;
+import myfirstmodule.pdf.OrgChartJob;
+import myfirstmodule.pdf.OrgChartLayout;
+import myfirstmodule.pdf.OrgChartParser;
+import myfirstmodule.pdf.OrgChartRenderer;
+import myfirstmodule.pdf.Position;
+import myfirstmodule.pdf.TreeAnalytics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the render pipeline, one stage per benchmark, on seeded synthetic
+ * organizations (see SyntheticOrg):
+ *
+ *   parse    JSON export to the tree (OrgChartParser.parse)
+ *   layout   analysis and layout of the parsed tree (OrgChartLayout.layout)
+ *   draw     laying out and drawing the pages of the parsed tree (OrgChartEngine.draw)
+ *   save     writing a drawn document (OrgChartRenderer.save)
+ *   encode   Base64 of the saved PDF, as the PDFRenderer action returns it
+ *
+ * Each stage gets the previous stage's output from the trial setup, so a stage is
+ * measured alone; run.sh's harness splits parse further into reading and building the
+ * tree. save draws a fresh document before every invocation, outside the measured time
+ * but not outside the allocation the GC profiler counts, so save's gc.alloc.rate.norm
+ * includes draw's. draw and save report the PDF size as the secondary result pdfBytes,
+ * encode the Base64 length as base64Bytes. Run with -prof gc for the allocation per
+ * operation (gc.alloc.rate.norm), e.g.
+ *
+ *   java -jar target/benchmarks.jar -prof gc -p shape=WIDE -p positions=1000,10000 "draw|save"
+ *
+ * Subtree forms are reused across invocations like across renders of the same chart;
+ * -jvmArgsAppend -Dorgchart.subtreeCache.maxBytes=0 measures drawing without them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StageBenchmark {
+
+    @Param({"WIDE", "DEEP", "BALANCED", "DUPLICATED"})
+    public SyntheticOrg.Shape shape;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int positions;
+
+    @Param({"FIT"})
+    public String pageFormat;
+
+    @Param({"false"})
+    public boolean compact;
+
+    @Param({"42"})
+    public long seed;
+
+    private String json;
+    private Position tree;
+    private OrgChartJob job;
+    private byte[] pdf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = SyntheticOrg.json(shape, positions, seed);
+        tree = OrgChartParser.parse(json);
+        job = new OrgChartJob();
+        job.setImageUrlTR(OrgChartBenchmark.logo());
+        job.setCompactLayout(compact);
+        job.setPageFormat(pageFormat);
+        job.applyDefaultLabels();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OrgChartRenderer renderer = drawPages()) {
+            renderer.save(out);
+        }
+        pdf = out.toByteArray();
+    }
+
+    /**
+     * Size of the PDF of the last operation, reported next to its throughput
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PdfSize {
+        public long pdfBytes;
+    }
+
+    /**
+     * Length of the Base64 of the last operation
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Base64Size {
+        public long base64Bytes;
+    }
+
+    /**
+     * A document drawn before each save invocation and closed after it
+     */
+    @State(Scope.Thread)
+    public static class Drawn {
+        OrgChartRenderer renderer;
+
+        @Setup(Level.Invocation)
+        public void draw(StageBenchmark benchmark) throws Exception {
+            renderer = benchmark.drawPages();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws IOException {
+            renderer.close();
+        }
+    }
+
+    @Benchmark
+    public Position parse() throws Exception {
+        return OrgChartParser.parse(json);
+    }
+
+    @Benchmark
+    public LayoutStore layout() {
+        return OrgChartLayout.layout(TreeAnalytics.of(tree), 0, 0,
+                compact ? OrgChartLayout.Mode.TIDY : OrgChartLayout.Mode.CLASSIC);
+    }
+
+    @Benchmark
+    public void draw(PdfSize output) throws Exception {
+        try (OrgChartRenderer renderer = drawPages()) {
+            output.pdfBytes = pdf.length;
+        }
+    }
+
+    @Benchmark
+    public void save(Drawn drawn, PdfSize output) throws Exception {
+        CountingSink sink = new CountingSink();
+        drawn.renderer.save(sink);
+        output.pdfBytes = sink.count;
+    }
+
+    @Benchmark
+    public String encode(Base64Size output) {
+        String base64 = Base64.getEncoder().encodeToString(pdf);
+        output.base64Bytes = base64.length();
+        return base64;
+    }
+
+    private OrgChartRenderer drawPages() throws Exception {
+        return OrgChartEngine.getInstance().draw(job, tree, null, null);
+    }
+
+    /**
+     * Counts the bytes written and drops them, so saving is measured without buffering the PDF
+     */
+    private static class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compile the renderer and the benchmark into benchmark/out and run it.
+#
+# The engine runs without the Mendix runtime; only pdf/lib is needed. For JMH
+# benchmarks of each stage with a GC profiler, see jmh/pom.xml.
+#
+#   JAVA_OPTS      JVM options, default -Xms2g -Xmx2g
+#
+# Arguments are passed on, e.g.: ./run.sh --shapes=BALANCED --sizes=1000,10000 --csv=results.csv
+set -e
+cd "$(dirname "$0")"
+LIBS="$(ls ../pdf/lib/*.jar | tr '\n' ':')"
+rm -rf out
+mkdir -p out
+javac -encoding UTF-8 -d out -cp "$LIBS" ../pdf/*.java ./*.java
+# FontRegistry finds the fonts on the classpath under /font
+mkdir -p out/font
+cp ../pdf/fonts/*.ttf out/font/
+exec java ${JAVA_OPTS:--Xms2g -Xmx2g} -cp "out:$LIBS" myfirstmodule.benchmark.OrgChartBenchmark "$@"
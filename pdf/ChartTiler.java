@@ -0,0 +1,426 @@
+package myfirstmodule.pdf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits an org tree over pages of a fixed size, cutting only at subtree boundaries.
+ *
+ * The first page starts with the overview: the root and as many levels below it as fit.
+ * Every node whose children were cut off gets a continuation marker, and its subtree
+ * continues further down the page or on a later page, split again the same way. A
+ * parent with more children than fit side by side shows them in consecutive chunks,
+ * each chunk pointing to the next. Subtrees fill a page in rows, left to right and top
+ * to bottom, in breadth-first order, so page numbers grow with depth.
+ *
+ * The plan only records which part of the tree each page shows; the page's trees are
+ * copied and laid out again when it is drawn, so one page's layout is live at a time.
+ * Planning lays nothing out. A part's size follows from how many of its nodes sit on
+ * each level, counted by binary search over per-level lists of pre-order indexes: each
+ * leaf of the cut tree takes one NODE_WIDTH_EFFECTIVE column, exactly as in the classic
+ * layout. The tidy layout packs subtrees at least as closely, so in that mode the size
+ * is an upper bound and a part never overflows its page.
+ */
+class ChartTiler {
+
+    /**
+     * Horizontal gap between subtrees in a row; leaves room for the markers beside a root
+     */
+    static final float PART_GAP = Style.NODE_WIDTH_EFFECTIVE / 2;
+
+    /**
+     * Vertical gap between rows; leaves room for the markers below the row above
+     */
+    static final float ROW_GAP = Style.CONTINUATION_MARGIN + Style.CONTINUATION_FONT_SIZE + Style.CHILDREN_ROW_MARGIN_TOP;
+
+    /**
+     * One tree on a page: a node, the range of its children shown, how many levels below
+     * the node are shown and the page the node was cut from (-1 for the overview)
+     */
+    static class Part {
+        final int root;
+        final int from;
+        final int to;
+        final int depth;
+        final float width;
+        final float height;
+        final int continuedFrom;
+
+        Part(int root, int from, int to, int depth, float width, float height, int continuedFrom) {
+            this.root = root;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.width = width;
+            this.height = height;
+            this.continuedFrom = continuedFrom;
+        }
+    }
+
+    /**
+     * One planned page: rows of trees, top to bottom, and the pages on which its cut-off
+     * nodes continue
+     */
+    static class Tile {
+        final List<List<Part>> rows;
+        final Map<Integer, Integer> continuations;
+
+        Tile(List<List<Part>> rows, Map<Integer, Integer> continuations) {
+            this.rows = rows;
+            this.continuations = continuations;
+        }
+    }
+
+    /**
+     * The copied trees of a tile with their layouts. Copied nodes map to the page their
+     * subtree continues on, and copied part roots to the page they were cut from.
+     */
+    static class View {
+        final List<List<LayoutStore>> rows;
+        final Map<Position, Integer> continuations;
+        final Map<Position, Integer> continuedFrom;
+
+        View(List<List<LayoutStore>> rows, Map<Position, Integer> continuations, Map<Position, Integer> continuedFrom) {
+            this.rows = rows;
+            this.continuations = continuations;
+            this.continuedFrom = continuedFrom;
+        }
+    }
+
+    private static final float LEVEL_HEIGHT = Style.NODE_HEIGHT
+            + Style.NODE_CONTAINER_PADDING_VERTICAL * 2 + Style.CHILDREN_ROW_MARGIN_TOP;
+
+    private final TreeAnalytics tree;
+    private final OrgChartLayout.Mode mode;
+    private final float maxWidth;
+    private final float maxHeight;
+
+    // Pre-order indexes of the nodes, and of the leaves, on each level, in ascending order
+    private final int[][] levelNodes;
+    private final int[][] levelLeaves;
+
+    // Planning state: subtrees waiting for a place as {id, root, from, to, continuedFrom},
+    // and the page of every id once placed. Markers refer to ids until planning is done.
+    private final Deque<int[]> queue = new ArrayDeque<>();
+    private final List<Integer> pageOfId = new ArrayList<>();
+
+    /**
+     * @param maxWidth  width available to the trees on a page
+     * @param maxHeight height available to the trees on a page
+     */
+    ChartTiler(TreeAnalytics tree, OrgChartLayout.Mode mode, float maxWidth, float maxHeight) {
+        this.tree = tree;
+        this.mode = mode;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+
+        int n = tree.size();
+        int levels = 0;
+        for (int i = 0; i < n; i++) {
+            levels = Math.max(levels, tree.levelOf(i) + 1);
+        }
+        int[] nodeCounts = new int[levels];
+        int[] leafCounts = new int[levels];
+        for (int i = 0; i < n; i++) {
+            nodeCounts[tree.levelOf(i)]++;
+            if (tree.childCount(i) == 0) {
+                leafCounts[tree.levelOf(i)]++;
+            }
+        }
+        levelNodes = new int[levels][];
+        levelLeaves = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            levelNodes[level] = new int[nodeCounts[level]];
+            levelLeaves[level] = new int[leafCounts[level]];
+        }
+        Arrays.fill(nodeCounts, 0);
+        Arrays.fill(leafCounts, 0);
+        for (int i = 0; i < n; i++) {
+            int level = tree.levelOf(i);
+            levelNodes[level][nodeCounts[level]++] = i;
+            if (tree.childCount(i) == 0) {
+                levelLeaves[level][leafCounts[level]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Plan the pages; the first one starts with the overview
+     */
+    List<Tile> plan() {
+        List<Tile> tiles = new ArrayList<>();
+        if (tree.size() == 0) {
+            return tiles;
+        }
+
+        queue.clear();
+        pageOfId.clear();
+        enqueue(0, 0, tree.childCount(0), -1);
+
+        while (!queue.isEmpty()) {
+            int page = tiles.size();
+            Map<Integer, Integer> continuations = new LinkedHashMap<>();
+            List<List<Part>> rows = new ArrayList<>();
+            float heightLeft = maxHeight;
+
+            while (!queue.isEmpty()) {
+                float rowHeightLimit = rows.isEmpty() ? heightLeft : heightLeft - ROW_GAP;
+                List<Part> row = new ArrayList<>();
+                float used = 0;
+                float rowHeight = 0;
+                while (!queue.isEmpty()) {
+                    float widthLeft = row.isEmpty() ? maxWidth : maxWidth - used - PART_GAP;
+                    Part part = place(widthLeft, rowHeightLimit, row.isEmpty(), rows.isEmpty() && row.isEmpty(),
+                            page, continuations);
+                    if (part == null) {
+                        break;
+                    }
+                    cut(part, page, continuations);
+                    used += (row.isEmpty() ? 0 : PART_GAP) + part.width;
+                    rowHeight = Math.max(rowHeight, part.height);
+                    row.add(part);
+                }
+                if (row.isEmpty()) {
+                    break;
+                }
+                rows.add(Collections.unmodifiableList(row));
+                heightLeft = rowHeightLimit - rowHeight;
+            }
+
+            tiles.add(new Tile(Collections.unmodifiableList(rows), continuations));
+        }
+
+        // Every subtree has its page now, so the ids in the markers can become page indexes
+        for (Tile tile : tiles) {
+            tile.continuations.replaceAll((node, id) -> pageOfId.get(id));
+        }
+        return tiles;
+    }
+
+    /**
+     * Copy and lay out the trees shown by the tile
+     */
+    View view(Tile tile) {
+        Map<Position, Integer> continuations = new IdentityHashMap<>();
+        Map<Position, Integer> continuedFrom = new IdentityHashMap<>();
+        List<List<LayoutStore>> rows = new ArrayList<>();
+        for (List<Part> parts : tile.rows) {
+            List<LayoutStore> row = new ArrayList<>();
+            for (Part part : parts) {
+                TreeAnalytics copy = part(part.root, part.from, part.to, part.depth,
+                        tile.continuations, continuations);
+                if (part.continuedFrom >= 0) {
+                    continuedFrom.put(copy.node(0), part.continuedFrom);
+                }
+                row.add(OrgChartLayout.layout(copy, 0, 0, mode));
+            }
+            rows.add(row);
+        }
+        return new View(rows, continuations, continuedFrom);
+    }
+
+    private int enqueue(int root, int from, int to, int continuedFrom) {
+        int id = pageOfId.size();
+        pageOfId.add(-1);
+        queue.add(new int[]{id, root, from, to, continuedFrom});
+        return id;
+    }
+
+    /**
+     * Take the next subtree off the queue if it fits the space left, with as many levels
+     * as fit. A subtree that is too wide is split into chunks when it starts a row. The
+     * first subtree on a page is always placed, so every page makes progress.
+     */
+    private Part place(float widthLeft, float heightLimit, boolean rowStart, boolean force,
+                       int page, Map<Integer, Integer> continuations) {
+        int[] next = queue.peek();
+        int root = next[1];
+        int from = next[2];
+        int to = next[3];
+        int maxDepth = to > from ? tree.getHeight(tree.node(root)) - 1 : 0;
+        int minDepth = Math.min(1, maxDepth);
+
+        if (measure(root, from, to, minDepth, widthLeft, heightLimit) == null) {
+            if (!force && (!rowStart || to - from < 2 || measure(root, from, from + 1, minDepth, widthLeft, heightLimit) == null)) {
+                return null;
+            }
+            // Too many children side by side: keep the widest run that fits, the rest follows
+            if (to - from > 1) {
+                int lo = from + 1;
+                int hi = to - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (measure(root, from, mid, minDepth, widthLeft, heightLimit) != null) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                continuations.put(root, enqueue(root, lo, to, page));
+                to = lo;
+            }
+        }
+
+        // Sizes at every depth from one count per level; the deepest that fits is kept
+        float[][] sizes = sizes(root, from, to, maxDepth);
+        int depth = minDepth;
+        while (depth < maxDepth && fits(sizes[depth + 1], widthLeft, heightLimit)) {
+            depth++;
+        }
+        float[] size = sizes[depth];
+
+        queue.poll();
+        pageOfId.set(next[0], page);
+        return new Part(root, from, to, depth, size[0], size[1], next[4]);
+    }
+
+    /**
+     * Queue every node on the part's last level whose children were cut off
+     */
+    private void cut(Part part, int page, Map<Integer, Integer> continuations) {
+        if (part.depth == 0) {
+            return;
+        }
+        Deque<int[]> stack = new ArrayDeque<>();
+        for (int k = part.to - 1; k >= part.from; k--) {
+            stack.push(new int[]{tree.child(part.root, k), 1});
+        }
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            int node = entry[0];
+            int count = tree.childCount(node);
+            if (count == 0) {
+                continue;
+            }
+            if (entry[1] == part.depth) {
+                continuations.put(node, enqueue(node, 0, count, page));
+            } else {
+                for (int k = count - 1; k >= 0; k--) {
+                    stack.push(new int[]{tree.child(node, k), entry[1] + 1});
+                }
+            }
+        }
+    }
+
+    /**
+     * Width and height of the part's layout, or null if it exceeds the given space
+     */
+    private float[] measure(int root, int from, int to, int depth, float widthLimit, float heightLimit) {
+        float[] size = sizes(root, from, to, depth)[depth];
+        return fits(size, widthLimit, heightLimit) ? size : null;
+    }
+
+    private static boolean fits(float[] size, float widthLimit, float heightLimit) {
+        return size[0] <= widthLimit && size[1] <= heightLimit;
+    }
+
+    /**
+     * Width and height of the part cut at each depth from 0 to maxDepth. The cut tree's
+     * leaves are its nodes on the last level plus the leaves above it; each takes one
+     * column, and every level below the first adds one row.
+     */
+    private float[][] sizes(int root, int from, int to, int maxDepth) {
+        float[][] sizes = new float[maxDepth + 1][];
+        sizes[0] = new float[]{Style.NODE_WIDTH, Style.NODE_HEIGHT};
+        if (maxDepth == 0) {
+            return sizes;
+        }
+        // The children from..to and their subtrees are one run of pre-order indexes
+        int lo = tree.child(root, from);
+        int last = tree.child(root, to - 1);
+        int hi = last + tree.nodeCount(last);
+        int base = tree.levelOf(root);
+        int leavesAbove = 0;
+        int rows = 0;
+        int columns = 1;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int level = base + depth;
+            int nodes = level < levelNodes.length ? count(levelNodes[level], lo, hi) : 0;
+            if (nodes > 0) {
+                rows = depth;
+                columns = leavesAbove + nodes;
+                leavesAbove += count(levelLeaves[level], lo, hi);
+            }
+            sizes[depth] = new float[]{(columns - 1) * Style.NODE_WIDTH_EFFECTIVE + Style.NODE_WIDTH,
+                    rows * LEVEL_HEIGHT + Style.NODE_HEIGHT};
+        }
+        return sizes;
+    }
+
+    /**
+     * Number of values in the ascending array within [lo, hi)
+     */
+    private static int count(int[] values, int lo, int hi) {
+        return lowerBound(values, hi) - lowerBound(values, lo);
+    }
+
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copy the node, the children from..to and their subtrees down to depth levels below
+     * it, listed in pre-order as they are collected, and analyze the copy
+     */
+    private TreeAnalytics part(int root, int from, int to, int depth,
+                               Map<Integer, Integer> continuations, Map<Position, Integer> copiedContinuations) {
+        List<Position> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{root, -1, 0});
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            int node = entry[0];
+            int parent = entry[1];
+            Position position = copyNode(node, continuations, copiedContinuations);
+            if (parent >= 0) {
+                nodes.get(parent).getPositions().add(position);
+            }
+            int index = nodes.size();
+            nodes.add(position);
+            parents.add(parent);
+            if (entry[2] >= depth) {
+                continue;
+            }
+            int first = node == root ? from : 0;
+            int last = node == root ? to : tree.childCount(node);
+            for (int k = last - 1; k >= first; k--) {
+                stack.push(new int[]{tree.child(node, k), index, entry[2] + 1});
+            }
+        }
+        return TreeAnalytics.of(nodes, parents);
+    }
+
+    private Position copyNode(int index, Map<Integer, Integer> continuations, Map<Position, Integer> copiedContinuations) {
+        Position original = tree.node(index);
+        Position copy = new Position();
+        copy.setPositionID(original.getPositionID());
+        copy.setPositionName(original.getPositionName());
+        copy.setNorm(original.getNorm());
+        copy.setTitleCode(original.getTitleCode());
+        copy.setHiddenCount(original.getHiddenCount());
+        copy.setHiddenNorm(original.getHiddenNorm());
+        Integer page = continuations.get(index);
+        if (page != null) {
+            copiedContinuations.put(copy, page);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,261 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * PDPageContentStream wrapper that remembers the graphics and text state it has written
+ * and drops operators that would not change it: repeated fill and stroke colors, line
+ * widths, dash patterns and font selections.
+ *
+ * Text is positioned with relative Td offsets from the previous line, so several lines
+ * can share one BT/ET text object. All drawing on a page must go through the same
+ * writer, otherwise the tracked state no longer matches the stream.
+ *
+ * The writer opens the content stream itself, behind one buffer it owns, and hands that
+ * buffer to PDPageContentStream as its output. Text in a GSUB font is written into the
+ * same buffer as its cached GlyphRuns encoding instead of going through
+ * PDPageContentStream.showText, so its operators and PDFBox's stay in order.
+ */
+class ContentWriter implements Closeable {
+
+    private static final float[] SOLID = {};
+    private static final byte[] SHOW_TEXT = " Tj\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PDPageContentStream out;
+    private final OutputStream raw;
+
+    // Unknown until first written, so the first call always emits the operator
+    private Color nonStrokingColor;
+    private Color strokingColor;
+    private float lineWidth = Float.NaN;
+    private boolean solidLine;
+    private PDFont font;
+    private float fontSize = Float.NaN;
+    private GlyphRuns runs;
+
+    private boolean inText;
+    private float lineX;
+    private float lineY;
+
+    private ContentWriter(PDDocument document, PDAppearanceStream target, OutputStream content) {
+        this.raw = new BufferedOutputStream(content, BUFFER_SIZE);
+        this.out = new PDPageContentStream(document, target, raw);
+    }
+
+    /**
+     * Writer for the content of a new page; sets up the page's contents and resources
+     * the same way PDPageContentStream(document, page) does, compressed by the streams
+     */
+    static ContentWriter forPage(PDDocument document, PDPage page, PdfCompression.Streams streams) throws IOException {
+        PDStream contents = new PDStream(document);
+        page.setContents(contents);
+        PDResources resources = page.getResources();
+        if (resources == null) {
+            resources = new PDResources();
+            page.setResources(resources);
+        }
+        // PDPageContentStream only takes the resources from the form it is given
+        PDAppearanceStream target = new PDAppearanceStream(new COSStream());
+        target.setResources(resources);
+        return new ContentWriter(document, target, streams.open(contents.getCOSObject()));
+    }
+
+    /**
+     * Writer for the content of a form XObject, compressed by the streams
+     */
+    static ContentWriter forForm(PDDocument document, PDAppearanceStream form, PdfCompression.Streams streams) throws IOException {
+        return new ContentWriter(document, form, streams.open(form.getCOSObject()));
+    }
+
+    void setNonStrokingColor(Color color) throws IOException {
+        if (!color.equals(nonStrokingColor)) {
+            out.setNonStrokingColor(color);
+            nonStrokingColor = color;
+        }
+    }
+
+    void setStrokingColor(Color color) throws IOException {
+        if (!color.equals(strokingColor)) {
+            out.setStrokingColor(color);
+            strokingColor = color;
+        }
+    }
+
+    void setLineWidth(float width) throws IOException {
+        if (Float.compare(width, lineWidth) != 0) {
+            out.setLineWidth(width);
+            lineWidth = width;
+        }
+    }
+
+    void setSolidLine() throws IOException {
+        if (!solidLine) {
+            out.setLineDashPattern(SOLID, 0);
+            solidLine = true;
+        }
+    }
+
+    void moveTo(float x, float y) throws IOException {
+        out.moveTo(x, y);
+    }
+
+    void lineTo(float x, float y) throws IOException {
+        out.lineTo(x, y);
+    }
+
+    void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+        out.curveTo(x1, y1, x2, y2, x3, y3);
+    }
+
+    void addRect(float x, float y, float width, float height) throws IOException {
+        out.addRect(x, y, width, height);
+    }
+
+    void fill() throws IOException {
+        out.fill();
+    }
+
+    void stroke() throws IOException {
+        out.stroke();
+    }
+
+    void drawImage(PDImageXObject image, float x, float y, float width, float height) throws IOException {
+        out.drawImage(image, x, y, width, height);
+    }
+
+    /**
+     * Place a form XObject with its origin at (x, y). Do saves and restores the graphics
+     * state around the form, so whatever the form sets does not leak into the tracked state.
+     */
+    void drawForm(PDFormXObject form, float x, float y) throws IOException {
+        out.saveGraphicsState();
+        out.transform(Matrix.getTranslateInstance(x, y));
+        out.drawForm(form);
+        out.restoreGraphicsState();
+    }
+
+    /**
+     * Open a text object unless one is already open
+     */
+    void beginText() throws IOException {
+        if (!inText) {
+            out.beginText();
+            inText = true;
+            lineX = 0;
+            lineY = 0;
+        }
+    }
+
+    void endText() throws IOException {
+        if (inText) {
+            out.endText();
+            inText = false;
+        }
+    }
+
+    /**
+     * Select the font; font and size are text state and persist across text objects
+     */
+    void setFont(PDFont font, float fontSize) throws IOException {
+        if (font != this.font || Float.compare(fontSize, this.fontSize) != 0) {
+            out.setFont(font, fontSize);
+            this.font = font;
+            this.fontSize = fontSize;
+            this.runs = font instanceof PDType0Font ? GlyphRuns.of((PDType0Font) font) : null;
+        }
+    }
+
+    /**
+     * Start the next line at the absolute position (x, y) of the open text object
+     */
+    void moveTextTo(float x, float y) throws IOException {
+        out.newLineAtOffset(x - lineX, y - lineY);
+        lineX = x;
+        lineY = y;
+    }
+
+    /**
+     * Show text in the current font; the same bytes and subset glyphs as PDFBox's showText.
+     * Returns the glyphs GSUB substituted, which a subset needs besides the code points.
+     */
+    Set<Integer> showText(String text) throws IOException {
+        if (runs == null) {
+            out.showText(text);
+            return Collections.emptySet();
+        }
+        if (!inText) {
+            throw new IllegalStateException("Must call beginText() before showText()");
+        }
+        GlyphRuns.Run run = runs.encode((PDType0Font) font, text);
+        if (font.willBeSubset()) {
+            ((PDType0Font) font).addGlyphsToSubset(run.glyphIds);
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                font.addToSubset(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+        writeString(run.encoded);
+        raw.write(SHOW_TEXT);
+        return run.glyphIds;
+    }
+
+    /**
+     * A string operand as PDFBox writes it: literal when the bytes are 7-bit and hold no
+     * line breaks, hexadecimal otherwise
+     */
+    private void writeString(byte[] bytes) throws IOException {
+        boolean literal = true;
+        for (byte b : bytes) {
+            if (b < 0 || b == '\r' || b == '\n') {
+                literal = false;
+                break;
+            }
+        }
+        if (literal) {
+            raw.write('(');
+            for (byte b : bytes) {
+                if (b == '(' || b == ')' || b == '\\') {
+                    raw.write('\\');
+                }
+                raw.write(b);
+            }
+            raw.write(')');
+        } else {
+            raw.write('<');
+            for (byte b : bytes) {
+                raw.write(HEX[(b >> 4) & 0xF]);
+                raw.write(HEX[b & 0xF]);
+            }
+            raw.write('>');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        endText();
+        out.close();
+    }
+}
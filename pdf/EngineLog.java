@@ -0,0 +1,26 @@
+package myfirstmodule.pdf;
+
+/**
+ * Logging SPI of the render engine, one instance per log node (e.g. "OrgChartRenderer").
+ *
+ * Inside Mendix the nodes are Mendix log nodes; a plain JVM logs through java.util.logging.
+ */
+public interface EngineLog {
+
+    /**
+     * Creates the log of a node
+     */
+    interface Factory {
+        EngineLog getLog(String node);
+    }
+
+    boolean isTraceEnabled();
+
+    void trace(String message);
+
+    void info(String message);
+
+    void warn(String message);
+
+    void error(String message, Throwable cause);
+}
@@ -0,0 +1,30 @@
+package myfirstmodule.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Resource SPI of the render engine: where fonts, footer images and temporary files come from.
+ */
+public interface EngineResources {
+
+    /**
+     * A font file such as Roboto-Regular.ttf that is not on the classpath, or null if there is none
+     */
+    File findFont(String fileName);
+
+    /**
+     * The image file behind a footer image label. The default takes the label as Base64,
+     * optionally as a data URI.
+     */
+    default byte[] loadImage(String reference) throws IOException {
+        String base64 = reference.substring(reference.indexOf(',') + 1);
+        return Base64.getDecoder().decode(base64);
+    }
+
+    /**
+     * Directory for temporary files, e.g. the disk tier of the render cache
+     */
+    File getTempDirectory();
+}
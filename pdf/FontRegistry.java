@@ -0,0 +1,153 @@
+package myfirstmodule.pdf;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of parsed TrueType fonts.
+ *
+ * Each font file is resolved and parsed once per JVM; every new PDDocument only
+ * attaches a lightweight subset-embedding PDType0Font around the shared parsed font.
+ */
+public class FontRegistry {
+
+    private static final Map<String, TrueTypeFont> FONTS = new ConcurrentHashMap<>();
+
+    /**
+     * Attach Roboto-Regular to the given document (subset embedded on save)
+     */
+    public static PDFont loadRegular(PDDocument document) throws IOException {
+        return PDType0Font.load(document, getFont(Style.FONT_REGULAR), true);
+    }
+
+    /**
+     * Attach Roboto-Bold to the given document (subset embedded on save)
+     */
+    public static PDFont loadBold(PDDocument document) throws IOException {
+        return PDType0Font.load(document, getFont(Style.FONT_BOLD), true);
+    }
+
+    /**
+     * Get the shared parsed font, parsing it on first use
+     */
+    public static TrueTypeFont getFont(String fontName) throws IOException {
+        TrueTypeFont font = FONTS.get(fontName);
+        if (font != null) {
+            return font;
+        }
+        synchronized (FONTS) {
+            font = FONTS.get(fontName);
+            if (font == null) {
+                font = parseFont(fontName);
+                FONTS.put(fontName, font);
+            }
+            return font;
+        }
+    }
+
+    /**
+     * Directory holding the font as a plain file, on the classpath or in the engine's
+     * font directories; null if it is only inside a JAR or missing
+     */
+    static File fontDirectory(String fontName) {
+        String fileName = fontName + ".ttf";
+        for (String path : classpathCandidates(fileName)) {
+            URL url = FontRegistry.class.getResource(path);
+            if (url != null && "file".equals(url.getProtocol())) {
+                try {
+                    return new File(url.toURI()).getParentFile();
+                } catch (Exception e) {
+                    // Not a plain file after all
+                }
+            }
+        }
+        File file = OrgChartEngine.getInstance().getResources().findFont(fileName);
+        return file != null ? file.getParentFile() : null;
+    }
+
+    private static String[] classpathCandidates(String fileName) {
+        return new String[] {
+            "/myfirstmodule/font/" + fileName,
+            "/font/" + fileName,
+            "font/" + fileName,
+            "/resources/font/" + fileName
+        };
+    }
+
+    private static TrueTypeFont parseFont(String fontName) throws IOException {
+        String fileName = fontName + ".ttf";
+
+        // Try multiple resource paths to find the font (classpath)
+        String[] classpathCandidates = classpathCandidates(fileName);
+
+        RandomAccessRead source = null;
+        for (String path : classpathCandidates) {
+            URL url = FontRegistry.class.getResource(path);
+            if (url == null) {
+                continue;
+            }
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    source = new RandomAccessReadBufferedFile(new File(url.toURI()));
+                } catch (Exception e) {
+                    source = null;
+                }
+            }
+            if (source == null) {
+                try (InputStream in = url.openStream()) {
+                    source = new RandomAccessReadBuffer(in);
+                }
+            }
+            OrgChartEngine.log("FontRegistry").info("Found " + fileName + " at: " + path);
+            break;
+        }
+
+        // Fallback: the engine's font directories, e.g. the Mendix resources path
+        if (source == null) {
+            File file = OrgChartEngine.getInstance().getResources().findFont(fileName);
+            if (file != null) {
+                source = new RandomAccessReadBufferedFile(file);
+                OrgChartEngine.log("FontRegistry").info("Found " + fileName + " at file path: " + file);
+            }
+        }
+
+        if (source == null) {
+            throw new IOException("Could not find '" + fileName + "'. Tried classpath paths: " + String.join(", ", classpathCandidates) + " and the engine's font directories.");
+        }
+
+        // The parser copies the font data and closes the source, so a plain buffered read is all it needs
+        TrueTypeFont font = new TTFParser().parse(source);
+
+        // Tables are read lazily and without locking; read them all now so that
+        // concurrent renders only ever see fully initialized tables
+        font.getNaming();
+        font.getPostScript();
+        font.getOS2Windows();
+        font.getMaximumProfile();
+        font.getHeader();
+        font.getHorizontalHeader();
+        font.getHorizontalMetrics();
+        font.getIndexToLocation();
+        font.getGlyph();
+        font.getCmap();
+        font.getKerning();
+        font.getGsubData();
+        font.getUnicodeCmapLookup();
+
+        OrgChartEngine.log("FontRegistry").info("Parsed and cached " + fileName + " for all renders");
+        return font;
+    }
+}
@@ -0,0 +1,135 @@
+package myfirstmodule.pdf;
+
+import org.apache.fontbox.ttf.CmapLookup;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.fontbox.ttf.gsub.GsubWorker;
+import org.apache.fontbox.ttf.gsub.GsubWorkerFactory;
+import org.apache.fontbox.ttf.model.GsubData;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.util.StringUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached show-text encodings of one Type 0 TrueType font.
+ *
+ * PDPageContentStream.showText runs every string through the font's GSUB worker, and the
+ * Latin worker compiles a fresh tokenizer regex on each call. Labels repeat across boxes,
+ * pages and renders, so the encoded bytes are computed once per text with exactly the
+ * steps PDFBox uses (split on spaces, cmap lookup, GSUB, glyph IDs as CIDs) and reused.
+ *
+ * Tables are shared per parsed TrueType font across documents and threads, like
+ * GlyphWidths, and each has one GSUB worker built from the font's cmap and GSUB data.
+ * Every PDType0Font that embeds the font uses glyph IDs as CIDs, so the bytes are valid
+ * for all of them.
+ */
+class GlyphRuns {
+
+    private static final int MAX_RUNS = 16384;
+
+    private static final Map<TrueTypeFont, GlyphRuns> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * Encoded text and the glyphs GSUB substituted into it
+     */
+    static class Run {
+        final byte[] encoded;
+        final Set<Integer> glyphIds;
+
+        Run(byte[] encoded, Set<Integer> glyphIds) {
+            this.encoded = encoded;
+            this.glyphIds = glyphIds;
+        }
+    }
+
+    // Both come from the TrueType font alone, so no document's PDType0Font is kept
+    private final CmapLookup cmap;
+    private final GsubWorker gsub;
+
+    private final Map<String, Run> runs = Collections.synchronizedMap(
+            new LinkedHashMap<String, Run>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Run> eldest) {
+                    return size() > MAX_RUNS;
+                }
+            });
+
+    private GlyphRuns(PDType0Font font) throws IOException {
+        this.cmap = font.getCmapLookup();
+        this.gsub = new GsubWorkerFactory().getGsubWorker(cmap, font.getGsubData());
+    }
+
+    /**
+     * The shared table for the font's TrueType font, or null when PDFBox does not run
+     * GSUB for it and plain showText is already cheap
+     */
+    static GlyphRuns of(PDType0Font font) throws IOException {
+        if (!(font.getDescendantFont() instanceof PDCIDFontType2)
+                || font.getGsubData() == GsubData.NO_DATA_FOUND) {
+            return null;
+        }
+        TrueTypeFont ttf = ((PDCIDFontType2) font.getDescendantFont()).getTrueTypeFont();
+        GlyphRuns runs = SHARED.get(ttf);
+        if (runs == null) {
+            // A race builds a spare table, which is dropped
+            GlyphRuns created = new GlyphRuns(font);
+            runs = SHARED.putIfAbsent(ttf, created);
+            runs = runs != null ? runs : created;
+        }
+        return runs;
+    }
+
+    /**
+     * The bytes PDFBox would write for the text with this font
+     */
+    Run encode(PDType0Font font, String text) throws IOException {
+        Run run = runs.get(text);
+        if (run == null) {
+            run = build(font, text);
+            runs.put(text, run);
+        }
+        return run;
+    }
+
+    /**
+     * Encode with the font's one GSUB worker; the workers keep no state between calls
+     */
+    private Run build(PDType0Font font, String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Set<Integer> glyphIds = new HashSet<>();
+        for (String word : StringUtil.tokenizeOnSpace(text)) {
+            if (word == null) {
+                continue;
+            }
+            if (word.length() == 1 && Character.isWhitespace(word.charAt(0))) {
+                out.write(font.encode(word));
+                continue;
+            }
+            int[] codePoints = word.codePoints().toArray();
+            List<Integer> original = new ArrayList<>(codePoints.length);
+            for (int codePoint : codePoints) {
+                int glyphId = cmap.getGlyphId(codePoint);
+                if (glyphId <= 0) {
+                    throw new IllegalStateException("could not find the glyphId for the character: "
+                            + new String(Character.toChars(codePoint)));
+                }
+                original.add(glyphId);
+            }
+            for (int glyphId : gsub.applyTransforms(original)) {
+                out.write(font.encodeGlyphId(glyphId));
+                glyphIds.add(glyphId);
+            }
+        }
+        return new Run(out.toByteArray(), Collections.unmodifiableSet(glyphIds));
+    }
+}
@@ -0,0 +1,192 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached glyph advances of one font, plus a process-wide cache of wrapped labels.
+ *
+ * Advances are kept in font units (1/1000 em), so one table serves every font size;
+ * the size is applied once per line exactly as PDFont.getStringWidth(s) / 1000 * size
+ * does. Latin and Turkish code points live in a flat array, anything else in a map.
+ * Widths are summed glyph by glyph from left to right, the same order PDFBox uses, so
+ * measurements and line breaks are bit-for-bit identical to measuring whole strings.
+ *
+ * Tables are shared per parsed TrueType font across documents and threads. They are
+ * filled lazily through the caller's own PDFont, because PDFont instances are not
+ * thread-safe.
+ */
+class GlyphWidths {
+
+    private static final int ARRAY_CODE_POINTS = 0x250; // Basic Latin .. Latin Extended-B (covers Turkish)
+    private static final int MAX_WRAPPED = 8192;
+
+    private static final Map<Object, GlyphWidths> SHARED = new ConcurrentHashMap<>();
+
+    private static final Map<WrapKey, Wrapped> WRAPPED = Collections.synchronizedMap(
+            new LinkedHashMap<WrapKey, Wrapped>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<WrapKey, Wrapped> eldest) {
+                    return size() > MAX_WRAPPED;
+                }
+            });
+
+    /**
+     * Lines of a wrapped label and their widths in font units
+     */
+    static class Wrapped {
+        final List<String> lines;
+        final float[] widths;
+
+        Wrapped(List<String> lines, float[] widths) {
+            this.lines = lines;
+            this.widths = widths;
+        }
+    }
+
+    private static class WrapKey {
+        final String text;
+        final GlyphWidths font;
+        final float fontSize;
+        final float maxWidth;
+
+        WrapKey(String text, GlyphWidths font, float fontSize, float maxWidth) {
+            this.text = text;
+            this.font = font;
+            this.fontSize = fontSize;
+            this.maxWidth = maxWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WrapKey)) {
+                return false;
+            }
+            WrapKey k = (WrapKey) o;
+            return font == k.font && Float.compare(fontSize, k.fontSize) == 0
+                    && Float.compare(maxWidth, k.maxWidth) == 0 && text.equals(k.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, System.identityHashCode(font), fontSize, maxWidth);
+        }
+    }
+
+    private final float[] latin = new float[ARRAY_CODE_POINTS];
+    private final Map<Integer, Float> others = new ConcurrentHashMap<>();
+
+    private GlyphWidths() {
+        Arrays.fill(latin, Float.NaN);
+    }
+
+    /**
+     * The shared table for the font's underlying TrueType font (or for the font itself)
+     */
+    static GlyphWidths of(PDFont font) {
+        Object key = font;
+        if (font instanceof PDType0Font && ((PDType0Font) font).getDescendantFont() instanceof PDCIDFontType2) {
+            key = ((PDCIDFontType2) ((PDType0Font) font).getDescendantFont()).getTrueTypeFont();
+        }
+        return SHARED.computeIfAbsent(key, k -> new GlyphWidths());
+    }
+
+    /**
+     * Width of the text in font units; same value as font.getStringWidth(text)
+     */
+    float measure(PDFont font, String text) throws IOException {
+        float width = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            width += advance(font, codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    /**
+     * Word-wrap the text at spaces so every line fits maxWidth (a single long word is kept whole).
+     * Lines are built in one pass with running widths; results are cached by text, font, size and width.
+     */
+    Wrapped wrap(PDFont font, String text, float fontSize, float maxWidth) throws IOException {
+        WrapKey key = new WrapKey(text, this, fontSize, maxWidth);
+        Wrapped wrapped = WRAPPED.get(key);
+        if (wrapped != null) {
+            return wrapped;
+        }
+
+        List<String> lines = new ArrayList<>();
+        List<Float> widths = new ArrayList<>();
+
+        // Split by spaces only - no hyphenation
+        String[] words = text.split("\\s+");
+        StringBuilder currentLine = new StringBuilder();
+        float currentWidth = 0;
+        float spaceWidth = advance(font, ' ');
+
+        for (String word : words) {
+            float testWidth = currentLine.length() == 0 ? 0 : currentWidth + spaceWidth;
+            for (int i = 0; i < word.length(); ) {
+                int codePoint = word.codePointAt(i);
+                testWidth += advance(font, codePoint);
+                i += Character.charCount(codePoint);
+            }
+
+            // If word is too long for a single line, just put it anyway (no hyphenation)
+            if (testWidth / 1000 * fontSize > maxWidth && currentLine.length() > 0) {
+                lines.add(currentLine.toString());
+                widths.add(currentWidth);
+                currentLine.setLength(0);
+                currentLine.append(word);
+                currentWidth = measure(font, word);
+            } else {
+                if (currentLine.length() > 0) {
+                    currentLine.append(' ');
+                }
+                currentLine.append(word);
+                currentWidth = testWidth;
+            }
+        }
+
+        if (currentLine.length() > 0) {
+            lines.add(currentLine.toString());
+            widths.add(currentWidth);
+        }
+
+        float[] lineWidths = new float[widths.size()];
+        for (int i = 0; i < lineWidths.length; i++) {
+            lineWidths[i] = widths.get(i);
+        }
+        wrapped = new Wrapped(Collections.unmodifiableList(lines), lineWidths);
+        WRAPPED.put(key, wrapped);
+        return wrapped;
+    }
+
+    private float advance(PDFont font, int codePoint) throws IOException {
+        if (codePoint < ARRAY_CODE_POINTS) {
+            float width = latin[codePoint];
+            if (Float.isNaN(width)) {
+                width = font.getStringWidth(new String(Character.toChars(codePoint)));
+                latin[codePoint] = width;
+            }
+            return width;
+        }
+        Float width = others.get(codePoint);
+        if (width == null) {
+            width = font.getStringWidth(new String(Character.toChars(codePoint)));
+            others.put(codePoint, width);
+        }
+        return width;
+    }
+}
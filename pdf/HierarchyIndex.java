@@ -0,0 +1,327 @@
+package myfirstmodule.pdf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path-segment trie over the HierarchyCodes of a parsed organization.
+ *
+ * A code like "/1/2/10/" is stored as the path 1 → 2 → 10; numeric segments are kept
+ * as ints and other segments are interned once. The parser attaches every position to
+ * its trie node, which from then on stands in for the position's code strings, so a
+ * position costs one small node instead of a full path string. Each node keeps its
+ * children in an array sorted by segment, so a code is found by binary search per
+ * segment, with no hash entry per position.
+ *
+ * The tree builder resolves parent codes through the index, and a scope finds its root
+ * code in it.
+ */
+class HierarchyIndex {
+
+    /**
+     * One HierarchyCode in the trie
+     */
+    static class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final Node parent;
+        final int segment;
+        final int depth;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        Position position;
+
+        Node(Node parent, int segment) {
+            this.parent = parent;
+            this.segment = segment;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        /**
+         * The index the node belongs to, kept once on its root
+         */
+        HierarchyIndex getIndex() {
+            Node n = this;
+            while (n.parent != null) {
+                n = n.parent;
+            }
+            return ((Root) n).index;
+        }
+
+        Node getParent() {
+            return parent;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        /**
+         * First position registered for this code, or null for codes only seen as a prefix
+         */
+        Position getPosition() {
+            return position;
+        }
+
+        /**
+         * The full HierarchyCode, e.g. "/1/2/10/", written back to front into one array
+         */
+        String getCode() {
+            HierarchyIndex index = getIndex();
+            int length = 1;
+            for (Node n = this; n.parent != null; n = n.parent) {
+                length += index.segmentLength(n.segment) + 1;
+            }
+            char[] code = new char[length];
+            int end = length;
+            for (Node n = this; n.parent != null; n = n.parent) {
+                code[--end] = '/';
+                end = index.writeSegment(n.segment, code, end);
+            }
+            code[0] = '/';
+            return new String(code);
+        }
+
+        private int find(int segment) {
+            // Codes mostly arrive in ascending order, so the last child is checked first
+            if (childCount > 0 && children[childCount - 1].segment < segment) {
+                return -childCount - 1;
+            }
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = children[mid].segment;
+                if (value < segment) {
+                    low = mid + 1;
+                } else if (value > segment) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+
+        Node child(int segment) {
+            int at = find(segment);
+            return at >= 0 ? children[at] : null;
+        }
+
+        Node addChild(int segment) {
+            int at = find(segment);
+            if (at >= 0) {
+                return children[at];
+            }
+            at = -at - 1;
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            Node child = new Node(this, segment);
+            children[at] = child;
+            childCount++;
+            return child;
+        }
+    }
+
+    private static class Root extends Node {
+        final HierarchyIndex index;
+
+        Root(HierarchyIndex index) {
+            super(null, 0);
+            this.index = index;
+        }
+    }
+
+    private final Node root = new Root(this);
+    private final Map<String, Integer> textSegmentIds = new HashMap<>();
+    private final List<String> textSegments = new ArrayList<>();
+    private final Map<String, Position> irregular = new HashMap<>();
+
+    /**
+     * Get the index the position was attached to by the parser, or build one over the
+     * tree below it. Building leaves the positions as they are; they keep their code strings.
+     */
+    static HierarchyIndex of(Position position) {
+        if (position == null) {
+            return null;
+        }
+        if (position.getHierarchyNode() != null) {
+            return position.getHierarchyNode().getIndex();
+        }
+        HierarchyIndex index = new HierarchyIndex();
+        List<Position> stack = new ArrayList<>();
+        stack.add(position);
+        while (!stack.isEmpty()) {
+            Position p = stack.remove(stack.size() - 1);
+            index.register(p);
+            List<Position> kids = p.getPositions();
+            for (int i = kids.size() - 1; i >= 0; i--) {
+                stack.add(kids.get(i));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Trie node for the code, or null if no position has this code or a code below it
+     */
+    Node find(String hierarchyCode) {
+        if (!isCanonical(hierarchyCode)) {
+            return null;
+        }
+        Node node = root;
+        int start = 1;
+        int end = hierarchyCode.length() - 1;
+        while (start < end && node != null) {
+            int slash = hierarchyCode.indexOf('/', start);
+            int segment = segmentId(hierarchyCode, start, slash, false);
+            node = segment == Integer.MIN_VALUE ? null : node.child(segment);
+            start = slash + 1;
+        }
+        return node;
+    }
+
+    /**
+     * First position registered for the code
+     */
+    Position get(String hierarchyCode) {
+        Node node = find(hierarchyCode);
+        if (node != null) {
+            return node.position;
+        }
+        return hierarchyCode != null ? irregular.get(hierarchyCode) : null;
+    }
+
+    /**
+     * Register a position under its HierarchyCode; the first position for a code wins.
+     * Returns the trie node of a canonical code ("/a/b/"), or null for a position without
+     * a code or with one the trie does not represent, which is looked up by its string.
+     * The position itself is not changed; see attach.
+     */
+    Node register(Position position) {
+        String code = position.getHierarchyCode();
+        if (code == null || code.isEmpty()) {
+            return null;
+        }
+        if (!isCanonical(code)) {
+            irregular.putIfAbsent(code, position);
+            return null;
+        }
+
+        Node node = root;
+        int start = 1;
+        int end = code.length() - 1;
+        while (start < end) {
+            int slash = code.indexOf('/', start);
+            node = node.addChild(segmentId(code, start, slash, true));
+            start = slash + 1;
+        }
+        if (node.position == null) {
+            node.position = position;
+        }
+        return node;
+    }
+
+    /**
+     * Let the position get its codes from its trie node and drop its code strings; the
+     * parent code is only dropped when it is the code of the parent node
+     */
+    void attach(Position position, Node node) {
+        String code = position.getHierarchyCode();
+        String parentCode = position.getParentHierarchyCode();
+        position.setHierarchyNode(node);
+        position.setHierarchyCode(null);
+        if (parentCode != null && node.parent != root
+                && parentCode.length() == code.length() - segmentLength(node.segment) - 1
+                && code.startsWith(parentCode)) {
+            position.setParentHierarchyCodeFromNode();
+        }
+    }
+
+    /**
+     * Position registered for the parent code of the given position, or null
+     */
+    Position parentOf(Position position) {
+        Node node = position.getHierarchyNode();
+        if (node != null && position.isParentCodeFromNode()) {
+            return node.parent.position;
+        }
+        String parentCode = position.getParentHierarchyCode();
+        return parentCode != null && !parentCode.isEmpty() ? get(parentCode) : null;
+    }
+
+    /**
+     * Codes the trie represents exactly: leading and trailing '/', no empty segments
+     */
+    private static boolean isCanonical(String code) {
+        if (code == null || code.length() < 3 || code.charAt(0) != '/' || code.charAt(code.length() - 1) != '/') {
+            return false;
+        }
+        return code.indexOf("//") < 0;
+    }
+
+    /**
+     * Canonical non-negative numbers map to themselves, anything else to a negative interned id.
+     * Returns Integer.MIN_VALUE for an unknown text segment when not interning.
+     */
+    private int segmentId(String code, int start, int end, boolean intern) {
+        int length = end - start;
+        boolean numeric = length > 0 && length <= 9 && (code.charAt(start) != '0' || length == 1);
+        int value = 0;
+        for (int i = start; numeric && i < end; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                numeric = false;
+            } else {
+                value = value * 10 + (c - '0');
+            }
+        }
+        if (numeric) {
+            return value;
+        }
+        String text = code.substring(start, end);
+        Integer id = textSegmentIds.get(text);
+        if (id == null) {
+            if (!intern) {
+                return Integer.MIN_VALUE;
+            }
+            textSegments.add(text);
+            id = -textSegments.size();
+            textSegmentIds.put(text, id);
+        }
+        return id;
+    }
+
+    private int segmentLength(int segment) {
+        if (segment < 0) {
+            return textSegments.get(-segment - 1).length();
+        }
+        int length = 1;
+        for (int value = segment; value >= 10; value /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Write the segment so that it ends before end; returns where it starts
+     */
+    private int writeSegment(int segment, char[] code, int end) {
+        if (segment < 0) {
+            String text = textSegments.get(-segment - 1);
+            text.getChars(0, text.length(), code, end - text.length());
+            return end - text.length();
+        }
+        int value = segment;
+        do {
+            code[--end] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return end;
+    }
+}
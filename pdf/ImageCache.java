@@ -0,0 +1,212 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of embedded images, keyed by the SHA-256 of the decoded image file.
+ *
+ * The first render of an image lets PDFBox decode and encode it as usual, then keeps a
+ * detached copy of the resulting XObject: dictionaries, arrays and the already filtered
+ * stream bytes, including a soft mask or ICC profile. Later renders rebuild the XObject
+ * in their own document from that copy, so the image is neither decoded nor compressed
+ * again. The cache holds at most orgchart.imageCache.maxBytes (default 32 MB) of
+ * stream data and evicts the least recently used images beyond that.
+ */
+class ImageCache {
+
+    private static final long MAX_BYTES = Long.getLong("orgchart.imageCache.maxBytes", 32L * 1024 * 1024);
+
+    private static final LinkedHashMap<String, Snapshot> IMAGES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes;
+
+    /**
+     * Detached copy of a stream: its dictionary and raw (still filtered) data
+     */
+    private static class FrozenStream {
+        final Map<COSName, Object> dictionary;
+        final byte[] data;
+
+        FrozenStream(Map<COSName, Object> dictionary, byte[] data) {
+            this.dictionary = dictionary;
+            this.data = data;
+        }
+    }
+
+    private static class Snapshot {
+        final FrozenStream image;
+        final long size;
+
+        Snapshot(FrozenStream image, long size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+
+    private ImageCache() {
+    }
+
+    /**
+     * Hex SHA-256 of the image bytes, the key used by embed
+     */
+    static String hash(byte[] imageBytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest(imageBytes)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Add the image to the document, from the cache when it was embedded before
+     */
+    static PDImageXObject embed(PDDocument document, String hash, byte[] imageBytes) throws IOException {
+        Snapshot snapshot;
+        synchronized (IMAGES) {
+            snapshot = IMAGES.get(hash);
+        }
+        if (snapshot != null) {
+            return new PDImageXObject(new PDStream(thaw(snapshot.image, document)), null);
+        }
+
+        PDImageXObject image = PDImageXObject.createFromByteArray(document, imageBytes, hash);
+        long[] size = new long[1];
+        FrozenStream frozen = freeze(image.getCOSObject(), size);
+        put(hash, new Snapshot(frozen, size[0]));
+        return image;
+    }
+
+    private static void put(String hash, Snapshot snapshot) {
+        if (snapshot.size > MAX_BYTES) {
+            return;
+        }
+        synchronized (IMAGES) {
+            Snapshot previous = IMAGES.put(hash, snapshot);
+            cachedBytes += snapshot.size - (previous != null ? previous.size : 0);
+            Iterator<Map.Entry<String, Snapshot>> eldest = IMAGES.entrySet().iterator();
+            while (cachedBytes > MAX_BYTES && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().size;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static FrozenStream freeze(COSStream stream, long[] size) throws IOException {
+        byte[] data;
+        try (InputStream in = stream.createRawInputStream()) {
+            data = in.readAllBytes();
+        }
+        size[0] += data.length;
+        Map<COSName, Object> dictionary = new LinkedHashMap<>();
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            // The length is written again with the copied data
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                dictionary.put(entry.getKey(), freeze(entry.getValue(), size));
+            }
+        }
+        return new FrozenStream(dictionary, data);
+    }
+
+    private static Object freeze(COSBase value, long[] size) throws IOException {
+        if (value instanceof COSObject) {
+            value = ((COSObject) value).getObject();
+        }
+        if (value instanceof COSStream) {
+            return freeze((COSStream) value, size);
+        }
+        if (value instanceof COSDictionary) {
+            Map<COSName, Object> dictionary = new LinkedHashMap<>();
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+                dictionary.put(entry.getKey(), freeze(entry.getValue(), size));
+            }
+            return dictionary;
+        }
+        if (value instanceof COSArray) {
+            List<Object> array = new ArrayList<>();
+            for (int i = 0; i < ((COSArray) value).size(); i++) {
+                array.add(freeze(((COSArray) value).get(i), size));
+            }
+            return array;
+        }
+        if (value instanceof COSString) {
+            return ((COSString) value).getBytes().clone();
+        }
+        if (value instanceof COSFloat) {
+            return ((COSFloat) value).floatValue();
+        }
+        if (value instanceof COSInteger) {
+            return ((COSInteger) value).longValue();
+        }
+        // Names, booleans and null are immutable and shared by all documents
+        return value != null ? value : COSNull.NULL;
+    }
+
+    private static COSStream thaw(FrozenStream frozen, PDDocument document) throws IOException {
+        COSStream stream = document.getDocument().createCOSStream();
+        for (Map.Entry<COSName, Object> entry : frozen.dictionary.entrySet()) {
+            stream.setItem(entry.getKey(), thaw(entry.getValue(), document));
+        }
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(frozen.data);
+        }
+        return stream;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static COSBase thaw(Object value, PDDocument document) throws IOException {
+        if (value instanceof FrozenStream) {
+            return thaw((FrozenStream) value, document);
+        }
+        if (value instanceof Map) {
+            COSDictionary dictionary = new COSDictionary();
+            for (Map.Entry<COSName, Object> entry : ((Map<COSName, Object>) value).entrySet()) {
+                dictionary.setItem(entry.getKey(), thaw(entry.getValue(), document));
+            }
+            return dictionary;
+        }
+        if (value instanceof List) {
+            COSArray array = new COSArray();
+            for (Object item : (List<Object>) value) {
+                array.add(thaw(item, document));
+            }
+            return array;
+        }
+        if (value instanceof byte[]) {
+            return new COSString((byte[]) value);
+        }
+        if (value instanceof Float) {
+            return new COSFloat((Float) value);
+        }
+        if (value instanceof Long) {
+            return COSInteger.get((Long) value);
+        }
+        return (COSBase) value;
+    }
+}
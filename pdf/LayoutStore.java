@@ -0,0 +1,94 @@
+package myfirstmodule.pdf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dense layout of one org tree.
+ *
+ * Nodes are addressed by their TreeAnalytics pre-order index and their boxes live in
+ * primitive arrays, so a layout costs five array slots per node instead of a map entry
+ * plus a NodeLayout object, and drawing walks the arrays in order. Coordinates are
+ * layout space; page offsets are added by the caller while drawing.
+ */
+public class LayoutStore {
+
+    private final TreeAnalytics analytics;
+    final float[] x;
+    final float[] y;
+    final float[] width;
+    final float[] height;
+    final int[] level;
+
+    LayoutStore(TreeAnalytics analytics) {
+        int n = analytics.size();
+        this.analytics = analytics;
+        this.x = new float[n];
+        this.y = new float[n];
+        this.width = new float[n];
+        this.height = new float[n];
+        this.level = new int[n];
+    }
+
+    void set(int index, float x, float y, float width, float height, int level) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.width[index] = width;
+        this.height[index] = height;
+        this.level[index] = level;
+    }
+
+    public TreeAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Number of nodes in the layout
+     */
+    public int size() {
+        return x.length;
+    }
+
+    public Position getPosition(int index) {
+        return analytics.node(index);
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public float getWidth(int index) {
+        return width[index];
+    }
+
+    public float getHeight(int index) {
+        return height[index];
+    }
+
+    public int getLevel(int index) {
+        return level[index];
+    }
+
+    /**
+     * Layout of a single node as a NodeLayout, or null if it is not in the tree
+     */
+    public OrgChartLayout.NodeLayout get(Position position) {
+        int i = analytics.index(position);
+        return i >= 0 ? new OrgChartLayout.NodeLayout(x[i], y[i], width[i], height[i], level[i]) : null;
+    }
+
+    /**
+     * Copy into the map form returned by OrgChartLayout.layoutTree
+     */
+    public Map<Position, OrgChartLayout.NodeLayout> toMap() {
+        Map<Position, OrgChartLayout.NodeLayout> layouts = new HashMap<>();
+        for (int i = 0; i < x.length; i++) {
+            layouts.put(analytics.node(i), new OrgChartLayout.NodeLayout(x[i], y[i], width[i], height[i], level[i]));
+        }
+        return layouts;
+    }
+}
@@ -0,0 +1,246 @@
+package myfirstmodule.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders many org charts through the RenderExecutor, in the render worker processes
+ * when those are configured.
+ *
+ * Each job is admitted like a single render, so a batch stays within the render limit;
+ * of the running renders at most a fixed number belong to the batch, so memory stays
+ * bounded no matter how long the job list is. That number stays below the executor's
+ * limit, so single renders always find a free slot during a batch. Renders share the parsed fonts
+ * (FontRegistry) and the decoded footer logos; each job only creates its own
+ * PDDocument. Finished documents are handed to the calling thread in completion order,
+ * which is where Mendix objects or a ZIP stream may be touched safely.
+ */
+public class OrgChartBatchRenderer {
+
+    /**
+     * Receives each rendered document on the calling thread
+     */
+    public interface ResultHandler {
+        void accept(OrgChartJob job, String fileName, byte[] pdf) throws Exception;
+    }
+
+    /**
+     * Outcome of a batch: number of rendered documents, the failed jobs by file name and
+     * the profile of every document rendered in this JVM (not cached) by file name
+     */
+    public static class BatchResult {
+        private int rendered;
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private final Map<String, RenderProfile> profiles = new LinkedHashMap<>();
+
+        public int getRendered() {
+            return rendered;
+        }
+
+        public Map<String, String> getFailures() {
+            return failures;
+        }
+
+        public Map<String, RenderProfile> getProfiles() {
+            return profiles;
+        }
+    }
+
+    private static class Rendered {
+        final OrgChartJob job;
+        final String fileName;
+        final byte[] pdf;
+        final RenderProfile profile;
+        final Throwable failure;
+
+        Rendered(OrgChartJob job, String fileName, byte[] pdf, RenderProfile profile, Throwable failure) {
+            this.job = job;
+            this.fileName = fileName;
+            this.pdf = pdf;
+            this.profile = profile;
+            this.failure = failure;
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * @param threads most jobs of the batch rendering at once; 0 or less uses one per
+     *                available processor. Either way one RenderExecutor slot is left
+     *                for single renders, unless the executor only has one.
+     */
+    public OrgChartBatchRenderer(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Render all jobs and pass each document to the handler. A failing job is logged
+     * and reported in the result; it does not stop the rest of the batch. Neither does
+     * a job the RenderExecutor rejects: it waits for one of the batch's own renders to
+     * finish and is only reported as failed if none is running.
+     */
+    public BatchResult renderEach(List<OrgChartJob> jobs, ResultHandler handler) throws Exception {
+        BatchResult result = new BatchResult();
+        RenderExecutor executor = RenderExecutor.getInstance();
+        BlockingQueue<Rendered> done = new LinkedBlockingQueue<>();
+        Set<String> usedNames = new HashSet<>();
+        String[] fileNames = new String[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            fileNames[i] = uniqueFileName(jobs.get(i), i, usedNames);
+        }
+        int limit = Math.max(1, Math.min(threads, executor.getMaxConcurrent() - 1));
+        int next = 0;
+        int inFlight = 0;
+
+        try {
+            while (next < jobs.size() || inFlight > 0) {
+                while (next < jobs.size() && inFlight < limit) {
+                    OrgChartJob job = jobs.get(next);
+                    String fileName = fileNames[next];
+                    try {
+                        executor.submit(() -> done.add(renderJob(job, fileName)));
+                    } catch (RejectedExecutionException e) {
+                        if (inFlight > 0) {
+                            break;
+                        }
+                        done.add(new Rendered(job, fileName, null, null, e));
+                    }
+                    next++;
+                    inFlight++;
+                }
+
+                Rendered rendered = done.take();
+                inFlight--;
+                if (rendered.failure instanceof Error) {
+                    throw (Error) rendered.failure;
+                }
+                if (rendered.failure != null) {
+                    OrgChartEngine.log("OrgChartBatchRenderer").error("Failed to render '" + rendered.fileName + "': " + rendered.failure.getMessage(), rendered.failure);
+                    result.failures.put(rendered.fileName, String.valueOf(rendered.failure.getMessage()));
+                    continue;
+                }
+                handler.accept(rendered.job, rendered.fileName, rendered.pdf);
+                result.rendered++;
+                if (rendered.profile != null) {
+                    result.profiles.put(rendered.fileName, rendered.profile);
+                }
+            }
+        } finally {
+            // Drain what is still running if the handler failed, so no render outlives the call
+            while (inFlight > 0) {
+                done.take();
+                inFlight--;
+            }
+        }
+
+        OrgChartEngine.log("OrgChartBatchRenderer").info("Rendered " + result.rendered + " of " + jobs.size() + " org charts, at most " + limit + " at once");
+        return result;
+    }
+
+    /**
+     * Render all jobs into a ZIP archive written to the given stream (one PDF entry per job).
+     * The stream is finished but not closed.
+     */
+    public BatchResult renderZip(List<OrgChartJob> jobs, OutputStream out) throws Exception {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // The PDF streams are already compressed, so favour speed over ratio
+        zip.setLevel(Deflater.BEST_SPEED);
+        BatchResult result = renderEach(jobs, (job, fileName, pdf) -> {
+            zip.putNextEntry(new ZipEntry(fileName));
+            zip.write(pdf);
+            zip.closeEntry();
+        });
+        zip.finish();
+        return result;
+    }
+
+    /**
+     * Render one job on a render thread; failures, errors included, are returned to the
+     * calling thread
+     */
+    private Rendered renderJob(OrgChartJob job, String fileName) {
+        try {
+            // Jobs repeating an earlier render (in this batch or before) come from the cache
+            String cacheKey = job.cacheKey();
+            byte[] cached = RenderCache.getInstance().get(cacheKey);
+            if (cached != null) {
+                return new Rendered(job, fileName, cached, null, null);
+            }
+
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            RenderProfile profile = null;
+            RenderWorkerPool workers = RenderWorkerPool.getInstance();
+            if (workers != null) {
+                // Parsed and rendered in a worker process, which logs its own profile
+                workers.render(job, pdf);
+            } else {
+                OrgChartEngine engine = OrgChartEngine.getInstance();
+                profile = new RenderProfile();
+                Position dataTR = engine.parse(job.getOrgJsonTR(), job, profile);
+                Position dataEN = engine.parse(job.getOrgJsonEN(), job, profile);
+
+                // Pages are not parallelized within a job; the batch already keeps the render slots busy
+                engine.render(job, dataTR, dataEN, profile, false, pdf);
+                profile.log("OrgChartBatchRenderer", "Rendered '" + fileName + "'");
+            }
+            byte[] bytes = pdf.toByteArray();
+            RenderCache.getInstance().put(cacheKey, bytes);
+            return new Rendered(job, fileName, bytes, profile, null);
+        } catch (Throwable t) {
+            return new Rendered(job, fileName, null, null, t);
+        }
+    }
+
+    /**
+     * File name of the job (default OrgChart-<n>.pdf), made unique within the batch ignoring
+     * case, as ZIPs are often extracted to case-insensitive file systems; usedNames holds
+     * the names taken so far in lower case
+     */
+    private static String uniqueFileName(OrgChartJob job, int index, Set<String> usedNames) {
+        String name = safeFileName(job.getFileName());
+        if (name.isEmpty()) {
+            name = "OrgChart-" + (index + 1) + ".pdf";
+        }
+        if (!name.toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+            name = name + ".pdf";
+        }
+        String candidate = name;
+        for (int n = 2; !usedNames.add(candidate.toLowerCase(Locale.ROOT)); n++) {
+            candidate = name.substring(0, name.length() - 4) + " (" + n + ").pdf";
+        }
+        return candidate;
+    }
+
+    /**
+     * The last path segment of the name without control characters or colons, so a ZIP
+     * entry cannot point outside the folder it is extracted to; empty if nothing is left
+     */
+    static String safeFileName(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        StringBuilder safe = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isISOControl(c) && c != ':') {
+                safe.append(c);
+            }
+        }
+        String result = safe.toString().trim();
+        // "." and ".." stand for a folder, not a file
+        return result.matches("\\.*") ? "" : result;
+    }
+}
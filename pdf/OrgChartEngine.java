@@ -0,0 +1,228 @@
+package myfirstmodule.pdf;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The parse, layout and render pipeline without any Mendix dependency.
+ *
+ * An engine combines the logging and resource SPIs and is installed once per JVM.
+ * Until one is installed, a standalone engine logs through java.util.logging and
+ * finds fonts on the classpath, in the directory named by orgchart.fontDir and under
+ * resources/font. The Mendix actions install MendixEngine and only adapt their
+ * parameters to an OrgChartJob; render workers and load tests run the same engine
+ * in a plain JVM. Documents are written to any OutputStream, which is the output sink.
+ */
+public class OrgChartEngine {
+
+    private static volatile OrgChartEngine instance;
+
+    private final EngineLog.Factory logs;
+    private final EngineResources resources;
+    private final Map<String, EngineLog> nodes = new ConcurrentHashMap<>();
+
+    public OrgChartEngine(EngineLog.Factory logs, EngineResources resources) {
+        this.logs = logs;
+        this.resources = resources;
+    }
+
+    /**
+     * An engine for a plain JVM
+     */
+    public static OrgChartEngine standalone() {
+        List<File> fontDirectories = new ArrayList<>();
+        String fontDir = System.getProperty("orgchart.fontDir", "").trim();
+        if (!fontDir.isEmpty()) {
+            fontDirectories.add(new File(fontDir));
+        }
+        fontDirectories.add(new File("resources" + File.separator + "font"));
+        File temp = new File(System.getProperty("java.io.tmpdir"));
+        return new OrgChartEngine(JavaLog::new, new DirectoryResources(temp, fontDirectories.toArray(new File[0])));
+    }
+
+    /**
+     * The installed engine, or a standalone one if none was installed
+     */
+    public static OrgChartEngine getInstance() {
+        OrgChartEngine engine = instance;
+        if (engine == null) {
+            synchronized (OrgChartEngine.class) {
+                engine = instance;
+                if (engine == null) {
+                    engine = standalone();
+                    PdfCompression.configure();
+                    instance = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Make the engine the one used by every render in this JVM, and read the PDF
+     * compression settings for the renders (orgchart.pdf.compression, orgchart.pdf.flateLevel)
+     */
+    public static void install(OrgChartEngine engine) {
+        PdfCompression.configure();
+        instance = engine;
+    }
+
+    /**
+     * The log of a node of the installed engine; created once per node, as the parser
+     * asks for it per position
+     */
+    public static EngineLog log(String node) {
+        OrgChartEngine engine = getInstance();
+        return engine.nodes.computeIfAbsent(node, engine.logs::getLog);
+    }
+
+    public EngineResources getResources() {
+        return resources;
+    }
+
+    /**
+     * Parse one org JSON of the job, keeping the job's subtree and depth; null if there is no JSON
+     */
+    public Position parse(String json, OrgChartJob job, RenderProfile profile) throws Exception {
+        return OrgChartParser.parse(json, job.getRootHierarchyCode(), job.getMaxDepth(), profile);
+    }
+
+    /**
+     * Parse one org JSON of the job from a stream, e.g. a stored export; null for a null stream
+     */
+    public Position parse(InputStream json, OrgChartJob job, RenderProfile profile) throws Exception {
+        return OrgChartParser.parse(json, job.getRootHierarchyCode(), job.getMaxDepth(), profile);
+    }
+
+    /**
+     * Parse the job's org JSON and write its PDF to the sink; the stream is not closed
+     */
+    public RenderProfile render(OrgChartJob job, OutputStream out) throws Exception {
+        RenderProfile profile = new RenderProfile();
+        Position dataTR = parse(job.getOrgJsonTR(), job, profile);
+        Position dataEN = parse(job.getOrgJsonEN(), job, profile);
+        render(job, dataTR, dataEN, profile, out);
+        return profile;
+    }
+
+    /**
+     * Lay out and draw already parsed trees with the job's labels and options
+     */
+    public void render(OrgChartJob job, Position dataTR, Position dataEN, RenderProfile profile, OutputStream out) throws Exception {
+        render(job, dataTR, dataEN, profile, true, out);
+    }
+
+    /**
+     * @param parallelPages draw the TR and EN pages in parallel; off for callers that
+     *                      already render many documents concurrently
+     */
+    void render(OrgChartJob job, Position dataTR, Position dataEN, RenderProfile profile,
+                boolean parallelPages, OutputStream out) throws Exception {
+        try (OrgChartRenderer renderer = draw(job, dataTR, dataEN, profile, parallelPages)) {
+            renderer.save(out);
+        }
+    }
+
+    /**
+     * Lay out and draw already parsed trees like render, without writing the PDF; the
+     * caller saves and closes the returned renderer
+     */
+    public OrgChartRenderer draw(OrgChartJob job, Position dataTR, Position dataEN, RenderProfile profile) throws Exception {
+        return draw(job, dataTR, dataEN, profile, true);
+    }
+
+    private OrgChartRenderer draw(OrgChartJob job, Position dataTR, Position dataEN, RenderProfile profile,
+                                  boolean parallelPages) throws Exception {
+        if (dataTR == null && dataEN == null) {
+            throw new IllegalArgumentException("At least one of TR or EN JSON data must be provided");
+        }
+        OrgChartRenderer renderer = new OrgChartRenderer(parallelPages);
+        try {
+            renderer.setLayoutMode(job.isCompactLayout() ? OrgChartLayout.Mode.TIDY : OrgChartLayout.Mode.CLASSIC);
+            renderer.setPageFormat(OrgChartRenderer.PageFormat.fromName(job.getPageFormat()));
+            renderer.setProfile(profile);
+            renderer.draw(
+                dataTR, job.getTitleTR(), job.getTotalNormLabelTR(), job.getPreparedByTR(),
+                job.getDocDateTR(), job.getLastUpdateTR(), job.getImageUrlTR(),
+                dataEN, job.getTitleEN(), job.getTotalNormLabelEN(), job.getPreparedByEN(),
+                job.getDocDateEN(), job.getLastUpdateEN(), job.getImageUrlEN()
+            );
+            return renderer;
+        } catch (Throwable t) {
+            renderer.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Fonts from a list of directories, temporary files in one directory
+     */
+    public static class DirectoryResources implements EngineResources {
+        private final File tempDirectory;
+        private final List<File> fontDirectories;
+
+        public DirectoryResources(File tempDirectory, File... fontDirectories) {
+            this.tempDirectory = tempDirectory;
+            this.fontDirectories = Arrays.asList(fontDirectories);
+        }
+
+        @Override
+        public File findFont(String fileName) {
+            for (File directory : fontDirectories) {
+                File file = new File(directory, fileName);
+                if (file.isFile()) {
+                    return file;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public File getTempDirectory() {
+            return tempDirectory;
+        }
+    }
+
+    private static class JavaLog implements EngineLog {
+        private final String node;
+        private final Logger logger;
+
+        JavaLog(String node) {
+            this.node = node;
+            this.logger = Logger.getLogger(node);
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+            return logger.isLoggable(Level.FINEST);
+        }
+
+        @Override
+        public void trace(String message) {
+            logger.logp(Level.FINEST, node, null, message);
+        }
+
+        @Override
+        public void info(String message) {
+            logger.logp(Level.INFO, node, null, message);
+        }
+
+        @Override
+        public void warn(String message) {
+            logger.logp(Level.WARNING, node, null, message);
+        }
+
+        @Override
+        public void error(String message, Throwable cause) {
+            logger.logp(Level.SEVERE, node, null, message, cause);
+        }
+    }
+}
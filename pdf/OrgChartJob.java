@@ -0,0 +1,351 @@
+package myfirstmodule.pdf;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import net.minidev.json.parser.JSONParser;
+import net.minidev.json.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One org chart of a batch: the TR/EN org JSON plus the labels and logo of each page
+ */
+public class OrgChartJob {
+    private String fileName;
+    private String orgJsonTR;
+    private String orgJsonEN;
+    private String titleTR;
+    private String totalNormLabelTR;
+    private String preparedByTR;
+    private String docDateTR;
+    private String lastUpdateTR;
+    private String imageUrlTR;
+    private String titleEN;
+    private String totalNormLabelEN;
+    private String preparedByEN;
+    private String docDateEN;
+    private String lastUpdateEN;
+    private String imageUrlEN;
+    private boolean compactLayout;
+    private String pageFormat;
+    private String rootHierarchyCode;
+    private Integer maxDepth;
+
+    /**
+     * Read a job list from a JSON array of objects. Keys match the PDFRenderer action
+     * parameters (OrgJSON_TR, OrgJSON_EN, titleTR, ..., imageUrlEN) plus fileName,
+     * compactLayout, pageFormat (FIT, A3 or A1), rootHierarchyCode and maxDepth.
+     * The org JSON may be given as a string or inline as an array/object.
+     */
+    public static List<OrgChartJob> listFromJson(String jobsJson) throws ParseException {
+        List<OrgChartJob> jobs = new ArrayList<>();
+        if (jobsJson == null || jobsJson.trim().isEmpty()) {
+            return jobs;
+        }
+
+        Object parsed = new JSONParser(JSONParser.MODE_PERMISSIVE).parse(jobsJson);
+        JSONArray array;
+        if (parsed instanceof JSONArray) {
+            array = (JSONArray) parsed;
+        } else {
+            array = new JSONArray();
+            array.add(parsed);
+        }
+
+        for (Object obj : array) {
+            if (!(obj instanceof JSONObject)) {
+                continue;
+            }
+            JSONObject json = (JSONObject) obj;
+            OrgChartJob job = new OrgChartJob();
+            job.setFileName(text(json.get("fileName")));
+            job.setOrgJsonTR(text(json.get("OrgJSON_TR")));
+            job.setOrgJsonEN(text(json.get("OrgJSON_EN")));
+            job.setTitleTR(text(json.get("titleTR")));
+            job.setTotalNormLabelTR(text(json.get("totalNormLabelTR")));
+            job.setPreparedByTR(text(json.get("preparedByTR")));
+            job.setDocDateTR(text(json.get("docDateTR")));
+            job.setLastUpdateTR(text(json.get("lastUpdateTR")));
+            job.setImageUrlTR(text(json.get("imageUrlTR")));
+            job.setTitleEN(text(json.get("titleEN")));
+            job.setTotalNormLabelEN(text(json.get("totalNormLabelEN")));
+            job.setPreparedByEN(text(json.get("preparedByEN")));
+            job.setDocDateEN(text(json.get("docDateEN")));
+            job.setLastUpdateEN(text(json.get("lastUpdateEN")));
+            job.setImageUrlEN(text(json.get("imageUrlEN")));
+            job.setCompactLayout(Boolean.parseBoolean(text(json.get("compactLayout"))));
+            job.setPageFormat(text(json.get("pageFormat")));
+            job.setRootHierarchyCode(text(json.get("rootHierarchyCode")));
+            Object maxDepth = json.get("maxDepth");
+            if (maxDepth instanceof Number) {
+                job.setMaxDepth(((Number) maxDepth).intValue());
+            } else if (maxDepth instanceof String && !((String) maxDepth).trim().isEmpty()) {
+                job.setMaxDepth(Integer.valueOf(((String) maxDepth).trim()));
+            }
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * The job as a JSON object that listFromJson reads back
+     */
+    public String toJson() {
+        return toJson(true);
+    }
+
+    /**
+     * @param includeOrgJson false to leave out OrgJSON_TR and OrgJSON_EN, e.g. when they
+     *                       are sent on their own
+     */
+    String toJson(boolean includeOrgJson) {
+        JSONObject json = new JSONObject();
+        json.put("fileName", fileName);
+        if (includeOrgJson) {
+            json.put("OrgJSON_TR", orgJsonTR);
+            json.put("OrgJSON_EN", orgJsonEN);
+        }
+        json.put("titleTR", titleTR);
+        json.put("totalNormLabelTR", totalNormLabelTR);
+        json.put("preparedByTR", preparedByTR);
+        json.put("docDateTR", docDateTR);
+        json.put("lastUpdateTR", lastUpdateTR);
+        json.put("imageUrlTR", imageUrlTR);
+        json.put("titleEN", titleEN);
+        json.put("totalNormLabelEN", totalNormLabelEN);
+        json.put("preparedByEN", preparedByEN);
+        json.put("docDateEN", docDateEN);
+        json.put("lastUpdateEN", lastUpdateEN);
+        json.put("imageUrlEN", imageUrlEN);
+        json.put("compactLayout", compactLayout);
+        json.put("pageFormat", pageFormat);
+        json.put("rootHierarchyCode", rootHierarchyCode);
+        json.put("maxDepth", maxDepth);
+        return json.toJSONString();
+    }
+
+    /**
+     * Fill in the labels and logo that are missing or blank with the defaults of the
+     * Java actions
+     */
+    public void applyDefaultLabels() {
+        titleTR = orDefault(titleTR, "Organizasyon Semasi");
+        totalNormLabelTR = orDefault(totalNormLabelTR, "Toplam Norm:");
+        preparedByTR = orDefault(preparedByTR, "Hazirlayan: Organizasyon ve Surec Gelisim Mudurlugu");
+        docDateTR = orDefault(docDateTR, "Dokuman Tarihi: Kasim 2025");
+        lastUpdateTR = orDefault(lastUpdateTR, "Son Guncelleme: Kasim 2025");
+        imageUrlTR = orDefault(imageUrlTR, "https://fintechtime.com/wp-content/uploads/2019/04/GarantiBBVA-logo.jpg");
+
+        titleEN = orDefault(titleEN, "Organization Chart");
+        totalNormLabelEN = orDefault(totalNormLabelEN, "Total Norm:");
+        preparedByEN = orDefault(preparedByEN, "Prepared by: Organization and Process Development Directorate");
+        docDateEN = orDefault(docDateEN, "Document Date: November 2025");
+        lastUpdateEN = orDefault(lastUpdateEN, "Last Update: November 2025");
+        imageUrlEN = orDefault(imageUrlEN, "https://fintechtime.com/wp-content/uploads/2019/04/GarantiBBVA-logo.jpg");
+    }
+
+    /**
+     * Render cache key over everything that affects the job's PDF (not its file name).
+     * The page format, root code and depth are keyed as the renderer reads them, so e.g.
+     * "a1" and "A1", or "1/2" and "/1/2/", share an entry.
+     */
+    public String cacheKey() {
+        return cacheKey(null, null);
+    }
+
+    /**
+     * Render cache key with org JSON that was read through RenderCache.readingJson, e.g. from
+     * an export file, in place of the job's own; null keeps the job's. The same key as
+     * cacheKey() for the same JSON.
+     */
+    public String cacheKey(RenderCache.JsonInput jsonTR, RenderCache.JsonInput jsonEN) {
+        RenderCache.Key key = RenderCache.key();
+        if (jsonTR != null) {
+            key.json(jsonTR);
+        } else {
+            key.json(orgJsonTR);
+        }
+        if (jsonEN != null) {
+            key.json(jsonEN);
+        } else {
+            key.json(orgJsonEN);
+        }
+        return key
+                .text(titleTR).text(totalNormLabelTR).text(preparedByTR).text(docDateTR)
+                .text(lastUpdateTR).text(imageUrlTR)
+                .text(titleEN).text(totalNormLabelEN).text(preparedByEN).text(docDateEN)
+                .text(lastUpdateEN).text(imageUrlEN)
+                .option(compactLayout).text(OrgChartRenderer.PageFormat.fromName(pageFormat).name())
+                .text(OrgChartScope.normalize(rootHierarchyCode))
+                .option(maxDepth != null && maxDepth >= 0 ? maxDepth : null)
+                .build();
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return (value != null && !value.trim().isEmpty()) ? value : fallback;
+    }
+
+    private static String text(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof JSONArray || value instanceof JSONObject) {
+            return JSONValue.toJSONString(value);
+        }
+        return value.toString();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getOrgJsonTR() {
+        return orgJsonTR;
+    }
+
+    public void setOrgJsonTR(String orgJsonTR) {
+        this.orgJsonTR = orgJsonTR;
+    }
+
+    public String getOrgJsonEN() {
+        return orgJsonEN;
+    }
+
+    public void setOrgJsonEN(String orgJsonEN) {
+        this.orgJsonEN = orgJsonEN;
+    }
+
+    public String getTitleTR() {
+        return titleTR;
+    }
+
+    public void setTitleTR(String titleTR) {
+        this.titleTR = titleTR;
+    }
+
+    public String getTotalNormLabelTR() {
+        return totalNormLabelTR;
+    }
+
+    public void setTotalNormLabelTR(String totalNormLabelTR) {
+        this.totalNormLabelTR = totalNormLabelTR;
+    }
+
+    public String getPreparedByTR() {
+        return preparedByTR;
+    }
+
+    public void setPreparedByTR(String preparedByTR) {
+        this.preparedByTR = preparedByTR;
+    }
+
+    public String getDocDateTR() {
+        return docDateTR;
+    }
+
+    public void setDocDateTR(String docDateTR) {
+        this.docDateTR = docDateTR;
+    }
+
+    public String getLastUpdateTR() {
+        return lastUpdateTR;
+    }
+
+    public void setLastUpdateTR(String lastUpdateTR) {
+        this.lastUpdateTR = lastUpdateTR;
+    }
+
+    public String getImageUrlTR() {
+        return imageUrlTR;
+    }
+
+    public void setImageUrlTR(String imageUrlTR) {
+        this.imageUrlTR = imageUrlTR;
+    }
+
+    public String getTitleEN() {
+        return titleEN;
+    }
+
+    public void setTitleEN(String titleEN) {
+        this.titleEN = titleEN;
+    }
+
+    public String getTotalNormLabelEN() {
+        return totalNormLabelEN;
+    }
+
+    public void setTotalNormLabelEN(String totalNormLabelEN) {
+        this.totalNormLabelEN = totalNormLabelEN;
+    }
+
+    public String getPreparedByEN() {
+        return preparedByEN;
+    }
+
+    public void setPreparedByEN(String preparedByEN) {
+        this.preparedByEN = preparedByEN;
+    }
+
+    public String getDocDateEN() {
+        return docDateEN;
+    }
+
+    public void setDocDateEN(String docDateEN) {
+        this.docDateEN = docDateEN;
+    }
+
+    public String getLastUpdateEN() {
+        return lastUpdateEN;
+    }
+
+    public void setLastUpdateEN(String lastUpdateEN) {
+        this.lastUpdateEN = lastUpdateEN;
+    }
+
+    public String getImageUrlEN() {
+        return imageUrlEN;
+    }
+
+    public void setImageUrlEN(String imageUrlEN) {
+        this.imageUrlEN = imageUrlEN;
+    }
+
+    public boolean isCompactLayout() {
+        return compactLayout;
+    }
+
+    public void setCompactLayout(boolean compactLayout) {
+        this.compactLayout = compactLayout;
+    }
+
+    public String getPageFormat() {
+        return pageFormat;
+    }
+
+    public void setPageFormat(String pageFormat) {
+        this.pageFormat = pageFormat;
+    }
+
+    public String getRootHierarchyCode() {
+        return rootHierarchyCode;
+    }
+
+    public void setRootHierarchyCode(String rootHierarchyCode) {
+        this.rootHierarchyCode = rootHierarchyCode;
+    }
+
+    public Integer getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(Integer maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+}
@@ -0,0 +1,259 @@
+package myfirstmodule.pdf;
+
+import net.minidev.json.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull tokenizer for the org chart JSON export.
+ *
+ * Reads characters from a Reader through a small fixed buffer and hands out scalar
+ * values one at a time, so callers can build Position records without a DOM.
+ * Leniency follows json-smart's MODE_PERMISSIVE for what the exports actually use:
+ * single-quoted strings, unquoted keys, unquoted values that may contain spaces, and
+ * stray commas.
+ */
+class OrgChartJsonReader {
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder text = new StringBuilder();
+    private int pos;
+    private int limit;
+    private long offset;
+
+    OrgChartJsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Skip whitespace and return the next character without consuming it, or -1 at end of input
+     */
+    int peek() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF') {
+                pos++;
+                continue;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Consume the next non-whitespace character, which must be the given one
+     */
+    void expect(char expected) throws IOException, ParseException {
+        int c = peek();
+        if (c != expected) {
+            throw unexpected(c);
+        }
+        pos++;
+    }
+
+    /**
+     * Consume the next non-whitespace character if it is the given one
+     */
+    boolean consume(char expected) throws IOException {
+        if (peek() == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skip any number of separating commas (permissive mode tolerates empty elements)
+     */
+    void skipCommas() throws IOException {
+        while (consume(',')) {
+            // nothing
+        }
+    }
+
+    /**
+     * Read an object key (quoted or bare word)
+     */
+    String readKey() throws IOException, ParseException {
+        int c = peek();
+        if (c == '"' || c == '\'') {
+            return readQuoted();
+        }
+        String key = readBare(false);
+        if (key.isEmpty()) {
+            throw unexpected(c);
+        }
+        return key;
+    }
+
+    /**
+     * Read a scalar value: String, Long, Double, Boolean or null.
+     * Must not be called when the next value is an object or array.
+     */
+    Object readScalar() throws IOException, ParseException {
+        int c = peek();
+        if (c == '"' || c == '\'') {
+            return readQuoted();
+        }
+        String word = readBare(true);
+        if (word.isEmpty()) {
+            throw unexpected(c);
+        }
+        switch (word) {
+            case "null":
+                return null;
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            default:
+                return toNumberOrString(word);
+        }
+    }
+
+    /**
+     * Skip the next value of any kind, including nested objects and arrays
+     */
+    void skipValue() throws IOException, ParseException {
+        int depth = 0;
+        do {
+            int c = peek();
+            if (c == '{' || c == '[') {
+                pos++;
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    throw unexpected(c);
+                }
+                pos++;
+                depth--;
+            } else if (c == ',' || c == ':') {
+                if (depth == 0) {
+                    throw unexpected(c);
+                }
+                pos++;
+            } else if (c == -1) {
+                throw unexpected(c);
+            } else {
+                readScalar();
+            }
+        } while (depth > 0);
+    }
+
+    ParseException unexpected(int c) {
+        long at = offset + pos;
+        if (c == -1) {
+            return new ParseException((int) at, ParseException.ERROR_UNEXPECTED_EOF, null);
+        }
+        return new ParseException((int) at, ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) c));
+    }
+
+    private String readQuoted() throws IOException, ParseException {
+        char quote = buffer[pos++];
+        text.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw unexpected(-1);
+            }
+            char c = buffer[pos++];
+            if (c == quote) {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+            if (pos == limit && !fill()) {
+                throw unexpected(-1);
+            }
+            char escaped = buffer[pos++];
+            switch (escaped) {
+                case 'n': text.append('\n'); break;
+                case 'r': text.append('\r'); break;
+                case 't': text.append('\t'); break;
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'u': text.append(readUnicodeEscape()); break;
+                default: text.append(escaped); break;
+            }
+        }
+    }
+
+    private char readUnicodeEscape() throws IOException, ParseException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (pos == limit && !fill()) {
+                throw unexpected(-1);
+            }
+            int digit = Character.digit(buffer[pos], 16);
+            if (digit < 0) {
+                throw unexpected(buffer[pos]);
+            }
+            pos++;
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Read an unquoted token up to the next structural character. A key also ends at
+     * whitespace; a value may contain spaces, as in json-smart, and only trailing
+     * whitespace is dropped.
+     */
+    private String readBare(boolean value) throws IOException {
+        text.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == ',' || c == ':' || c == '}' || c == ']') {
+                break;
+            }
+            if (!value && (c == '{' || c == '[' || c == ' ' || c == '\n' || c == '\r' || c == '\t')) {
+                break;
+            }
+            text.append(c);
+            pos++;
+        }
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        text.setLength(end);
+        return text.toString();
+    }
+
+    private static Object toNumberOrString(String word) {
+        char first = word.charAt(0);
+        if ((first < '0' || first > '9') && first != '-') {
+            return word;
+        }
+        try {
+            if (word.indexOf('.') < 0 && word.indexOf('e') < 0 && word.indexOf('E') < 0) {
+                return Long.valueOf(word);
+            }
+            return Double.valueOf(word);
+        } catch (NumberFormatException e) {
+            // Integers beyond long range, or not a number at all
+            try {
+                return Double.valueOf(word);
+            } catch (NumberFormatException notANumber) {
+                return word;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+}
@@ -8,6 +8,16 @@ import java.util.Map;
  */
 public class OrgChartLayout {
     
+    /**
+     * How subtrees are placed next to each other
+     */
+    public enum Mode {
+        /** Every leaf gets its own full-width slot and subtree widths are added up (React widget layout) */
+        CLASSIC,
+        /** Subtrees are packed as closely as their contours allow (Reingold-Tilford/Walker, linear time) */
+        TIDY
+    }
+    
     /**
      * Page dimensions
      */
@@ -47,18 +57,19 @@ public class OrgChartLayout {
         if (data == null) {
             return new PageSize(Style.MIN_PAGE_WIDTH, Style.MIN_PAGE_HEIGHT);
         }
-        
-        Map<Integer, Integer> widthByLevel = new HashMap<>();
-        calculateMaxWidth(data, 0, widthByLevel);
-        
-        int maxWidth = 0;
-        for (Integer count : widthByLevel.values()) {
-            if (count > maxWidth) {
-                maxWidth = count;
-            }
+        return calculatePageSize(TreeAnalytics.of(data));
+    }
+    
+    /**
+     * Calculate page size from already computed tree analytics
+     */
+    public static PageSize calculatePageSize(TreeAnalytics analytics) {
+        if (analytics == null || analytics.size() == 0) {
+            return new PageSize(Style.MIN_PAGE_WIDTH, Style.MIN_PAGE_HEIGHT);
         }
         
-        int depth = calculateDepth(data);
+        int maxWidth = analytics.getMaxLevelWidth();
+        int depth = analytics.getDepth();
         
         // Each node: 85px width + 6px padding (3px each side)
         float nodeWidthEff = Style.NODE_WIDTH_EFFECTIVE;
@@ -78,142 +89,112 @@ public class OrgChartLayout {
     }
     
     /**
-     * Calculate maximum width by level (matching React widget's calculateMaxWidth)
+     * Calculate subtree width (number of leaf nodes in this subtree)
      */
-    private static void calculateMaxWidth(Position node, int level, Map<Integer, Integer> widthByLevel) {
-        if (node == null) {
-            return;
-        }
-        
-        widthByLevel.put(level, widthByLevel.getOrDefault(level, 0) + 1);
-        
-        if (node.getPositions() != null && !node.getPositions().isEmpty()) {
-            for (Position child : node.getPositions()) {
-                calculateMaxWidth(child, level + 1, widthByLevel);
-            }
-        }
+    public static int calculateSubtreeWidth(Position node) {
+        return TreeAnalytics.of(node).getLeafCount(node);
     }
     
     /**
-     * Calculate tree depth (matching React widget's calculateDepth)
+     * Layout positions for all nodes in the tree
      */
-    private static int calculateDepth(Position node) {
-        if (node == null || node.getPositions() == null || node.getPositions().isEmpty()) {
-            return 1;
-        }
-        
-        int maxChildDepth = 0;
-        for (Position child : node.getPositions()) {
-            int childDepth = calculateDepth(child);
-            if (childDepth > maxChildDepth) {
-                maxChildDepth = childDepth;
-            }
-        }
-        
-        return 1 + maxChildDepth;
+    public static Map<Position, NodeLayout> layoutTree(Position root, float startX, float startY) {
+        return layoutTree(root, startX, startY, Mode.CLASSIC);
     }
     
     /**
-     * Calculate subtree width (number of leaf nodes in this subtree)
+     * Layout positions for all nodes in the tree using the given mode
      */
-    public static int calculateSubtreeWidth(Position node) {
-        if (node == null) {
-            return 0;
-        }
-        
-        if (node.getPositions() == null || node.getPositions().isEmpty()) {
-            return 1;
-        }
-        
-        int total = 0;
-        for (Position child : node.getPositions()) {
-            total += calculateSubtreeWidth(child);
+    public static Map<Position, NodeLayout> layoutTree(Position root, float startX, float startY, Mode mode) {
+        if (root == null) {
+            return new HashMap<>();
         }
-        
-        return total;
+        return layout(TreeAnalytics.of(root), startX, startY, mode).toMap();
     }
     
     /**
-     * Layout positions for all nodes in the tree
+     * Layout all nodes of an analyzed tree into a dense layout store
      */
-    public static Map<Position, NodeLayout> layoutTree(Position root, float startX, float startY) {
-        Map<Position, NodeLayout> layouts = new HashMap<>();
+    public static LayoutStore layout(TreeAnalytics analytics, float startX, float startY, Mode mode) {
+        LayoutStore store = new LayoutStore(analytics);
         
-        if (root == null) {
-            return layouts;
+        if (analytics.size() == 0) {
+            return store;
         }
         
-        layoutNode(root, startX, startY, 0, layouts);
-        return layouts;
+        if (mode == Mode.TIDY) {
+            TidyLayout.layout(analytics, startX, startY, store);
+        } else {
+            layoutClassic(analytics, startX, startY, store);
+        }
+        return store;
     }
     
     /**
-     * Recursively layout a node and its children
+     * Lay out the tree the way the React widget's recursion does, in three sweeps over the
+     * pre-order: subtree widths bottom-up, then the left edge and row of every subtree
+     * top-down, then the boxes bottom-up, each parent centered over its placed children.
+     * Widths and offsets are added in the same order as the recursion, so the floats match.
      */
-    private static float layoutNode(Position node, float x, float y, int level, Map<Position, NodeLayout> layouts) {
-        if (node == null) {
-            return 0;
-        }
-        
+    private static void layoutClassic(TreeAnalytics tree, float startX, float startY, LayoutStore store) {
+        int n = tree.size();
         float nodeWidth = Style.NODE_WIDTH;
         float nodeHeight = Style.NODE_HEIGHT;
         
-        if (node.getPositions() == null || node.getPositions().isEmpty()) {
-            // Leaf node - just place it
-            layouts.put(node, new NodeLayout(x, y, nodeWidth, nodeHeight, level));
-            return Style.NODE_WIDTH_EFFECTIVE;
+        // Width of each subtree: a leaf's own slot, or its children's widths added left to right
+        float[] treeWidth = new float[n];
+        for (int i = n - 1; i >= 0; i--) {
+            int childCount = tree.childCount(i);
+            if (childCount == 0) {
+                treeWidth[i] = Style.NODE_WIDTH_EFFECTIVE;
+            } else if (childCount == 1) {
+                treeWidth[i] = treeWidth[tree.child(i, 0)];
+            } else {
+                float totalChildrenWidth = 0;
+                for (int k = 0; k < childCount; k++) {
+                    totalChildrenWidth += treeWidth[tree.child(i, k)];
+                }
+                treeWidth[i] = totalChildrenWidth;
+            }
         }
         
-        // Layout children first to determine their total width
+        // Left edge and top of each subtree; children share the row below their parent.
         // Y decreases as we go down (PDF coordinates - bottom-left origin)
-        float childY = y - nodeHeight - Style.NODE_CONTAINER_PADDING_VERTICAL * 2 - Style.CHILDREN_ROW_MARGIN_TOP;
-        
-        // Special case: single child should be centered under parent
-        if (node.getPositions().size() == 1) {
-            Position child = node.getPositions().get(0);
-
-            // Layout child subtree first to determine its position and width
-            float childsTreeWidth = layoutNode(child, x, childY, level + 1, layouts);
-
-            // Get final layout of the child node, which might have been shifted by its own children
-            NodeLayout childLayout = layouts.get(child);
-            if (childLayout != null) {
-                // Center parent over the real position of the child node
-                float childCenterX = childLayout.x + (childLayout.width / 2f);
-                float parentX = childCenterX - (nodeWidth / 2f);
-                layouts.put(node, new NodeLayout(parentX, y, nodeWidth, nodeHeight, level));
-            } else {
-                // Fallback, though this should not be reached in normal execution
-                layouts.put(node, new NodeLayout(x, y, nodeWidth, nodeHeight, level));
+        float[] left = new float[n];
+        float[] top = new float[n];
+        left[0] = startX;
+        top[0] = startY;
+        for (int i = 0; i < n; i++) {
+            float childX = left[i];
+            float childY = top[i] - nodeHeight - Style.NODE_CONTAINER_PADDING_VERTICAL * 2 - Style.CHILDREN_ROW_MARGIN_TOP;
+            for (int k = 0; k < tree.childCount(i); k++) {
+                int child = tree.child(i, k);
+                left[child] = childX;
+                top[child] = childY;
+                childX += treeWidth[child];
             }
-
-            // The width of this subtree is the width of its child's subtree
-            return childsTreeWidth;
         }
         
-        // Multiple children - spread them out
-        float childX = x;
-        float totalChildrenWidth = 0;
-        
-        for (Position child : node.getPositions()) {
-            float childWidth = layoutNode(child, childX, childY, level + 1, layouts);
-            childX += childWidth;
-            totalChildrenWidth += childWidth;
+        for (int i = n - 1; i >= 0; i--) {
+            int childCount = tree.childCount(i);
+            int level = tree.levelOf(i);
+            if (childCount == 0) {
+                // Leaf node - just place it
+                store.set(i, left[i], top[i], nodeWidth, nodeHeight, level);
+            } else if (childCount == 1) {
+                // Center parent over the real position of the child node, which might have been shifted by its own children
+                int child = tree.child(i, 0);
+                float childCenterX = store.x[child] + (store.width[child] / 2f);
+                store.set(i, childCenterX - (nodeWidth / 2f), top[i], nodeWidth, nodeHeight, level);
+            } else {
+                // Center parent over children by aligning to the midpoint between first and last child centers
+                int firstChild = tree.child(i, 0);
+                int lastChild = tree.child(i, childCount - 1);
+                float firstCenterX = store.x[firstChild] + store.width[firstChild] / 2;
+                float lastCenterX = store.x[lastChild] + store.width[lastChild] / 2;
+                float groupCenterX = (firstCenterX + lastCenterX) / 2f;
+                store.set(i, groupCenterX - nodeWidth / 2f, top[i], nodeWidth, nodeHeight, level);
+            }
         }
-        
-        // Center parent over children by aligning to the midpoint between first and last child centers
-        Position firstChild = node.getPositions().get(0);
-        Position lastChild = node.getPositions().get(node.getPositions().size() - 1);
-        NodeLayout firstLayout = layouts.get(firstChild);
-        NodeLayout lastLayout = layouts.get(lastChild);
-        float firstCenterX = firstLayout != null ? firstLayout.x + firstLayout.width / 2 : x + nodeWidth / 2;
-        float lastCenterX = lastLayout != null ? lastLayout.x + lastLayout.width / 2 : x + totalChildrenWidth - nodeWidth / 2;
-        float groupCenterX = (firstCenterX + lastCenterX) / 2f;
-        float parentX = groupCenterX - nodeWidth / 2f;
-        layouts.put(node, new NodeLayout(parentX, y, nodeWidth, nodeHeight, level));
-        
-        return totalChildrenWidth;
     }
 }
-
-
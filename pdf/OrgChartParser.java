@@ -1,12 +1,16 @@
 package myfirstmodule.pdf;
 
-import com.mendix.core.Core;
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
-import net.minidev.json.parser.JSONParser;
 import net.minidev.json.parser.ParseException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * JSON parser with merge logic matching React widget exactly
@@ -22,57 +26,208 @@ public class OrgChartParser {
             return null;
         }
         
-        JSONParser parser = new JSONParser(JSONParser.MODE_PERMISSIVE);
-        Object parsed = parser.parse(jsonString);
+        try {
+            return parse(new StringReader(jsonString));
+        } catch (IOException e) {
+            // Cannot happen for an in-memory reader
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Parse UTF-8 JSON from a stream (e.g. FileDocument content) without materializing it as a String
+     */
+    public static Position parse(InputStream jsonStream) throws IOException, ParseException {
+        if (jsonStream == null) {
+            return null;
+        }
+        return parse(new InputStreamReader(jsonStream, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Parse JSON from a reader; positions are read one at a time, no intermediate DOM is built
+     */
+    public static Position parse(Reader jsonReader) throws IOException, ParseException {
+        return parse(jsonReader, null, null);
+    }
+    
+    /**
+     * Parse only the subtree at rootHierarchyCode (whole organization if empty), at most
+     * maxDepth levels deep (no limit if null or negative). Deeper positions are counted
+     * on their last-level ancestor (Position.getHiddenCount/getHiddenNorm) and not kept.
+     * Returns null if the root code is not found.
+     */
+    public static Position parse(String jsonString, String rootHierarchyCode, Integer maxDepth) throws ParseException {
+        return parse(jsonString, rootHierarchyCode, maxDepth, null);
+    }
+    
+    /**
+     * Parse a scoped subtree, adding the PARSE and TREE_BUILD phases to the profile (may be null)
+     */
+    public static Position parse(String jsonString, String rootHierarchyCode, Integer maxDepth, RenderProfile profile) throws ParseException {
+        if (jsonString == null || jsonString.trim().isEmpty()) {
+            return null;
+        }
         
-        List<Position> allPositions = new ArrayList<>();
+        try {
+            return parse(new StringReader(jsonString), OrgChartScope.of(rootHierarchyCode, maxDepth), profile);
+        } catch (IOException e) {
+            // Cannot happen for an in-memory reader
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Parse a scoped subtree from a UTF-8 stream, see parse(String, String, Integer)
+     */
+    public static Position parse(InputStream jsonStream, String rootHierarchyCode, Integer maxDepth) throws IOException, ParseException {
+        return parse(jsonStream, rootHierarchyCode, maxDepth, null);
+    }
+    
+    /**
+     * Parse a scoped subtree from a UTF-8 stream, adding the PARSE and TREE_BUILD phases to the profile (may be null)
+     */
+    public static Position parse(InputStream jsonStream, String rootHierarchyCode, Integer maxDepth, RenderProfile profile) throws IOException, ParseException {
+        if (jsonStream == null) {
+            return null;
+        }
+        return parse(new InputStreamReader(jsonStream, StandardCharsets.UTF_8), OrgChartScope.of(rootHierarchyCode, maxDepth), profile);
+    }
+    
+    private static Position parse(Reader jsonReader, OrgChartScope scope, RenderProfile profile) throws IOException, ParseException {
+        if (jsonReader == null) {
+            return null;
+        }
         
-        // Parse all positions from the flat array (not recursive)
-        if (parsed instanceof JSONArray) {
-            JSONArray arr = (JSONArray) parsed;
-            for (Object obj : arr) {
-                if (obj instanceof JSONObject) {
-                    allPositions.add(parsePositionFlat((JSONObject) obj));
-                }
+        // Nested Positions arrays are skipped: the tree is built from HierarchyCode only.
+        // A scope with a root code drops everything outside its window right here.
+        List<Position> allPositions = new ArrayList<>();
+        RenderProfile.Span parseSpan = RenderProfile.start(profile, RenderProfile.Phase.PARSE);
+        try {
+            if (scope != null && scope.filtersWhileParsing()) {
+                readPositions(jsonReader, position -> {
+                    if (scope.filter(position)) {
+                        allPositions.add(position);
+                    }
+                }, false);
+            } else {
+                readPositions(jsonReader, allPositions::add, false);
             }
-        } else if (parsed instanceof JSONObject) {
-            allPositions.add(parsePositionFlat((JSONObject) parsed));
+        } finally {
+            parseSpan.end();
         }
         
         if (allPositions.isEmpty()) {
             return null;
         }
         
-        // Build tree structure using HierarchyCode relationships
-        return buildTreeFromFlatList(allPositions);
+        RenderProfile.Span treeBuildSpan = RenderProfile.start(profile, RenderProfile.Phase.TREE_BUILD);
+        try {
+            // Build tree structure using HierarchyCode relationships
+            Position root = buildTreeFromFlatList(allPositions, scope);
+            
+            // Without a root code the window starts at the root, known only now
+            if (root != null && scope != null && !scope.filtersWhileParsing()) {
+                root = scope.apply(root);
+            }
+            return root;
+        } finally {
+            treeBuildSpan.end();
+        }
     }
     
     /**
-     * Parse a single Position object from JSON (flat structure - not recursive)
+     * Stream the top-level positions of the flat array to the consumer, in document order.
+     * A single top-level object is treated as a one-element array.
+     */
+    public static void readPositions(Reader jsonReader, Consumer<Position> consumer) throws IOException, ParseException {
+        readPositions(jsonReader, consumer, true);
+    }
+    
+    private static void readPositions(Reader jsonReader, Consumer<Position> consumer, boolean readChildren) throws IOException, ParseException {
+        OrgChartJsonReader in = new OrgChartJsonReader(jsonReader);
+        
+        int first = in.peek();
+        if (first == '[') {
+            in.expect('[');
+            while (true) {
+                in.skipCommas();
+                if (in.consume(']')) {
+                    break;
+                }
+                if (in.peek() == '{') {
+                    consumer.accept(readPositionFlat(in, readChildren));
+                } else {
+                    in.skipValue();
+                }
+            }
+        } else if (first == '{') {
+            consumer.accept(readPositionFlat(in, readChildren));
+        } else if (first != -1) {
+            in.skipValue();
+        }
+    }
+    
+    /**
+     * Read a single Position object (flat structure - not recursive)
      * Positions array contains only direct children, not nested recursively
      */
-    private static Position parsePositionFlat(JSONObject json) {
+    private static Position readPositionFlat(OrgChartJsonReader in, boolean readChildren) throws IOException, ParseException {
+        boolean hasId = false, hasName = false, hasHierarchyCode = false, hasParentHierarchyCode = false;
+        boolean hasNorm = false, hasTitleCode = false;
+        Object id = null, name = null, hierarchyCode = null, parentHierarchyCode = null, norm = null, titleCode = null;
+        List<Position> children = null;
+        
+        in.expect('{');
+        while (true) {
+            in.skipCommas();
+            if (in.consume('}')) {
+                break;
+            }
+            String key = in.readKey();
+            in.expect(':');
+            
+            if ("Positions".equals(key)) {
+                children = null;
+                if (readChildren && in.peek() == '[') {
+                    children = readChildrenFlat(in);
+                } else {
+                    in.skipValue();
+                }
+                continue;
+            }
+            
+            Object value = readFieldValue(in);
+            switch (key) {
+                case "PositionID": hasId = true; id = value; break;
+                case "PositionName": hasName = true; name = value; break;
+                case "HierarchyCode": hasHierarchyCode = true; hierarchyCode = value; break;
+                case "ParentHierarchyCode": hasParentHierarchyCode = true; parentHierarchyCode = value; break;
+                case "Norm": hasNorm = true; norm = value; break;
+                case "TitleCode": hasTitleCode = true; titleCode = value; break;
+                default: break;
+            }
+        }
+        
         Position pos = new Position();
         
-        if (json.containsKey("PositionID")) {
-            Object id = json.get("PositionID");
+        if (hasId) {
             pos.setPositionID(id instanceof Number ? ((Number) id).intValue() : null);
         }
         
-        if (json.containsKey("PositionName")) {
-            pos.setPositionName(json.getAsString("PositionName"));
+        if (hasName) {
+            pos.setPositionName(name != null ? name.toString() : null);
         }
         
-        if (json.containsKey("HierarchyCode")) {
-            pos.setHierarchyCode(json.getAsString("HierarchyCode"));
+        if (hasHierarchyCode) {
+            pos.setHierarchyCode(hierarchyCode != null ? hierarchyCode.toString() : null);
         }
         
-        if (json.containsKey("ParentHierarchyCode")) {
-            pos.setParentHierarchyCode(json.getAsString("ParentHierarchyCode"));
+        if (hasParentHierarchyCode) {
+            pos.setParentHierarchyCode(parentHierarchyCode != null ? parentHierarchyCode.toString() : null);
         }
         
-        if (json.containsKey("Norm")) {
-            Object norm = json.get("Norm");
+        if (hasNorm) {
             // Explicitly parse to integer - handle Number, String, or null
             Integer normValue = null;
             if (norm instanceof Number) {
@@ -87,133 +242,191 @@ public class OrgChartParser {
                     }
                 } catch (NumberFormatException e) {
                     normValue = null; // Invalid string, set to null
-                    Core.getLogger("OrgChartParser").warn("Failed to parse Norm value '" + norm + "' for position '" + pos.getPositionName() + "': " + e.getMessage());
+                    OrgChartEngine.log("OrgChartParser").warn("Failed to parse Norm value '" + norm + "' for position '" + pos.getPositionName() + "': " + e.getMessage());
                 }
             }
             pos.setNorm(normValue);
-            Core.getLogger("OrgChartParser").info("Parsing Norm for position '" + pos.getPositionName() + "'. Raw value: '" + norm + "', Parsed value: " + normValue);
+            // Per position, so only when tracing: on large exports the lines cost more than the parse
+            EngineLog log = OrgChartEngine.log("OrgChartParser");
+            if (log.isTraceEnabled()) {
+                log.trace("Parsing Norm for position '" + pos.getPositionName() + "'. Raw value: '" + norm + "', Parsed value: " + normValue);
+            }
         } else {
-             Core.getLogger("OrgChartParser").info("No 'Norm' key found for position '" + pos.getPositionName() + "'.");
+            EngineLog log = OrgChartEngine.log("OrgChartParser");
+            if (log.isTraceEnabled()) {
+                log.trace("No 'Norm' key found for position '" + pos.getPositionName() + "'.");
+            }
         }
         
-        if (json.containsKey("TitleCode")) {
-            Object tc = json.get("TitleCode");
-            pos.setTitleCode(tc != null ? tc.toString() : null);
+        if (hasTitleCode) {
+            pos.setTitleCode(titleCode != null ? titleCode.toString() : null);
         }
         
-        // Parse direct children from Positions array (not recursive - just one level)
-        if (json.containsKey("Positions")) {
-            Object positions = json.get("Positions");
-            if (positions instanceof JSONArray) {
-                List<Position> children = new ArrayList<>();
-                for (Object child : (JSONArray) positions) {
-                    if (child instanceof JSONObject) {
-                        // Parse child but don't recursively parse its Positions - we'll build tree from flat list
-                        Position childPos = parsePositionFlat((JSONObject) child);
-                        // Clear child's Positions - we'll rebuild tree structure later
-                        childPos.setPositions(new ArrayList<>());
-                        children.add(childPos);
-                    }
-                }
-                pos.setPositions(children);
-            }
+        if (children != null) {
+            pos.setPositions(children);
         }
         
         return pos;
     }
     
     /**
-     * Build tree structure from flat list of positions using HierarchyCode relationships
+     * Read the direct children of a Positions array (not recursive - just one level)
      */
-    private static Position buildTreeFromFlatList(List<Position> allPositions) {
+    private static List<Position> readChildrenFlat(OrgChartJsonReader in) throws IOException, ParseException {
+        List<Position> children = new ArrayList<>();
+        in.expect('[');
+        while (true) {
+            in.skipCommas();
+            if (in.consume(']')) {
+                break;
+            }
+            if (in.peek() == '{') {
+                // Child's own Positions are skipped - we'll build tree from flat list
+                children.add(readPositionFlat(in, false));
+            } else {
+                in.skipValue();
+            }
+        }
+        return children;
+    }
+    
+    /**
+     * Read a field value; nested objects/arrays are skipped and read as null
+     */
+    private static Object readFieldValue(OrgChartJsonReader in) throws IOException, ParseException {
+        int c = in.peek();
+        if (c == '{' || c == '[') {
+            in.skipValue();
+            return null;
+        }
+        return in.readScalar();
+    }
+    
+    /**
+     * Build tree structure from flat list of positions using HierarchyCode relationships.
+     *
+     * Single pass over the list plus one linking pass, O(n) with hash lookups only:
+     * - positions without PositionID are ignored
+     * - duplicates (same PositionID) collapse into the first occurrence; a positive Norm
+     *   from a later duplicate fills in a missing or non-positive one
+     * - the first position registered for a HierarchyCode is the parent for that code
+     * - children keep the order in which they first appear in the list
+     * - the root is the parentless position with the fewest HierarchyCode segments
+     *   (first one wins on ties), else the position with the fewest segments overall
+     * Positions whose parent cannot be found and extra root candidates are reported.
+     * The given Position objects are reused as tree nodes; their Positions lists are replaced.
+     * Codes are resolved through a HierarchyIndex; the positions are attached to its trie
+     * nodes, which replace their code strings (see HierarchyIndex.attach).
+     * A scope filtering while parsing fixes the root to its root code instead.
+     */
+    private static Position buildTreeFromFlatList(List<Position> allPositions, OrgChartScope scope) {
         if (allPositions == null || allPositions.isEmpty()) {
             return null;
         }
         
-        // Step 1: Merge positions with same PositionID and collect all unique positions
-        Map<Integer, Position> positionMap = new HashMap<>();
-        Map<String, List<Position>> positionsByHierarchyCode = new HashMap<>();
+        // Step 1: Collapse duplicates by PositionID and index by HierarchyCode
+        int capacity = Math.max(16, (int) (allPositions.size() / 0.75f) + 1);
+        Map<Integer, Position> positionMap = new HashMap<>(capacity);
+        HierarchyIndex index = new HierarchyIndex();
+        List<Position> nodes = new ArrayList<>(allPositions.size());
         
         for (Position pos : allPositions) {
             Integer posId = pos.getPositionID();
-            String hierarchyCode = pos.getHierarchyCode();
+            if (posId == null) {
+                continue;
+            }
             
-            if (posId != null) {
-                if (positionMap.containsKey(posId)) {
-                    // Merge with existing position
-                    Position existing = positionMap.get(posId);
-                    // Merge children from Positions array
-                    existing.setPositions(mergePositions(existing.getPositions(), pos.getPositions()));
-                    // Preserve positive Norm if existing doesn't have it
-                    Integer existingNorm = existing.getNorm();
-                    Integer newNorm = pos.getNorm();
-                    if ((existingNorm == null || existingNorm.intValue() <= 0) && newNorm != null && newNorm.intValue() > 0) {
-                        existing.setNorm(newNorm);
-                    }
-                } else {
-                    // New position - clone it
-                    Position cloned = clonePosition(pos);
-                    positionMap.put(posId, cloned);
-                    
-                    // Also index by HierarchyCode for building tree
-                    if (hierarchyCode != null && !hierarchyCode.isEmpty()) {
-                        positionsByHierarchyCode.computeIfAbsent(hierarchyCode, k -> new ArrayList<>()).add(cloned);
-                    }
+            Position existing = positionMap.get(posId);
+            if (existing != null) {
+                // Preserve positive Norm if existing doesn't have it
+                Integer existingNorm = existing.getNorm();
+                Integer newNorm = pos.getNorm();
+                if ((existingNorm == null || existingNorm.intValue() <= 0) && newNorm != null && newNorm.intValue() > 0) {
+                    existing.setNorm(newNorm);
                 }
+                continue;
             }
-        }
-        
-        // Step 2: Build tree structure using HierarchyCode relationships
-        // Clear all Positions lists first - we'll rebuild them
-        for (Position pos : positionMap.values()) {
+            
             pos.setPositions(new ArrayList<>());
+            positionMap.put(posId, pos);
+            nodes.add(pos);
+            HierarchyIndex.Node node = index.register(pos);
+            if (node != null) {
+                index.attach(pos, node);
+            }
         }
         
-        // Build parent-child relationships
-        for (Position pos : positionMap.values()) {
-            String parentHierarchyCode = pos.getParentHierarchyCode();
-            if (parentHierarchyCode != null && !parentHierarchyCode.isEmpty()) {
-                // Find parent by matching HierarchyCode
-                List<Position> potentialParents = positionsByHierarchyCode.get(parentHierarchyCode);
-                if (potentialParents != null && !potentialParents.isEmpty()) {
-                    // Use first parent found (should be unique by HierarchyCode)
-                    Position parent = potentialParents.get(0);
-                    parent.getPositions().add(pos);
-                }
+        // A scoped window hangs below a parent that was filtered out
+        Position scopeRoot = null;
+        if (scope != null && scope.filtersWhileParsing()) {
+            scopeRoot = index.get(scope.getRootCode());
+            if (scopeRoot == null) {
+                OrgChartEngine.log("OrgChartParser").warn("No position has HierarchyCode '" + scope.getRootCode() + "'; nothing to render.");
+                return null;
             }
+            scope.summarize(index);
         }
         
-        // Step 3: Find root (position with no parent or shortest HierarchyCode)
+        // Step 2: Link children to parents and pick the root in the same pass
         Position root = null;
-        int shortestLength = Integer.MAX_VALUE;
+        int rootSegments = Integer.MAX_VALUE;
+        int rootCandidates = 0;
+        int orphans = 0;
+        String firstOrphan = null;
         
-        for (Position pos : positionMap.values()) {
-            String parentHierarchyCode = pos.getParentHierarchyCode();
-            String hierarchyCode = pos.getHierarchyCode();
+        for (Position pos : nodes) {
+            if (pos == scopeRoot) {
+                continue;
+            }
+            Position parent = index.parentOf(pos);
+            boolean linked = false;
             
-            if (parentHierarchyCode == null || parentHierarchyCode.isEmpty() || 
-                parentHierarchyCode.equals("/") || parentHierarchyCode.equals("")) {
+            if (parent != null && parent != pos) {
+                parent.getPositions().add(pos);
+                linked = true;
+            }
+            
+            // Parent codes rebuilt from the trie are never empty, so only stored ones are checked
+            String parentHierarchyCode = pos.isParentCodeFromNode() ? null : pos.getParentHierarchyCode();
+            boolean parentless = !pos.isParentCodeFromNode()
+                    && (parentHierarchyCode == null || parentHierarchyCode.isEmpty() || parentHierarchyCode.equals("/"));
+            
+            if (parentless && scopeRoot == null) {
                 // This is a root candidate
-                if (hierarchyCode != null) {
-                    int length = hierarchyCode.split("/").length;
-                    if (length < shortestLength) {
-                        shortestLength = length;
+                rootCandidates++;
+                if (pos.getHierarchyNode() != null || pos.getHierarchyCode() != null) {
+                    int segments = countSegments(pos);
+                    if (segments < rootSegments) {
+                        rootSegments = segments;
                         root = pos;
                     }
                 } else if (root == null) {
                     root = pos;
                 }
+            } else if (!linked) {
+                orphans++;
+                if (firstOrphan == null) {
+                    firstOrphan = pos.getPositionID() + " (parent " + pos.getParentHierarchyCode() + ")";
+                }
             }
         }
         
+        if (scopeRoot != null) {
+            root = scopeRoot;
+        } else if (rootCandidates > 1) {
+            OrgChartEngine.log("OrgChartParser").warn("Found " + rootCandidates + " positions without a parent; using '" + root.getHierarchyCode() + "' as root, the others are not rendered.");
+        }
+        if (orphans > 0) {
+            OrgChartEngine.log("OrgChartParser").warn("Found " + orphans + " positions whose parent HierarchyCode is missing, e.g. PositionID " + firstOrphan + "; they are not rendered.");
+        }
+        
         // If no root found by parent check, use position with shortest HierarchyCode
         if (root == null) {
-            for (Position pos : positionMap.values()) {
-                String hierarchyCode = pos.getHierarchyCode();
-                if (hierarchyCode != null) {
-                    int length = hierarchyCode.split("/").length;
-                    if (length < shortestLength) {
-                        shortestLength = length;
+            for (Position pos : nodes) {
+                if (pos.getHierarchyNode() != null || pos.getHierarchyCode() != null) {
+                    int segments = countSegments(pos);
+                    if (segments < rootSegments) {
+                        rootSegments = segments;
                         root = pos;
                     }
                 }
@@ -221,66 +434,51 @@ public class OrgChartParser {
         }
         
         // Fallback: use first position if still no root found
-        if (root == null && !positionMap.isEmpty()) {
-            root = positionMap.values().iterator().next();
+        if (root == null && !nodes.isEmpty()) {
+            root = nodes.get(0);
         }
         
         return root;
     }
     
     /**
-     * Merge positions with same PositionID (matching React widget's mergePositions)
+     * Number of HierarchyCode segments of a position, taken from its trie node when indexed
      */
-    private static List<Position> mergePositions(List<Position> arr1, List<Position> arr2) {
-        List<Position> merged = new ArrayList<>(arr1 != null ? arr1 : new ArrayList<>());
-        Set<Integer> existingIds = new HashSet<>();
-        
-        for (Position p : merged) {
-            existingIds.add(p.getPositionID());
+    private static int countSegments(Position pos) {
+        HierarchyIndex.Node node = pos.getHierarchyNode();
+        if (node != null) {
+            // "/a/b/".split("/") is ["", "a", "b"]
+            return node.getDepth() + 1;
         }
-        
-        if (arr2 != null) {
-            for (Position item : arr2) {
-                if (!existingIds.contains(item.getPositionID())) {
-                    merged.add(item);
-                }
-            }
-        }
-        
-        return merged;
+        return countSegments(pos.getHierarchyCode());
     }
     
     /**
-     * Clone a Position with its immediate children list
+     * Number of segments in a HierarchyCode, counted like hierarchyCode.split("/").length
+     * (trailing empty segments are not counted) but without regex or allocation
      */
-    private static Position clonePosition(Position original) {
-        Position cloned = new Position();
-        cloned.setPositionID(original.getPositionID());
-        cloned.setPositionName(original.getPositionName());
-        cloned.setHierarchyCode(original.getHierarchyCode());
-        cloned.setParentHierarchyCode(original.getParentHierarchyCode());
-        cloned.setNorm(original.getNorm());
-        cloned.setTitleCode(original.getTitleCode());
-        cloned.setPositions(new ArrayList<>(original.getPositions()));
-        return cloned;
+    static int countSegments(String hierarchyCode) {
+        int last = hierarchyCode.length() - 1;
+        while (last >= 0 && hierarchyCode.charAt(last) == '/') {
+            last--;
+        }
+        if (last < 0) {
+            return hierarchyCode.isEmpty() ? 1 : 0;
+        }
+        int segments = 1;
+        for (int i = 0; i < last; i++) {
+            if (hierarchyCode.charAt(i) == '/') {
+                segments++;
+            }
+        }
+        return segments;
     }
     
     /**
      * Calculate total norm (matching React widget's sumNorm)
      */
     public static int sumNorm(Position node) {
-        if (node == null) {
-            return 0;
-        }
-        
-        // Explicitly convert to int for integer arithmetic
-        Integer normValue = node.getNorm();
-        int total = (normValue != null) ? normValue.intValue() : 0;
-        for (Position child : node.getPositions()) {
-            total += sumNorm(child);
-        }
-        
-        return total;
+        return TreeAnalytics.of(node).getTotalNorm();
     }
 }
 
@@ -1,35 +1,87 @@
 package myfirstmodule.pdf;
 
-import com.mendix.core.Core;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 
 import java.awt.Color;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * PDF renderer using PDFBox, matching React widget's visual output exactly
  */
-public class OrgChartRenderer {
+public class OrgChartRenderer implements Closeable {
+    
+    /**
+     * Page format of the output: FIT sizes a single page to the whole chart, A3 and A1
+     * split the chart over landscape pages of that size
+     */
+    public enum PageFormat {
+        FIT(null),
+        A3(PDRectangle.A3),
+        A1(PDRectangle.A1);
+
+        private final PDRectangle portrait;
+
+        PageFormat(PDRectangle portrait) {
+            this.portrait = portrait;
+        }
+
+        PDRectangle landscape() {
+            return new PDRectangle(portrait.getHeight(), portrait.getWidth());
+        }
+
+        /**
+         * The format with the given name (case-insensitive); FIT when empty or unknown
+         */
+        public static PageFormat fromName(String name) {
+            if (name != null) {
+                for (PageFormat format : values()) {
+                    if (format.name().equalsIgnoreCase(name.trim())) {
+                        return format;
+                    }
+                }
+            }
+            return FIT;
+        }
+    }
+    
+    private static final float HEADER_HEIGHT = Style.HEADER_FONT_SIZE + Style.HEADER_MARGIN_BOTTOM
+            + Style.TOTAL_NORM_FONT_SIZE + Style.TOTAL_NORM_MARGIN_BOTTOM;
+    private static final float FOOTER_HEIGHT = Style.FOOTER_IMAGE_HEIGHT + Style.FOOTER_MARGIN_TOP;
     
     // Structure to hold calculated layout and bounds
     private static class LayoutResult {
-        final Map<Position, OrgChartLayout.NodeLayout> layouts;
+        final LayoutStore layouts;
         final float minX, maxX, minY, maxY;
         final float width, height;
 
-        LayoutResult(Map<Position, OrgChartLayout.NodeLayout> layouts) {
+        LayoutResult(LayoutStore layouts) {
             this.layouts = layouts;
             
             float minX = Float.MAX_VALUE;
@@ -37,14 +89,16 @@ public class OrgChartRenderer {
             float minY = Float.MAX_VALUE;
             float maxY = Float.MIN_VALUE;
 
-            if (layouts == null || layouts.isEmpty()) {
+            if (layouts == null || layouts.size() == 0) {
                 minX = maxX = minY = maxY = 0;
             } else {
-                for (OrgChartLayout.NodeLayout layout : layouts.values()) {
-                    if (layout.x < minX) minX = layout.x;
-                    if (layout.x + layout.width > maxX) maxX = layout.x + layout.width;
-                    if (layout.y - layout.height < minY) minY = layout.y - layout.height;
-                    if (layout.y > maxY) maxY = layout.y;
+                for (int i = 0; i < layouts.size(); i++) {
+                    float x = layouts.getX(i);
+                    float y = layouts.getY(i);
+                    if (x < minX) minX = x;
+                    if (x + layouts.getWidth(i) > maxX) maxX = x + layouts.getWidth(i);
+                    if (y - layouts.getHeight(i) < minY) minY = y - layouts.getHeight(i);
+                    if (y > maxY) maxY = y;
                 }
             }
             
@@ -57,117 +111,202 @@ public class OrgChartRenderer {
         }
     }
 
-    private PDDocument document;
-    private PDFont fontRegular;
-    private PDFont fontBold;
-    
-    public OrgChartRenderer() throws Exception {
-        this.document = new PDDocument();
-        
-        // Try multiple resource paths to find the fonts (classpath)
-        String[] regularPaths = {
-            "/myfirstmodule/font/Roboto-Regular.ttf",
-            "/font/Roboto-Regular.ttf",
-            "font/Roboto-Regular.ttf",
-            "/resources/font/Roboto-Regular.ttf"
-        };
-        
-        String[] boldPaths = {
-            "/myfirstmodule/font/Roboto-Bold.ttf",
-            "/font/Roboto-Bold.ttf",
-            "font/Roboto-Bold.ttf",
-            "/resources/font/Roboto-Bold.ttf"
-        };
-        
-        InputStream regularFontStream = null;
-        InputStream boldFontStream = null;
-        
-        // Try to load regular font from multiple classpath locations
-        for (String path : regularPaths) {
-            regularFontStream = getClass().getResourceAsStream(path);
-            if (regularFontStream != null) {
-                Core.getLogger("OrgChartRenderer").info("Found Roboto-Regular.ttf at: " + path);
-                break;
-            }
+    /**
+     * The pages planned for one language: one page fitted to the layout, or fixed-size tiles
+     */
+    private static class PagePlan {
+        final LayoutResult fitted;
+        final PDRectangle tileSize;
+        final ChartTiler tiler;
+        final List<ChartTiler.Tile> tiles;
+
+        PagePlan(LayoutResult fitted, PDRectangle tileSize, ChartTiler tiler, List<ChartTiler.Tile> tiles) {
+            this.fitted = fitted;
+            this.tileSize = tileSize;
+            this.tiler = tiler;
+            this.tiles = tiles;
         }
-        
-        // Try to load bold font from multiple classpath locations
-        for (String path : boldPaths) {
-            boldFontStream = getClass().getResourceAsStream(path);
-            if (boldFontStream != null) {
-                Core.getLogger("OrgChartRenderer").info("Found Roboto-Bold.ttf at: " + path);
-                break;
+
+        int pageCount() {
+            return fitted != null ? 1 : tiles.size();
+        }
+    }
+
+    /**
+     * Fonts used by one page, and the document its streams are created in. A PDDocument
+     * is not thread-safe and fonts track the glyphs to subset, so pages drawn
+     * concurrently each need their own document and font instances. Pages drawn with
+     * extra instances record their code points and glyphs so they can be moved onto the
+     * shared fonts afterwards.
+     */
+    private static class PageFonts {
+        final PDDocument document;
+        final PDFont regular;
+        final PDFont bold;
+        final ShownText regularShown;
+        final ShownText boldShown;
+
+        PageFonts(PDDocument document, PDFont regular, PDFont bold, boolean trackShown) {
+            this.document = document;
+            this.regular = regular;
+            this.bold = bold;
+            this.regularShown = trackShown ? new ShownText() : null;
+            this.boldShown = trackShown ? new ShownText() : null;
+        }
+
+        /**
+         * Show text with one of these fonts (already set on the stream)
+         */
+        void showText(ContentWriter contentStream, PDFont font, String text) throws IOException {
+            Set<Integer> substituted = contentStream.showText(text);
+            ShownText shown = font == bold ? boldShown : regularShown;
+            if (shown != null) {
+                shown.add(text, substituted);
             }
         }
-        
-        // Fallback: try file system under Mendix resources path (deployment/resources)
-        try {
-            if (regularFontStream == null) {
-                String base = com.mendix.core.Core.getConfiguration().getResourcesPath().getAbsolutePath();
-                String[] fileCandidates = new String[] {
-                    base + java.io.File.separator + "font" + java.io.File.separator + "Roboto-Regular.ttf",
-                    base + java.io.File.separator + "fonts" + java.io.File.separator + "Roboto-Regular.ttf",
-                    "resources" + java.io.File.separator + "font" + java.io.File.separator + "Roboto-Regular.ttf"
-                };
-                for (String p : fileCandidates) {
-                    try {
-                        regularFontStream = new java.io.FileInputStream(p);
-                        Core.getLogger("OrgChartRenderer").info("Found Roboto-Regular.ttf at file path: " + p);
-                        break;
-                    } catch (java.io.FileNotFoundException ignore) { }
+
+        /**
+         * Point the pages at the target's fonts and add the recorded code points and glyphs
+         * to their subsets, so all pages share one embedded subset per font. CIDs are glyph
+         * IDs of the same parsed font, so the already written content stays valid. The
+         * replaced fonts are no longer reachable from the page tree and are not written on save.
+         */
+        void moveTo(PageFonts target, List<PDPage> pages) {
+            for (PDPage page : pages) {
+                COSDictionary fontResources = page.getResources().getCOSObject().getCOSDictionary(COSName.FONT);
+                if (fontResources == null) {
+                    continue;
                 }
-            }
-            if (boldFontStream == null) {
-                String base = com.mendix.core.Core.getConfiguration().getResourcesPath().getAbsolutePath();
-                String[] fileCandidates = new String[] {
-                    base + java.io.File.separator + "font" + java.io.File.separator + "Roboto-Bold.ttf",
-                    base + java.io.File.separator + "fonts" + java.io.File.separator + "Roboto-Bold.ttf",
-                    "resources" + java.io.File.separator + "font" + java.io.File.separator + "Roboto-Bold.ttf"
-                };
-                for (String p : fileCandidates) {
-                    try {
-                        boldFontStream = new java.io.FileInputStream(p);
-                        Core.getLogger("OrgChartRenderer").info("Found Roboto-Bold.ttf at file path: " + p);
-                        break;
-                    } catch (java.io.FileNotFoundException ignore) { }
+                for (COSName name : fontResources.keySet()) {
+                    COSBase font = fontResources.getDictionaryObject(name);
+                    if (font == regular.getCOSObject()) {
+                        fontResources.setItem(name, target.regular);
+                    } else if (font == bold.getCOSObject()) {
+                        fontResources.setItem(name, target.bold);
+                    }
                 }
             }
-        } catch (Exception e) {
-            Core.getLogger("OrgChartRenderer").warn("Exception while probing file system for fonts: " + e.getMessage());
+            regularShown.addToSubset(target.regular);
+            boldShown.addToSubset(target.bold);
         }
         
-        if (regularFontStream == null) {
-            throw new IOException("Could not find 'Roboto-Regular.ttf'. Tried classpath paths: " + String.join(", ", regularPaths) + " and common file paths under resources/font.");
+        /**
+         * Count text shown by a form drawn elsewhere as shown with these fonts
+         */
+        void addShown(ShownText regularText, ShownText boldText) {
+            if (regularShown != null) {
+                regularShown.addAll(regularText);
+                boldShown.addAll(boldText);
+            } else {
+                regularText.addToSubset(regular);
+                boldText.addToSubset(bold);
+            }
         }
-        if (boldFontStream == null) {
-            throw new IOException("Could not find 'Roboto-Bold.ttf'. Tried classpath paths: " + String.join(", ", boldPaths) + " and common file paths under resources/font.");
+    }
+
+    /**
+     * Key of a node box template: border color and box size
+     */
+    private static class BoxStyle {
+        final Color borderColor;
+        final int borderRgb;
+        final float width;
+        final float height;
+
+        BoxStyle(Color borderColor, float width, float height) {
+            this.borderColor = borderColor;
+            this.borderRgb = borderColor.getRGB();
+            this.width = width;
+            this.height = height;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BoxStyle)) {
+                return false;
+            }
+            BoxStyle b = (BoxStyle) o;
+            return borderRgb == b.borderRgb && Float.compare(width, b.width) == 0
+                    && Float.compare(height, b.height) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(borderRgb, width, height);
+        }
+    }
+
+    private PDDocument document;
+    // Holds the streams of the EN pages while they are drawn in parallel; closed after saving
+    private PDDocument documentEN;
+    private PDFont fontRegular;
+    private PDFont fontBold;
+    private final boolean parallelPages;
+    private final PdfCompression compression = PdfCompression.current();
+    private final PdfCompression.Streams streams = compression.streams();
+    private final Map<BoxStyle, PDFormXObject> boxForms = new HashMap<>();
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+    private final Map<String, PDImageXObject> imagesByUrl = new HashMap<>();
+    private final Map<String, PDFormXObject> subtreeForms = new HashMap<>();
+    private OrgChartLayout.Mode layoutMode = OrgChartLayout.Mode.CLASSIC;
+    private PageFormat pageFormat = PageFormat.FIT;
+    private OrgChartScope scope;
+    private RenderProfile profile;
+    
+    public OrgChartRenderer() throws Exception {
+        this(true);
+    }
+    
+    /**
+     * @param parallelPages draw the TR and EN pages in parallel while a render slot of the
+     *                      RenderExecutor is free; callers that already render many
+     *                      documents concurrently can turn this off
+     */
+    public OrgChartRenderer(boolean parallelPages) throws Exception {
+        this.parallelPages = parallelPages;
+        this.document = new PDDocument(ScratchStorage.streamCache());
         
+        // Fonts are parsed once per JVM by the registry; only the per-document embedding is created here
         try {
-            this.fontRegular = PDType0Font.load(document, regularFontStream);
-            this.fontBold = PDType0Font.load(document, boldFontStream);
-            Core.getLogger("OrgChartRenderer").info("Successfully loaded Roboto fonts with Turkish character support!");
+            this.fontRegular = FontRegistry.loadRegular(document);
+            this.fontBold = FontRegistry.loadBold(document);
         } catch (IOException e) {
-            Core.getLogger("OrgChartRenderer").error("Failed to load TTF fonts: " + e.getMessage());
+            OrgChartEngine.log("OrgChartRenderer").error("Failed to load TTF fonts: " + e.getMessage(), e);
+            document.close();
             throw e;
-        } finally {
-            try { if (regularFontStream != null) regularFontStream.close(); } catch (IOException ignore) {}
-            try { if (boldFontStream != null) boldFontStream.close(); } catch (IOException ignore) {}
         }
     }
     
     /**
-     * Get regular font
+     * Choose how subtrees are packed; TIDY gives much narrower pages for wide organizations
+     */
+    public void setLayoutMode(OrgChartLayout.Mode layoutMode) {
+        this.layoutMode = layoutMode != null ? layoutMode : OrgChartLayout.Mode.CLASSIC;
+    }
+    
+    /**
+     * Choose between one page sized to the chart (the default) and fixed-size tiled pages
+     */
+    public void setPageFormat(PageFormat pageFormat) {
+        this.pageFormat = pageFormat != null ? pageFormat : PageFormat.FIT;
+    }
+    
+    /**
+     * Render only the subtree at rootHierarchyCode (whole organization if empty), at most
+     * maxDepth levels deep (no limit if null or negative); cut-off nodes show a badge with
+     * the number and norm of the positions below them. Trees parsed with the same scope
+     * (OrgChartParser.parse with a root code) are already cut and need no scope here.
+     * Other trees are indexed by their HierarchyCodes when the scope is applied.
      */
-    private PDFont getRegularFont() {
-        return fontRegular;
+    public void setScope(String rootHierarchyCode, Integer maxDepth) {
+        this.scope = OrgChartScope.of(rootHierarchyCode, maxDepth);
     }
     
     /**
-     * Get bold font
+     * Add the LAYOUT, DRAW, FOOTER and SAVE phases (and TREE_BUILD for a scope) to the profile
      */
-    private PDFont getBoldFont() {
-        return fontBold;
+    public void setProfile(RenderProfile profile) {
+        this.profile = profile;
     }
     
     /**
@@ -181,103 +320,347 @@ public class OrgChartRenderer {
             String footerPreparedByEN, String footerDocDateEN, String footerLastUpdateEN,
             String footerImageUrlEN
     ) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        render(dataTR, titleTR, totalNormLabelTR, footerPreparedByTR, footerDocDateTR, footerLastUpdateTR, footerImageUrlTR,
+                dataEN, titleEN, totalNormLabelEN, footerPreparedByEN, footerDocDateEN, footerLastUpdateEN, footerImageUrlEN,
+                baos);
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Render complete PDF with TR and optional EN pages straight into the given stream.
+     * The stream is not closed; the document is closed once it has been written.
+     */
+    public void render(
+            Position dataTR, String titleTR, String totalNormLabelTR,
+            String footerPreparedByTR, String footerDocDateTR, String footerLastUpdateTR,
+            String footerImageUrlTR,
+            Position dataEN, String titleEN, String totalNormLabelEN,
+            String footerPreparedByEN, String footerDocDateEN, String footerLastUpdateEN,
+            String footerImageUrlEN,
+            OutputStream out
+    ) throws Exception {
+        try {
+            draw(dataTR, titleTR, totalNormLabelTR, footerPreparedByTR, footerDocDateTR, footerLastUpdateTR, footerImageUrlTR,
+                    dataEN, titleEN, totalNormLabelEN, footerPreparedByEN, footerDocDateEN, footerLastUpdateEN, footerImageUrlEN);
+            save(out);
+        } finally {
+            close();
+        }
+    }
+    
+    /**
+     * Draw the TR and optional EN pages without writing them; save writes the document
+     * and close releases it. render does all three, these are for callers that measure
+     * the stages apart.
+     */
+    public void draw(
+            Position dataTR, String titleTR, String totalNormLabelTR,
+            String footerPreparedByTR, String footerDocDateTR, String footerLastUpdateTR,
+            String footerImageUrlTR,
+            Position dataEN, String titleEN, String totalNormLabelEN,
+            String footerPreparedByEN, String footerDocDateEN, String footerLastUpdateEN,
+            String footerImageUrlEN
+    ) throws Exception {
+        if (scope != null) {
+            RenderProfile.Span treeBuildSpan = RenderProfile.start(profile, RenderProfile.Phase.TREE_BUILD);
+            try {
+                boolean given = dataTR != null || dataEN != null;
+                dataTR = dataTR != null ? scope.apply(dataTR) : null;
+                dataEN = dataEN != null ? scope.apply(dataEN) : null;
+                if (given && dataTR == null && dataEN == null) {
+                    throw new IllegalArgumentException("No position has HierarchyCode '" + scope.getRootCode() + "'");
+                }
+            } finally {
+                treeBuildSpan.end();
+            }
+        }
+        renderPages(dataTR, titleTR, totalNormLabelTR, footerPreparedByTR, footerDocDateTR, footerLastUpdateTR, footerImageUrlTR,
+                dataEN, titleEN, totalNormLabelEN, footerPreparedByEN, footerDocDateEN, footerLastUpdateEN, footerImageUrlEN);
+    }
+    
+    /**
+     * Write the drawn document into the stream, which is not closed
+     */
+    public void save(OutputStream out) throws IOException {
+        RenderProfile.Span saveSpan = RenderProfile.start(profile, RenderProfile.Phase.SAVE);
+        try {
+            CountingOutputStream counted = new CountingOutputStream(out);
+            document.save(counted, compression.parameters());
+            if (profile != null) {
+                profile.setOutput(counted.count, compression.describe(), streams.rawBytes(), streams.deflatedBytes());
+            }
+        } finally {
+            saveSpan.end();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            document.close();
+        } finally {
+            if (documentEN != null) {
+                documentEN.close();
+            }
+        }
+    }
+    
+    /**
+     * Add the TR and optional EN pages to the document.
+     * When both are requested they are laid out and drawn in parallel, the EN pages into
+     * a document of their own on a render thread; only adding the finished pages to the
+     * document happens on the calling thread.
+     */
+    private void renderPages(
+            Position dataTR, String titleTR, String totalNormLabelTR,
+            String footerPreparedByTR, String footerDocDateTR, String footerLastUpdateTR,
+            String footerImageUrlTR,
+            Position dataEN, String titleEN, String totalNormLabelEN,
+            String footerPreparedByEN, String footerDocDateEN, String footerLastUpdateEN,
+            String footerImageUrlEN
+    ) throws Exception {
+        PageFonts fontsTR = new PageFonts(document, fontRegular, fontBold, false);
         
-        // Render Turkish page
-        if (dataTR != null) {
-            // 1. First, perform layout calculation
-            Map<Position, OrgChartLayout.NodeLayout> layoutsTR = OrgChartLayout.layoutTree(dataTR, 0, 0);
-            LayoutResult layoutResultTR = new LayoutResult(layoutsTR);
-
-            // 2. Then, render the page using the calculated layout
-            renderPage(dataTR, layoutResultTR, titleTR, totalNormLabelTR,
-                    footerPreparedByTR, footerDocDateTR, footerLastUpdateTR,
-                    footerImageUrlTR);
+        // The TR plan numbers the pages, so the EN continuation markers know where they start
+        PagePlan planTR = dataTR != null ? planPages(dataTR) : null;
+        int firstPageEN = planTR != null ? planTR.pageCount() : 0;
+        
+        // Only a single language, or parallel pages disabled - draw them right here
+        if (dataTR == null || dataEN == null || !parallelPages) {
+            if (planTR != null) {
+                renderPages(planTR, fontsTR, titleTR, totalNormLabelTR,
+                        footerPreparedByTR, footerDocDateTR, footerLastUpdateTR, footerImageUrlTR, 0, document::addPage);
+            }
+            if (dataEN != null) {
+                renderPages(planPages(dataEN), fontsTR, titleEN, totalNormLabelEN,
+                        footerPreparedByEN, footerDocDateEN, footerLastUpdateEN, footerImageUrlEN, firstPageEN,
+                        document::addPage);
+            }
+            return;
         }
         
-        // Render English page
-        if (dataEN != null) {
-            // 1. First, perform layout calculation
-            Map<Position, OrgChartLayout.NodeLayout> layoutsEN = OrgChartLayout.layoutTree(dataEN, 0, 0);
-            LayoutResult layoutResultEN = new LayoutResult(layoutsEN);
-
-            // 2. Then, render the page using the calculated layout
-            renderPage(dataEN, layoutResultEN, titleEN, totalNormLabelEN,
-                    footerPreparedByEN, footerDocDateEN, footerLastUpdateEN,
-                    footerImageUrlEN);
+        // Every stream is created through its document, so the EN pages get one of their own.
+        // Their pages are moved over afterwards and their streams are read from it on save.
+        documentEN = new PDDocument(ScratchStorage.streamCache());
+        PageFonts fontsEN = new PageFonts(documentEN, FontRegistry.loadRegular(documentEN),
+                FontRegistry.loadBold(documentEN), true);
+        Callable<List<PDPage>> drawEN = () -> {
+            List<PDPage> pages = new ArrayList<>();
+            renderPages(planPages(dataEN), fontsEN, titleEN, totalNormLabelEN,
+                    footerPreparedByEN, footerDocDateEN, footerLastUpdateEN, footerImageUrlEN, firstPageEN, pages::add);
+            return pages;
+        };
+        
+        // Render English pages in the background if a render slot is free, Turkish pages on this thread
+        Future<List<PDPage>> futureEN = RenderExecutor.getInstance().trySubmit(drawEN);
+        
+        List<PDPage> pagesTR = new ArrayList<>();
+        try {
+            renderPages(planTR, fontsTR, titleTR, totalNormLabelTR,
+                    footerPreparedByTR, footerDocDateTR, footerLastUpdateTR, footerImageUrlTR, 0, pagesTR::add);
+        } catch (Throwable t) {
+            // Never leave the background pages writing into a document that is about to be closed
+            if (futureEN != null) {
+                try {
+                    awaitPages(futureEN);
+                } catch (Throwable e) {
+                    t.addSuppressed(e);
+                }
+            }
+            throw t;
         }
+        List<PDPage> pagesEN = futureEN != null ? awaitPages(futureEN) : drawEN.call();
         
-        // Save to byte array
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        document.save(baos);
-        document.close();
+        // Embed a single subset per font for all pages
+        fontsEN.moveTo(fontsTR, pagesEN);
         
-        return baos.toByteArray();
+        addPages(pagesTR);
+        addPages(pagesEN);
+    }
+    
+    private void addPages(List<PDPage> pages) {
+        for (PDPage page : pages) {
+            document.addPage(page);
+        }
+    }
+    
+    /**
+     * Wait for pages rendered in the background, rethrowing their failure
+     */
+    private static List<PDPage> awaitPages(Future<List<PDPage>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Lay out one language's chart. FIT keeps the whole chart on one page unless that page
+     * would exceed Style.MAX_PAGE_WIDTH or MAX_PAGE_HEIGHT; then, like A3 and A1, the chart
+     * is split over fixed-size pages at subtree boundaries.
+     */
+    private PagePlan planPages(Position data) {
+        RenderProfile.Span layoutSpan = RenderProfile.start(profile, RenderProfile.Phase.LAYOUT);
+        try {
+            return planPagesUnprofiled(data);
+        } finally {
+            layoutSpan.end();
+        }
+    }
+    
+    private PagePlan planPagesUnprofiled(Position data) {
+        TreeAnalytics analytics = TreeAnalytics.of(data);
+        PDRectangle tileSize;
+        if (pageFormat == PageFormat.FIT) {
+            LayoutResult layoutResult = new LayoutResult(OrgChartLayout.layout(analytics, 0, 0, layoutMode));
+            float pageWidth = fittedPageWidth(layoutResult);
+            float pageHeight = fittedPageHeight(layoutResult);
+            if (pageWidth <= Style.MAX_PAGE_WIDTH && pageHeight <= Style.MAX_PAGE_HEIGHT) {
+                return new PagePlan(layoutResult, null, null, null);
+            }
+            OrgChartEngine.log("OrgChartRenderer").warn("Chart needs a " + pageWidth + " x " + pageHeight
+                    + " page, beyond the PDF page size limit; splitting it over A1 pages");
+            tileSize = PageFormat.A1.landscape();
+        } else {
+            tileSize = pageFormat.landscape();
+        }
+        
+        // Room for the tree: the page minus padding, header, footer and the markers below the last row
+        float treeWidth = tileSize.getWidth() - Style.PAGE_PADDING * 2;
+        float treeHeight = tileSize.getHeight() - Style.PAGE_PADDING * 2 - HEADER_HEIGHT - FOOTER_HEIGHT
+                - Style.CONTINUATION_MARGIN - Style.CONTINUATION_FONT_SIZE;
+        ChartTiler tiler = new ChartTiler(analytics, layoutMode, treeWidth, treeHeight);
+        return new PagePlan(null, tileSize, tiler, tiler.plan());
+    }
+    
+    private static float fittedPageWidth(LayoutResult layoutResult) {
+        float requiredWidth = layoutResult.width + (Style.PAGE_PADDING * 2) + (Style.PAGE_EXTRA_HORIZONTAL_PADDING * 2);
+        return Math.max(Style.MIN_PAGE_WIDTH, requiredWidth);
+    }
+    
+    private static float fittedPageHeight(LayoutResult layoutResult) {
+        float requiredHeight = layoutResult.height + HEADER_HEIGHT + FOOTER_HEIGHT + (Style.PAGE_PADDING * 2);
+        return Math.max(Style.MIN_PAGE_HEIGHT, requiredHeight);
     }
     
     /**
-     * Render a single page (TR or EN)
+     * Draw the planned pages of one language (TR or EN), one page at a time, handing each
+     * to the sink as soon as it is drawn; firstPage is the number of pages before them, so
+     * continuation markers show document page numbers. A drawn page keeps only its
+     * dictionary on the heap; its content stream is in the document's scratch storage.
      */
-    private void renderPage(
-            Position data, LayoutResult layoutResult, String title, String totalNormLabel,
+    private void renderPages(
+            PagePlan plan, PageFonts fonts, String title, String totalNormLabel,
             String footerPreparedBy, String footerDocDate, String footerLastUpdate,
-            String footerImageUrl
+            String footerImageUrl, int firstPage, Consumer<PDPage> sink
     ) throws Exception {
+        if (plan.fitted != null) {
+            sink.accept(renderPage(Collections.singletonList(Collections.singletonList(plan.fitted)), null, firstPage, fonts,
+                    title, totalNormLabel, footerPreparedBy, footerDocDate, footerLastUpdate, footerImageUrl,
+                    fittedPageWidth(plan.fitted), fittedPageHeight(plan.fitted)));
+            return;
+        }
         
-        // Calculate dynamic page size based on content
-        float headerHeight = Style.HEADER_FONT_SIZE + Style.HEADER_MARGIN_BOTTOM + 
-                             Style.TOTAL_NORM_FONT_SIZE + Style.TOTAL_NORM_MARGIN_BOTTOM;
-        float footerHeight = Style.FOOTER_IMAGE_HEIGHT + Style.FOOTER_MARGIN_TOP;
-        
-        float requiredWidth = layoutResult.width + (Style.PAGE_PADDING * 2) + (Style.PAGE_EXTRA_HORIZONTAL_PADDING * 2);
-        float requiredHeight = layoutResult.height + headerHeight + footerHeight + (Style.PAGE_PADDING * 2);
-
-        float pageWidth = Math.max(Style.MIN_PAGE_WIDTH, requiredWidth);
-        float pageHeight = Math.max(Style.MIN_PAGE_HEIGHT, requiredHeight);
+        for (int i = 0; i < plan.tiles.size(); i++) {
+            ChartTiler.View view;
+            RenderProfile.Span layoutSpan = RenderProfile.start(profile, RenderProfile.Phase.LAYOUT);
+            try {
+                view = plan.tiler.view(plan.tiles.get(i));
+            } finally {
+                layoutSpan.end();
+            }
+            List<List<LayoutResult>> rows = new ArrayList<>();
+            for (List<LayoutStore> layouts : view.rows) {
+                List<LayoutResult> row = new ArrayList<>();
+                for (LayoutStore layout : layouts) {
+                    row.add(new LayoutResult(layout));
+                }
+                rows.add(row);
+            }
+            // The total belongs to the whole organization, so only the overview shows it
+            sink.accept(renderPage(rows, view, firstPage, fonts,
+                    title, i == 0 ? totalNormLabel : null,
+                    footerPreparedBy, footerDocDate, footerLastUpdate, footerImageUrl,
+                    plan.tileSize.getWidth(), plan.tileSize.getHeight()));
+        }
+    }
+    
+    /**
+     * Draw a single page of the given size showing one or more rows of trees
+     *
+     * @param markers nodes of a tiled page whose subtree continues elsewhere or comes from
+     *                elsewhere, with page indexes relative to firstPage; null if untiled
+     */
+    private PDPage renderPage(
+            List<List<LayoutResult>> rows, ChartTiler.View markers, int firstPage, PageFonts fonts,
+            String title, String totalNormLabel,
+            String footerPreparedBy, String footerDocDate, String footerLastUpdate,
+            String footerImageUrl, float pageWidth, float pageHeight
+    ) throws Exception {
         
         // Create page with custom size
         PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
-        document.addPage(page);
         
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+        ContentWriter contentStream = ContentWriter.forPage(fonts.document, page, streams);
         
-        // Draw white background
-        contentStream.setNonStrokingColor(Style.PAGE_BACKGROUND);
-        contentStream.addRect(0, 0, pageWidth, pageHeight);
-        contentStream.fill();
+        RenderProfile.Span drawSpan = RenderProfile.start(profile, RenderProfile.Phase.DRAW);
+        try {
+            // Draw white background
+            contentStream.setNonStrokingColor(Style.PAGE_BACKGROUND);
+            contentStream.addRect(0, 0, pageWidth, pageHeight);
+            contentStream.fill();
         
-        float currentY = pageHeight - Style.PAGE_PADDING;
+            float currentY = pageHeight - Style.PAGE_PADDING;
         
-        // Draw header
-        currentY = drawHeader(contentStream, title, currentY, pageWidth, page);
+            // Draw header
+            currentY = drawHeader(contentStream, fonts, title, currentY, pageWidth, page);
         
-        // Draw total norm label if provided (label already contains the number)
-        if (totalNormLabel != null && !totalNormLabel.trim().isEmpty()) {
-            currentY = drawTotalNorm(contentStream, totalNormLabel, currentY, page);
-        }
+            // Draw total norm label if provided (label already contains the number)
+            if (totalNormLabel != null && !totalNormLabel.trim().isEmpty()) {
+                currentY = drawTotalNorm(contentStream, fonts, totalNormLabel, currentY, page);
+            }
         
-        // Layout and draw organization tree
-        drawOrganizationTree(contentStream, data, layoutResult, currentY, pageWidth);
+            // Layout and draw organization tree
+            drawOrganizationTree(contentStream, fonts, rows, markers, firstPage, currentY, pageWidth);
+        } finally {
+            drawSpan.end();
+        }
         
         // Draw footer
-        drawFooter(contentStream, footerPreparedBy, footerDocDate, footerLastUpdate,
-                footerImageUrl, pageWidth, pageHeight);
+        RenderProfile.Span footerSpan = RenderProfile.start(profile, RenderProfile.Phase.FOOTER);
+        try {
+            drawFooter(contentStream, fonts, footerPreparedBy, footerDocDate, footerLastUpdate,
+                    footerImageUrl, pageWidth, pageHeight);
+        } finally {
+            footerSpan.end();
+        }
         
         contentStream.close();
+        return page;
     }
     
     /**
      * Draw header text
      */
-    private float drawHeader(PDPageContentStream contentStream, String title, float y, float pageWidth, PDPage page) throws Exception {
+    private float drawHeader(ContentWriter contentStream, PageFonts fonts, String title, float y, float pageWidth, PDPage page) throws Exception {
         if (title == null || title.isEmpty()) {
             title = "Organization Chart";
         }
         
         contentStream.setNonStrokingColor(Color.BLACK);
         contentStream.beginText();
-        contentStream.setFont(getBoldFont(), Style.HEADER_FONT_SIZE);
-        contentStream.newLineAtOffset(Style.PAGE_PADDING, y - Style.HEADER_FONT_SIZE);
-        contentStream.showText(title);
+        contentStream.setFont(fonts.bold, Style.HEADER_FONT_SIZE);
+        contentStream.moveTextTo(Style.PAGE_PADDING, y - Style.HEADER_FONT_SIZE);
+        fonts.showText(contentStream, fonts.bold, title);
         contentStream.endText();
         
         return y - Style.HEADER_FONT_SIZE - Style.HEADER_MARGIN_BOTTOM;
@@ -286,7 +669,7 @@ public class OrgChartRenderer {
     /**
      * Draw a rounded rectangle with proper bezier curves
      */
-    private void drawRoundedRect(PDPageContentStream contentStream, float x, float y, float width, float height, float radius) throws Exception {
+    private void drawRoundedRect(ContentWriter contentStream, float x, float y, float width, float height, float radius) throws Exception {
         // Ensure radius doesn't exceed half of width or height
         float r = Math.min(radius, Math.min(width / 2, height / 2));
         
@@ -342,7 +725,7 @@ public class OrgChartRenderer {
     /**
      * Draw left border stripe with rounded corners on left side only
      */
-    private void drawLeftBorderStripe(PDPageContentStream contentStream, float x, float y, float width, float height, float radius) throws Exception {
+    private void drawLeftBorderStripe(ContentWriter contentStream, float x, float y, float width, float height, float radius) throws Exception {
         // Ensure radius doesn't exceed dimensions
         float r = Math.min(radius, Math.min(width, height / 2));
         
@@ -385,12 +768,12 @@ public class OrgChartRenderer {
     /**
      * Draw total norm text (label already contains the number)
      */
-    private float drawTotalNorm(PDPageContentStream contentStream, String label, float y, PDPage page) throws Exception {
+    private float drawTotalNorm(ContentWriter contentStream, PageFonts fonts, String label, float y, PDPage page) throws Exception {
         contentStream.setNonStrokingColor(Color.BLACK);
         contentStream.beginText();
-        contentStream.setFont(getRegularFont(), Style.TOTAL_NORM_FONT_SIZE);
-        contentStream.newLineAtOffset(Style.PAGE_PADDING, y - Style.TOTAL_NORM_FONT_SIZE);
-        contentStream.showText(label);
+        contentStream.setFont(fonts.regular, Style.TOTAL_NORM_FONT_SIZE);
+        contentStream.moveTextTo(Style.PAGE_PADDING, y - Style.TOTAL_NORM_FONT_SIZE);
+        fonts.showText(contentStream, fonts.regular, label);
         contentStream.endText();
         
         return y - Style.TOTAL_NORM_FONT_SIZE;
@@ -399,142 +782,181 @@ public class OrgChartRenderer {
     /**
      * Draw organization tree
      */
-    private void drawOrganizationTree(PDPageContentStream contentStream, Position root, LayoutResult layoutResult, float startY, float pageWidth) throws Exception {
-        if (root == null || layoutResult == null || layoutResult.layouts.isEmpty()) {
-            return;
-        }
-
-        // The layout is already calculated, we just need to position it correctly on the page.
-        Map<Position, OrgChartLayout.NodeLayout> layouts = layoutResult.layouts;
-
-        // The offset needed to center the tree horizontally.
-        float offsetX = (pageWidth - layoutResult.width) / 2f - layoutResult.minX;
-        
-        // The offset needed to place the tree correctly vertically after the header.
-        float offsetY = startY - layoutResult.maxY;
-
-        // We need a new map for the final, adjusted layouts.
-        Map<Position, OrgChartLayout.NodeLayout> finalLayouts = new java.util.HashMap<>();
-        for(Map.Entry<Position, OrgChartLayout.NodeLayout> entry : layouts.entrySet()) {
-            OrgChartLayout.NodeLayout original = entry.getValue();
-            // Create a new layout object with adjusted coordinates
-            finalLayouts.put(entry.getKey(), new OrgChartLayout.NodeLayout(
-                original.x + offsetX,
-                original.y + offsetY,
-                original.width,
-                original.height,
-                original.level
-            ));
-        }
+    private void drawOrganizationTree(ContentWriter contentStream, PageFonts fonts, List<List<LayoutResult>> rows,
+                                      ChartTiler.View markers, int firstPage, float startY, float pageWidth) throws Exception {
+        // Trees sharing a (tiled) page stand in rows, each row centered as a whole
+        float rowTop = startY;
+        for (List<LayoutResult> row : rows) {
+            float rowWidth = ChartTiler.PART_GAP * (row.size() - 1);
+            float rowHeight = 0;
+            for (LayoutResult layoutResult : row) {
+                rowWidth += layoutResult.width;
+                rowHeight = Math.max(rowHeight, layoutResult.height);
+            }
+            float left = (pageWidth - rowWidth) / 2f;
+            
+            for (LayoutResult layoutResult : row) {
+                // The layout is already calculated, we just need to position it correctly on the page.
+                LayoutStore layouts = layoutResult.layouts;
+                if (layouts.size() == 0) {
+                    continue;
+                }
+                
+                // The offset needed to center the tree horizontally.
+                float offsetX = left - layoutResult.minX;
+                left += layoutResult.width + ChartTiler.PART_GAP;
+                
+                // The offset needed to place the tree correctly vertically after the header.
+                float offsetY = rowTop - layoutResult.maxY;
+                
+                // Departments below the root are placed as subtree forms, reused across renders
+                int[] formEnds = subtreeFormEnds(layouts);
+                SubtreeCache.Keys formKeys = formEnds != null ? SubtreeCache.keys(layouts.getAnalytics(), layoutMode) : null;
 
-        // Draw connecting lines first (so they appear behind nodes)
-        drawConnectingLines(contentStream, root, finalLayouts);
+                // Draw connecting lines first (so they appear behind nodes)
+                drawConnectingLines(contentStream, layouts, 0, layouts.size(), formEnds, offsetX, offsetY);
 
-        // Draw nodes on top
-        for (Map.Entry<Position, OrgChartLayout.NodeLayout> entry : finalLayouts.entrySet()) {
-            drawNode(contentStream, entry.getKey(), entry.getValue());
+                // Draw nodes on top, applying the page offset as we go
+                for (int i = 0; i < layouts.size(); i++) {
+                    Position position = layouts.getPosition(i);
+                    float x = layouts.getX(i) + offsetX;
+                    float y = layouts.getY(i) + offsetY;
+                    if (formEnds != null && formEnds[i] > 0) {
+                        contentStream.drawForm(subtreeForm(fonts, layouts, i, formKeys.get(i)), x, y);
+                        for (int j = i; j < formEnds[i]; j++) {
+                            drawContinuation(contentStream, fonts, markers, firstPage, layouts, j, offsetX, offsetY);
+                        }
+                        i = formEnds[i] - 1;
+                        continue;
+                    }
+                    drawNode(contentStream, fonts, position, x, y, layouts.getWidth(i), layouts.getHeight(i));
+                    drawContinuation(contentStream, fonts, markers, firstPage, layouts, i, offsetX, offsetY);
+                }
+            }
+            rowTop -= rowHeight + ChartTiler.ROW_GAP;
         }
     }
     
     /**
-     * Draw connecting lines between parent and children
+     * Draw the continuation markers of the node at the index, if it has any
      */
-    private void drawConnectingLines(PDPageContentStream contentStream, Position node, Map<Position, OrgChartLayout.NodeLayout> layouts) throws Exception {
-        if (node == null || node.getPositions() == null || node.getPositions().isEmpty()) {
+    private void drawContinuation(ContentWriter contentStream, PageFonts fonts, ChartTiler.View markers, int firstPage,
+                                  LayoutStore layouts, int index, float offsetX, float offsetY) throws Exception {
+        if (markers == null) {
             return;
         }
-        
-        OrgChartLayout.NodeLayout nodeLayout = layouts.get(node);
-        if (nodeLayout == null) {
+        Position position = layouts.getPosition(index);
+        Integer from = markers.continuedFrom.get(position);
+        Integer to = markers.continuations.get(position);
+        if (from != null || to != null) {
+            drawContinuation(contentStream, fonts, from != null ? firstPage + from + 1 : 0,
+                    to != null ? firstPage + to + 1 : 0, !position.getPositions().isEmpty(),
+                    layouts.getX(index) + offsetX, layouts.getY(index) + offsetY,
+                    layouts.getWidth(index), layouts.getHeight(index));
+        }
+    }
+    
+    /**
+     * Mark where a node's subtree comes from (« page) and where it continues (» page);
+     * beside the box when its children on this page take the space below, otherwise below
+     */
+    private void drawContinuation(ContentWriter contentStream, PageFonts fonts, int fromPage, int toPage, boolean hasChildren,
+                                  float x, float y, float w, float h) throws Exception {
+        String marker = (fromPage > 0 ? "\u00AB " + fromPage : "")
+                + (fromPage > 0 && toPage > 0 ? "   " : "")
+                + (toPage > 0 ? "\u00BB " + toPage : "");
+        contentStream.beginText();
+        if (hasChildren) {
+            contentStream.setNonStrokingColor(Style.LINE_COLOR);
+            contentStream.setFont(fonts.bold, Style.CONTINUATION_FONT_SIZE);
+            contentStream.moveTextTo(x + w + Style.CONTINUATION_MARGIN, y - h / 2 - Style.CONTINUATION_FONT_SIZE / 2);
+            fonts.showText(contentStream, fonts.bold, marker);
+        } else {
+            float markerY = y - h - Style.CONTINUATION_MARGIN - Style.CONTINUATION_FONT_SIZE;
+            drawCenteredText(contentStream, fonts, marker, x, markerY, w, 0,
+                    fonts.bold, Style.CONTINUATION_FONT_SIZE, Style.LINE_COLOR, false);
+        }
+        contentStream.endText();
+    }
+    
+    /**
+     * Draw connecting lines between parents and children in the subtree whose pre-order
+     * indexes are first..last-1. Walks the nodes in pre-order instead of recursing; each
+     * node first gets the line coming in from its parent, then its own T-bar. The root of
+     * a subtree form (formEnds may be null) only gets its incoming line; the form draws
+     * the rest. All connectors share one style, so every segment goes into a single path
+     * that is stroked once.
+     */
+    private void drawConnectingLines(ContentWriter contentStream, LayoutStore layouts, int first, int last, int[] formEnds,
+                                     float offsetX, float offsetY) throws Exception {
+        TreeAnalytics tree = layouts.getAnalytics();
+        if (last - first < 2) {
             return;
         }
         
-        List<Position> children = node.getPositions();
-        
-        float parentCenterX = nodeLayout.x + nodeLayout.width / 2;
-        float parentBottomY = nodeLayout.y - nodeLayout.height;
-        
         // Use thicker, more corporate-looking lines
         contentStream.setStrokingColor(Style.LINE_COLOR);
         contentStream.setLineWidth(2.0f);
-        contentStream.setLineDashPattern(new float[]{}, 0);
-        
-        if (children.size() == 1) {
-            // Single child - draw one straight line from parent to child
-            OrgChartLayout.NodeLayout childLayout = layouts.get(children.get(0));
-            if (childLayout != null) {
-                float childCenterX = childLayout.x + childLayout.width / 2;
-                float childTopY = childLayout.y;
+        contentStream.setSolidLine();
+        
+        for (int node = first; node < last; node++) {
+            float nodeX = layouts.getX(node) + offsetX;
+            float nodeY = layouts.getY(node) + offsetY;
+            
+            // Line from the parent (or the parent's T-bar) down to this node
+            int parent = tree.parentIndex(node);
+            if (parent >= first) {
+                float parentX = layouts.getX(parent) + offsetX;
+                float parentBottomY = layouts.getY(parent) + offsetY - layouts.getHeight(parent);
+                float childCenterX = nodeX + layouts.getWidth(node) / 2;
                 
-                contentStream.moveTo(parentCenterX, parentBottomY);
-                contentStream.lineTo(childCenterX, childTopY);
-                contentStream.stroke();
+                if (tree.childCount(parent) == 1) {
+                    // Single child - one straight line from parent to child
+                    contentStream.moveTo(parentX + layouts.getWidth(parent) / 2, parentBottomY);
+                } else {
+                    contentStream.moveTo(childCenterX, parentBottomY - Style.CHILDREN_ROW_MARGIN_TOP);
+                }
+                contentStream.lineTo(childCenterX, nodeY);
             }
             
-            // Recursively draw lines for this child
-            drawConnectingLines(contentStream, children.get(0), layouts);
-            
-        } else {
-            // Multiple children - draw T-shape connection
-            float verticalLineEndY = parentBottomY - Style.CHILDREN_ROW_MARGIN_TOP;
-            
-            // Vertical line from parent down
-            contentStream.moveTo(parentCenterX, parentBottomY);
-            contentStream.lineTo(parentCenterX, verticalLineEndY);
-            contentStream.stroke();
-            
-            // Horizontal line connecting all children
-            OrgChartLayout.NodeLayout firstChildLayout = layouts.get(children.get(0));
-            OrgChartLayout.NodeLayout lastChildLayout = layouts.get(children.get(children.size() - 1));
+            if (formEnds != null && formEnds[node] > 0) {
+                node = formEnds[node] - 1;
+                continue;
+            }
             
-            if (firstChildLayout != null && lastChildLayout != null) {
-                float firstChildCenterX = firstChildLayout.x + firstChildLayout.width / 2;
-                float lastChildCenterX = lastChildLayout.x + lastChildLayout.width / 2;
+            int childCount = tree.childCount(node);
+            if (childCount > 1) {
+                // Multiple children - draw T-shape connection
+                float parentCenterX = nodeX + layouts.getWidth(node) / 2;
+                float parentBottomY = nodeY - layouts.getHeight(node);
+                float verticalLineEndY = parentBottomY - Style.CHILDREN_ROW_MARGIN_TOP;
+                
+                // Vertical line from parent down
+                contentStream.moveTo(parentCenterX, parentBottomY);
+                contentStream.lineTo(parentCenterX, verticalLineEndY);
+                
+                // Horizontal line connecting all children
+                int firstChild = tree.child(node, 0);
+                int lastChild = tree.child(node, childCount - 1);
+                float firstChildCenterX = layouts.getX(firstChild) + offsetX + layouts.getWidth(firstChild) / 2;
+                float lastChildCenterX = layouts.getX(lastChild) + offsetX + layouts.getWidth(lastChild) / 2;
                 
                 contentStream.moveTo(firstChildCenterX, verticalLineEndY);
                 contentStream.lineTo(lastChildCenterX, verticalLineEndY);
-                contentStream.stroke();
-            }
-            
-            // Vertical lines down to each child
-            for (Position child : children) {
-                OrgChartLayout.NodeLayout childLayout = layouts.get(child);
-                if (childLayout != null) {
-                    float childCenterX = childLayout.x + childLayout.width / 2;
-                    float childTopY = childLayout.y;
-                    
-                    contentStream.moveTo(childCenterX, verticalLineEndY);
-                    contentStream.lineTo(childCenterX, childTopY);
-                    contentStream.stroke();
-                }
-                
-                // Recursively draw lines for this child
-                drawConnectingLines(contentStream, child, layouts);
             }
         }
+        contentStream.stroke();
     }
     
     /**
      * Draw a single node box with text
      */
-    private void drawNode(PDPageContentStream contentStream, Position position, OrgChartLayout.NodeLayout layout) throws Exception {
+    private void drawNode(ContentWriter contentStream, PageFonts fonts, Position position, float x, float y, float w, float h) throws Exception {
         // Get border color based on TitleCode
         Color borderColor = Colors.getBorderColor(position.getTitleCode());
         
-        // Draw node background with rounded corners (approximated)
-        contentStream.setNonStrokingColor(Style.NODE_BACKGROUND);
-        float x = layout.x;
-        float y = layout.y;
-        float w = layout.width;
-        float h = layout.height;
-        
-        // Draw rounded rectangle background
-        contentStream.setNonStrokingColor(Style.NODE_BACKGROUND);
-        drawRoundedRect(contentStream, x, y - h, w, h, Style.NODE_BORDER_RADIUS);
-        
-        // Draw left border stripe with rounded corners
-        contentStream.setNonStrokingColor(borderColor);
-        drawLeftBorderStripe(contentStream, x, y - h, Style.NODE_BORDER_LEFT_WIDTH, h, Style.NODE_BORDER_RADIUS);
+        // Rounded background and left border stripe come from the shared template of this style
+        contentStream.drawForm(boxForm(fonts.document, borderColor, w, h), x, y - h);
         
         // Draw position name (centered, possibly multi-line)  
         String positionName = position.getPositionName() != null ? position.getPositionName() : "";
@@ -543,105 +965,291 @@ public class OrgChartRenderer {
         // Explicitly parse and convert to int for proper integer comparison
         Integer normValue = position.getNorm();
         int norm = (normValue != null) ? normValue.intValue() : 0;
-        Core.getLogger("OrgChartRenderer").info("Rendering node '" + positionName + "'. Norm value from position: " + normValue + ", Converted to int: " + norm + ", Will display: " + (norm > 0));
+        // Per node, so only when tracing: on large charts the lines cost more than the drawing
+        EngineLog log = OrgChartEngine.log("OrgChartRenderer");
+        if (log.isTraceEnabled()) {
+            log.trace("Rendering node '" + positionName + "'. Norm value from position: " + normValue + ", Converted to int: " + norm + ", Will display: " + (norm > 0));
+        }
+        
+        // Name and norm lines share one text object
+        contentStream.beginText();
         if (norm > 0) {
             // Reserve bottom area for norm (padding + margin + font height)
             float reservedBottom = Style.NODE_PADDING + Style.NODE_NORM_MARGIN_TOP + Style.NODE_NORM_FONT_SIZE + Style.NODE_PADDING;
             float textAreaHeight = Math.max(h - reservedBottom, Style.NODE_TEXT_FONT_SIZE * 1.3f);
             // Center name inside the top text area (from y down to y - textAreaHeight)
-            drawCenteredText(contentStream, positionName, x, y, w, textAreaHeight, getRegularFont(), Style.NODE_TEXT_FONT_SIZE, Color.BLACK, true);
+            drawCenteredText(contentStream, fonts, positionName, x, y, w, textAreaHeight, fonts.regular, Style.NODE_TEXT_FONT_SIZE, Color.BLACK, true);
 
             // Draw norm (centered, at bottom) with margin above
             String normText = String.valueOf(norm);
             float normY = y - h + Style.NODE_PADDING + Style.NODE_NORM_MARGIN_TOP + Style.NODE_NORM_FONT_SIZE;
-            drawCenteredText(contentStream, normText, x, normY, w, 0, getRegularFont(), Style.NODE_NORM_FONT_SIZE, Color.BLACK, false);
+            drawCenteredText(contentStream, fonts, normText, x, normY, w, 0, fonts.regular, Style.NODE_NORM_FONT_SIZE, Color.BLACK, false);
         } else {
             // No norm - center position name vertically in the whole box
             // The 'y' coordinate is the top of the node, and 'h' is its full height
-            drawCenteredText(contentStream, positionName, x, y, w, h, getRegularFont(), Style.NODE_TEXT_FONT_SIZE, Color.BLACK, true);
+            drawCenteredText(contentStream, fonts, positionName, x, y, w, h, fonts.regular, Style.NODE_TEXT_FONT_SIZE, Color.BLACK, true);
+        }
+        
+        // Badge below a node whose subtree a scoped render left out: "+count · norm"
+        if (position.getHiddenCount() > 0) {
+            String badge = "+" + position.getHiddenCount()
+                    + (position.getHiddenNorm() > 0 ? " \u00B7 " + position.getHiddenNorm() : "");
+            float badgeY = y - h - Style.CONTINUATION_MARGIN - Style.CONTINUATION_FONT_SIZE;
+            drawCenteredText(contentStream, fonts, badge, x, badgeY, w, 0,
+                    fonts.bold, Style.CONTINUATION_FONT_SIZE, Style.LINE_COLOR, false);
+        }
+        contentStream.endText();
+    }
+    
+    /**
+     * The node box (rounded background plus left border stripe) for one border color and
+     * size, drawn once per render as a form XObject into the document of the page that
+     * needs it first. Both language pages share it.
+     */
+    private PDFormXObject boxForm(PDDocument document, Color borderColor, float w, float h) throws Exception {
+        return boxForm(document, new BoxStyle(borderColor, w, h));
+    }
+    
+    private synchronized PDFormXObject boxForm(PDDocument document, BoxStyle style) throws Exception {
+        Color borderColor = style.borderColor;
+        float w = style.width;
+        float h = style.height;
+        PDFormXObject form = boxForms.get(style);
+        if (form == null) {
+            // An appearance stream is a plain form XObject that PDPageContentStream can write into
+            PDAppearanceStream box = new PDAppearanceStream(document);
+            // Pad the bounding box by a point so it does not clip anti-aliased edges
+            box.setBBox(new PDRectangle(-1, -1, w + 2, h + 2));
+            try (ContentWriter boxContent = ContentWriter.forForm(document, box, streams)) {
+                boxContent.setNonStrokingColor(Style.NODE_BACKGROUND);
+                drawRoundedRect(boxContent, 0, 0, w, h, Style.NODE_BORDER_RADIUS);
+                boxContent.setNonStrokingColor(borderColor);
+                drawLeftBorderStripe(boxContent, 0, 0, Style.NODE_BORDER_LEFT_WIDTH, h, Style.NODE_BORDER_RADIUS);
+            }
+            form = box;
+            boxForms.put(style, form);
+        }
+        return form;
+    }
+    
+    /**
+     * For each child of the root that is drawn as a subtree form, the index after its
+     * subtree (0 elsewhere); null if there are none. Continuation markers depend on the
+     * page plan, so they are drawn over the forms, not into them.
+     */
+    private static int[] subtreeFormEnds(LayoutStore layouts) {
+        TreeAnalytics tree = layouts.getAnalytics();
+        if (layouts.size() < 2) {
+            return null;
+        }
+        int[] formEnds = null;
+        for (int k = 0; k < tree.childCount(0); k++) {
+            int child = tree.child(0, k);
+            int end = child + tree.nodeCount(child);
+            if (SubtreeCache.enabled(end - child)) {
+                if (formEnds == null) {
+                    formEnds = new int[layouts.size()];
+                }
+                formEnds[child] = end;
+            }
+        }
+        return formEnds;
+    }
+    
+    /**
+     * The subtree at the index (its boxes, texts, badges and the connectors inside it) as
+     * a form XObject with its origin at the top left of the root's box. Each subtree is
+     * drawn once per document, and one seen by an earlier render is rebuilt from the
+     * SubtreeCache without being drawn again. The form uses the document's shared fonts.
+     */
+    private PDFormXObject subtreeForm(PageFonts fonts, LayoutStore layouts, int root, String key) throws Exception {
+        synchronized (subtreeForms) {
+            PDFormXObject form = subtreeForms.get(key);
+            if (form != null) {
+                return form;
+            }
+        }
+        
+        SubtreeCache.Entry entry = SubtreeCache.get(key);
+        PDFormXObject form;
+        if (entry != null) {
+            form = new PDFormXObject(fonts.document);
+            try (OutputStream out = form.getCOSObject().createRawOutputStream()) {
+                out.write(entry.content);
+            }
+            form.getCOSObject().setItem(COSName.FILTER, COSName.FLATE_DECODE);
+            form.setBBox(new PDRectangle(entry.bbox[0], entry.bbox[1],
+                    entry.bbox[2] - entry.bbox[0], entry.bbox[3] - entry.bbox[1]));
+            PDResources resources = new PDResources();
+            for (Map.Entry<COSName, Boolean> font : entry.fonts.entrySet()) {
+                resources.put(font.getKey(), font.getValue() ? fontBold : fontRegular);
+            }
+            for (Map.Entry<COSName, Object> box : entry.forms.entrySet()) {
+                resources.put(box.getKey(), boxForm(fonts.document, (BoxStyle) box.getValue()));
+            }
+            form.setResources(resources);
+        } else {
+            PDAppearanceStream drawn = new PDAppearanceStream(fonts.document);
+            entry = drawSubtreeForm(drawn, fonts, layouts, root);
+            form = drawn;
+            SubtreeCache.put(key, entry);
+        }
+        fonts.addShown(entry.regularShown, entry.boldShown);
+        
+        synchronized (subtreeForms) {
+            PDFormXObject other = subtreeForms.putIfAbsent(key, form);
+            return other != null ? other : form;
+        }
+    }
+    
+    /**
+     * Draw the subtree into the form and describe it for the SubtreeCache
+     */
+    private SubtreeCache.Entry drawSubtreeForm(PDAppearanceStream form, PageFonts fonts, LayoutStore layouts, int root) throws Exception {
+        int end = root + layouts.getAnalytics().nodeCount(root);
+        float originX = layouts.getX(root);
+        float originY = layouts.getY(root);
+        
+        // Room for the badges below the boxes, which may be wider than a box
+        float[] bbox = {-Style.NODE_WIDTH / 2, 0, 0, 1};
+        for (int i = root; i < end; i++) {
+            bbox[0] = Math.min(bbox[0], layouts.getX(i) - originX - Style.NODE_WIDTH / 2);
+            bbox[1] = Math.min(bbox[1], layouts.getY(i) - originY - layouts.getHeight(i)
+                    - Style.CONTINUATION_MARGIN - Style.CONTINUATION_FONT_SIZE - Style.NODE_PADDING);
+            bbox[2] = Math.max(bbox[2], layouts.getX(i) - originX + layouts.getWidth(i) + Style.NODE_WIDTH / 2);
+        }
+        form.setBBox(new PDRectangle(bbox[0], bbox[1], bbox[2] - bbox[0], bbox[3] - bbox[1]));
+        form.setResources(new PDResources());
+        
+        // Fonts of their own record exactly the characters and glyphs of this subtree
+        PageFonts formFonts = new PageFonts(fonts.document, fonts.regular, fonts.bold, true);
+        try (ContentWriter content = ContentWriter.forForm(fonts.document, form, streams)) {
+            drawConnectingLines(content, layouts, root, end, null, -originX, -originY);
+            for (int i = root; i < end; i++) {
+                drawNode(content, formFonts, layouts.getPosition(i), layouts.getX(i) - originX,
+                        layouts.getY(i) - originY, layouts.getWidth(i), layouts.getHeight(i));
+            }
+        }
+        
+        // Point the form at the shared fonts (see PageFonts.moveTo) and remember its resources by name
+        Map<COSName, Boolean> fontNames = new LinkedHashMap<>();
+        COSDictionary fontResources = form.getResources().getCOSObject().getCOSDictionary(COSName.FONT);
+        if (fontResources != null) {
+            for (COSName name : fontResources.keySet()) {
+                boolean bold = fontResources.getDictionaryObject(name) == fonts.bold.getCOSObject();
+                fontNames.put(name, bold);
+                fontResources.setItem(name, bold ? fontBold : fontRegular);
+            }
+        }
+        Map<COSName, Object> formNames = new LinkedHashMap<>();
+        COSDictionary xObjects = form.getResources().getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        if (xObjects != null) {
+            synchronized (this) {
+                for (COSName name : xObjects.keySet()) {
+                    COSBase xObject = xObjects.getDictionaryObject(name);
+                    for (Map.Entry<BoxStyle, PDFormXObject> box : boxForms.entrySet()) {
+                        if (box.getValue().getCOSObject() == xObject) {
+                            formNames.put(name, box.getKey());
+                        }
+                    }
+                }
+            }
+        }
+        
+        byte[] content;
+        try (InputStream in = form.getCOSObject().createRawInputStream()) {
+            content = in.readAllBytes();
         }
+        return new SubtreeCache.Entry(content, bbox, fontNames, formNames,
+                formFonts.regularShown, formFonts.boldShown);
     }
     
     /**
-     * Draw centered text (with word wrapping for multi-line)
+     * The footer image at the URL as an XObject, resolved (decoded, hashed and embedded in
+     * the given document) once per render; null if it cannot be, which is logged once.
+     * Pages showing the same image share one XObject, and the encoded image is reused
+     * across renders through the ImageCache.
      */
-    private void drawCenteredText(PDPageContentStream contentStream, String text, float x, float y, float w, float h, PDFont font, float fontSize, Color color, boolean multiline) throws Exception {
+    private synchronized PDImageXObject image(PDDocument document, String imageUrl) {
+        if (imagesByUrl.containsKey(imageUrl)) {
+            return imagesByUrl.get(imageUrl);
+        }
+        PDImageXObject image = null;
+        try {
+            if (imageUrl == null || imageUrl.trim().isEmpty()) {
+                throw new Exception("Image URL (Base64) is empty.");
+            }
+            byte[] imageBytes = OrgChartEngine.getInstance().getResources().loadImage(imageUrl);
+            String hash = ImageCache.hash(imageBytes);
+            image = images.get(hash);
+            if (image == null) {
+                image = ImageCache.embed(document, hash, imageBytes);
+                images.put(hash, image);
+            }
+        } catch (Exception e) {
+            OrgChartEngine.log("OrgChartRenderer").warn("Failed to decode or draw Base64 image: " + e.getMessage());
+        }
+        imagesByUrl.put(imageUrl, image);
+        return image;
+    }
+    
+    /**
+     * Draw centered text (with word wrapping for multi-line) into the open text object
+     */
+    private void drawCenteredText(ContentWriter contentStream, PageFonts fonts, String text, float x, float y, float w, float h, PDFont font, float fontSize, Color color, boolean multiline) throws Exception {
         contentStream.setNonStrokingColor(color);
         
+        GlyphWidths glyphWidths = GlyphWidths.of(font);
+        
         if (multiline) {
             // Simple word wrapping
-            List<String> lines = wrapText(text, font, fontSize, w - Style.NODE_PADDING * 2);
+            GlyphWidths.Wrapped wrapped = wrapText(text, font, fontSize, w - Style.NODE_PADDING * 2);
+            List<String> lines = wrapped.lines;
             float lineHeight = fontSize * Style.NODE_TEXT_LINE_HEIGHT;
             // Max number of lines that can fit in the given height
             int maxLines = Math.max(1, (int) Math.floor(h / lineHeight));
             if (lines.size() > maxLines) {
-                lines = new ArrayList<>(lines.subList(0, maxLines));
+                lines = lines.subList(0, maxLines);
             }
             float totalHeight = lines.size() * lineHeight;
             float startY = y - (h - totalHeight) / 2 - fontSize;
             
             for (int i = 0; i < lines.size(); i++) {
                 String line = lines.get(i);
-                float textWidth = font.getStringWidth(line) / 1000 * fontSize;
+                float textWidth = wrapped.widths[i] / 1000 * fontSize;
                 float textX = x + (w - textWidth) / 2;
                 float textY = startY - i * lineHeight;
                 
-                contentStream.beginText();
                 contentStream.setFont(font, fontSize);
-                contentStream.newLineAtOffset(textX, textY);
-                contentStream.showText(line);
-                contentStream.endText();
+                contentStream.moveTextTo(textX, textY);
+                fonts.showText(contentStream, font, line);
             }
         } else {
-            float textWidth = font.getStringWidth(text) / 1000 * fontSize;
+            float textWidth = glyphWidths.measure(font, text) / 1000 * fontSize;
             float textX = x + (w - textWidth) / 2;
             
-            contentStream.beginText();
             contentStream.setFont(font, fontSize);
-            contentStream.newLineAtOffset(textX, y);
-            contentStream.showText(text);
-            contentStream.endText();
+            contentStream.moveTextTo(textX, y);
+            fonts.showText(contentStream, font, text);
         }
     }
     
     /**
      * Wrap text to fit within maxWidth - NO HYPHENATION
      */
-    private List<String> wrapText(String text, PDFont font, float fontSize, float maxWidth) throws Exception {
-        List<String> lines = new ArrayList<>();
-        
+    private GlyphWidths.Wrapped wrapText(String text, PDFont font, float fontSize, float maxWidth) throws Exception {
         if (text == null || text.isEmpty()) {
-            return lines;
-        }
-        
-        // Split by spaces only - no hyphenation
-        String[] words = text.split("\\s+");
-        StringBuilder currentLine = new StringBuilder();
-        
-        for (String word : words) {
-            String testLine = currentLine.length() == 0 ? word : currentLine + " " + word;
-            float testWidth = font.getStringWidth(testLine) / 1000 * fontSize;
-            
-            // If word is too long for a single line, just put it anyway (no hyphenation)
-            if (testWidth > maxWidth && currentLine.length() > 0) {
-                lines.add(currentLine.toString());
-                currentLine = new StringBuilder(word);
-            } else {
-                currentLine = new StringBuilder(testLine);
-            }
-        }
-        
-        if (currentLine.length() > 0) {
-            lines.add(currentLine.toString());
+            return new GlyphWidths.Wrapped(new ArrayList<>(), new float[0]);
         }
         
-        return lines;
+        // Measured from cached glyph advances; repeated titles come straight from the wrap cache
+        return GlyphWidths.of(font).wrap(font, text, fontSize, maxWidth);
     }
     
     /**
      * Draw footer with text and image - both at bottom, same baseline
      */
-    private void drawFooter(PDPageContentStream contentStream, String preparedBy, String docDate, String lastUpdate, String imageUrl, float pageWidth, float pageHeight) throws Exception {
+    private void drawFooter(ContentWriter contentStream, PageFonts fonts, String preparedBy, String docDate, String lastUpdate, String imageUrl, float pageWidth, float pageHeight) throws Exception {
         // --- REFACTORED FOOTER LOGIC ---
 
         // 1. Prepare footer content and calculate required heights
@@ -676,51 +1284,67 @@ public class OrgChartRenderer {
         // 3. Position the content block below the border
         float contentBottomY = borderY - 15f - contentHeight;
 
-        // 4. Draw the footer image (right side) from Base64 string
-        try {
-            if (imageUrl != null && !imageUrl.trim().isEmpty()) {
-                String base64Image = imageUrl;
-                // Remove data URI prefix if present
-                if (base64Image.contains(",")) {
-                    base64Image = base64Image.substring(base64Image.indexOf(",") + 1);
-                }
-                
-                byte[] imageBytes = Base64.getDecoder().decode(base64Image);
-                PDImageXObject image = PDImageXObject.createFromByteArray(document, imageBytes, "footer-image");
-                
+        // 4. Draw the footer image (right side) from Base64 string, or a placeholder without one
+        PDImageXObject image = image(fonts.document, imageUrl);
+        boolean imageDrawn = false;
+        if (image != null) {
+            try {
                 float calculatedImageWidth = image.getWidth() * (imageHeight / image.getHeight());
                 float imageX = pageWidth - Style.PAGE_PADDING - calculatedImageWidth;
                 
                 // Align image bottom to the content area bottom
                 contentStream.drawImage(image, imageX, contentBottomY, calculatedImageWidth, imageHeight);
-            } else {
-                 throw new Exception("Image URL (Base64) is empty.");
+                imageDrawn = true;
+            } catch (IOException e) {
+                OrgChartEngine.log("OrgChartRenderer").warn("Failed to draw footer image: " + e.getMessage());
             }
-        } catch (Exception e) {
-            Core.getLogger("OrgChartRenderer").warn("Failed to decode or draw Base64 image: " + e.getMessage());
+        }
+        if (!imageDrawn) {
             contentStream.setNonStrokingColor(Color.GRAY);
             contentStream.beginText();
-            contentStream.setFont(fontRegular, 12);
-            contentStream.newLineAtOffset(pageWidth - 150, contentBottomY + 20);
-            contentStream.showText("[Logo]");
+            contentStream.setFont(fonts.regular, 12);
+            contentStream.moveTextTo(pageWidth - 150, contentBottomY + 20);
+            fonts.showText(contentStream, fonts.regular, "[Logo]");
             contentStream.endText();
         }
         
         // 5. Draw the footer text (left side), stacking upwards from the bottom
         contentStream.setNonStrokingColor(Style.FOOTER_TEXT_COLOR);
         float textY = contentBottomY + Style.FOOTER_TEXT_FONT_SIZE;
-        // Draw lines in reverse order to stack them from the bottom up
+        // Draw lines in reverse order to stack them from the bottom up, in one text object
+        contentStream.beginText();
         for (int i = footerLines.length - 1; i >= 0; i--) {
             String line = footerLines[i];
             if (!line.isEmpty()) {
-                contentStream.beginText();
-                contentStream.setFont(fontRegular, Style.FOOTER_TEXT_FONT_SIZE);
-                contentStream.newLineAtOffset(Style.PAGE_PADDING, textY);
-                contentStream.showText(line);
-                contentStream.endText();
+                contentStream.setFont(fonts.regular, Style.FOOTER_TEXT_FONT_SIZE);
+                contentStream.moveTextTo(Style.PAGE_PADDING, textY);
+                fonts.showText(contentStream, fonts.regular, line);
                 textY += Style.FOOTER_TEXT_FONT_SIZE * 1.4f;
             }
         }
+        contentStream.endText();
     }
-}
 
+    /**
+     * Counts the bytes of the saved PDF
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package myfirstmodule.pdf;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of an organization to render: the subtree at a HierarchyCode, down to a
+ * maximum number of levels below it.
+ *
+ * Positions below the window are not kept. Their count and norm are added to the
+ * window's last-level position they belong to (Position.getHiddenCount/getHiddenNorm),
+ * which the renderer shows as a badge. While parsing, filter decides per position from
+ * its HierarchyCode alone, so nothing outside the window is ever linked or laid out: a
+ * position below the window is added to one counter per last-level code, its code cut
+ * off at the window's last level. Memory therefore grows with the window, not with the
+ * subtree hidden below it. As the HierarchyCode alone decides, the badge also counts
+ * rows that the unscoped chart would merge (a repeated PositionID) or leave out (a
+ * missing parent below the window).
+ */
+class OrgChartScope {
+
+    private final String rootCode;
+    private final int rootDepth;
+    private final int maxDepth;
+
+    // Count and norm of the positions below the window while parsing, by the code of the
+    // last-level window position they belong to
+    private final Map<String, int[]> hidden = new HashMap<>();
+    private String lastCode;
+    private int[] lastCounter;
+
+    private OrgChartScope(String rootCode, int maxDepth) {
+        this.rootCode = rootCode;
+        this.rootDepth = rootCode != null ? slashes(rootCode) - 1 : 0;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Scope for the subtree at the code (whole organization if empty) with at most
+     * maxDepth levels below its root (no limit if null or negative); null if that is
+     * the whole organization
+     */
+    static OrgChartScope of(String rootHierarchyCode, Integer maxDepth) {
+        String code = normalize(rootHierarchyCode);
+        int depth = maxDepth != null && maxDepth >= 0 ? maxDepth : Integer.MAX_VALUE;
+        if (code == null && depth == Integer.MAX_VALUE) {
+            return null;
+        }
+        return new OrgChartScope(code, depth);
+    }
+
+    /**
+     * "1/2" and "/1/2" become "/1/2/"; null for an empty code. Also used for render cache
+     * keys, so codes naming the same subtree share an entry.
+     */
+    static String normalize(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            return null;
+        }
+        String trimmed = code.trim();
+        if (!trimmed.startsWith("/")) {
+            trimmed = "/" + trimmed;
+        }
+        if (!trimmed.endsWith("/")) {
+            trimmed = trimmed + "/";
+        }
+        return trimmed;
+    }
+
+    String getRootCode() {
+        return rootCode;
+    }
+
+    /**
+     * Whether positions can be filtered while parsing; without a root code the depth of
+     * the root is only known once the tree is built
+     */
+    boolean filtersWhileParsing() {
+        return rootCode != null;
+    }
+
+    /**
+     * Keep the position if it lies in the window; positions below it are counted for
+     * summarize, positions outside the subtree are dropped
+     */
+    boolean filter(Position position) {
+        String code = position.getHierarchyCode();
+        if (code == null || !code.startsWith(rootCode)) {
+            return false;
+        }
+        int depth = slashes(code) - 1 - rootDepth;
+        if (depth <= maxDepth) {
+            return true;
+        }
+        if (position.getPositionID() == null) {
+            return false;
+        }
+
+        // The code up to the window's last level; rows of one department usually follow
+        // each other, so the previous counter is tried first
+        int end = rootCode.length() - 1;
+        for (int level = 0; level < maxDepth; level++) {
+            end = code.indexOf('/', end + 1);
+        }
+        int[] counter;
+        if (lastCode != null && lastCode.length() == end + 1 && code.startsWith(lastCode)) {
+            counter = lastCounter;
+        } else {
+            lastCode = code.substring(0, end + 1);
+            counter = hidden.computeIfAbsent(lastCode, k -> new int[2]);
+            lastCounter = counter;
+        }
+        Integer norm = position.getNorm();
+        counter[0]++;
+        counter[1] += norm != null ? norm : 0;
+        return false;
+    }
+
+    /**
+     * Add the count and norm of the positions below the window to the window positions
+     * they belong to; counts whose window position is missing are dropped
+     */
+    void summarize(HierarchyIndex index) {
+        for (Map.Entry<String, int[]> entry : hidden.entrySet()) {
+            Position target = index.get(entry.getKey());
+            if (target != null) {
+                int[] counter = entry.getValue();
+                target.setHiddenCount(target.getHiddenCount() + counter[0]);
+                target.setHiddenNorm(target.getHiddenNorm() + counter[1]);
+            }
+        }
+        hidden.clear();
+        lastCode = null;
+        lastCounter = null;
+    }
+
+    /**
+     * Copy the window out of a built tree; null if the root code is not in the tree.
+     * The tree is left as it is; one that was not built by OrgChartParser is indexed by
+     * its HierarchyCodes first (see HierarchyIndex.of).
+     */
+    Position apply(Position tree) {
+        Position root = tree;
+        if (rootCode != null) {
+            root = HierarchyIndex.of(tree).get(rootCode);
+            if (root == null) {
+                return null;
+            }
+        }
+
+        Position rootCopy = copy(root);
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{root, rootCopy, 0});
+        while (!stack.isEmpty()) {
+            Object[] entry = stack.pop();
+            Position node = (Position) entry[0];
+            Position nodeCopy = (Position) entry[1];
+            int depth = (Integer) entry[2];
+            List<Position> children = node.getPositions();
+            if (depth == maxDepth) {
+                for (Position child : children) {
+                    summarize(child, nodeCopy);
+                }
+                continue;
+            }
+            for (Position child : children) {
+                Position childCopy = copy(child);
+                nodeCopy.getPositions().add(childCopy);
+                stack.push(new Object[]{child, childCopy, depth + 1});
+            }
+        }
+        return rootCopy;
+    }
+
+    /**
+     * Add the subtree's positions, and what they already summarize, to the target's badge
+     */
+    private static void summarize(Position subtree, Position target) {
+        int count = 0;
+        int norm = 0;
+        Deque<Position> stack = new ArrayDeque<>();
+        stack.push(subtree);
+        while (!stack.isEmpty()) {
+            Position node = stack.pop();
+            count += 1 + node.getHiddenCount();
+            norm += (node.getNorm() != null ? node.getNorm() : 0) + node.getHiddenNorm();
+            for (Position child : node.getPositions()) {
+                stack.push(child);
+            }
+        }
+        target.setHiddenCount(target.getHiddenCount() + count);
+        target.setHiddenNorm(target.getHiddenNorm() + norm);
+    }
+
+    /**
+     * Copy a position; an indexed one shares its trie node with the copy, so no code
+     * strings are built
+     */
+    private static Position copy(Position original) {
+        Position copy = new Position();
+        copy.setPositionID(original.getPositionID());
+        copy.setPositionName(original.getPositionName());
+        HierarchyIndex.Node node = original.getHierarchyNode();
+        if (node != null) {
+            copy.setHierarchyNode(node);
+        } else {
+            copy.setHierarchyCode(original.getHierarchyCode());
+        }
+        if (node != null && original.isParentCodeFromNode()) {
+            copy.setParentHierarchyCodeFromNode();
+        } else {
+            copy.setParentHierarchyCode(original.getParentHierarchyCode());
+        }
+        copy.setNorm(original.getNorm());
+        copy.setTitleCode(original.getTitleCode());
+        copy.setHiddenCount(original.getHiddenCount());
+        copy.setHiddenNorm(original.getHiddenNorm());
+        return copy;
+    }
+
+    private static int slashes(String code) {
+        int count = 0;
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '/') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,164 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * How rendered PDFs are compressed, chosen for the JVM with orgchart.pdf.compression.
+ *
+ * Object streams pack the small indirect objects (pages, fonts, resources) into
+ * compressed streams indexed by an xref stream; the Flate level applies to the page and
+ * form content streams, which the renderer deflates itself (see Streams). Font subsets,
+ * images and the object streams keep PDFBox's level, whose system property belongs to
+ * everyone using PDFBox in the JVM and is left alone. orgchart.pdf.flateLevel (0 to 9)
+ * overrides the level of the preset.
+ *
+ * configure() reads the properties once, when the engine is installed or the standalone
+ * engine is created; later changes to them take effect the next time an engine is installed.
+ */
+enum PdfCompression {
+
+    /** Object streams of up to 500 objects, Flate level 9: smallest files, slowest save */
+    SIZE(new CompressParameters(500), 9),
+    /** PDFBox's defaults: object streams of up to 100 objects, Flate level 6 */
+    BALANCED(CompressParameters.DEFAULT_COMPRESSION, -1),
+    /** Every object on its own in a classic xref table, Flate level 1: fastest save */
+    SPEED(CompressParameters.NO_COMPRESSION, 1);
+
+    private static volatile PdfCompression configured;
+    private static volatile int configuredLevel = -1;
+
+    private final CompressParameters parameters;
+    private final int flateLevel;
+
+    PdfCompression(CompressParameters parameters, int flateLevel) {
+        this.parameters = parameters;
+        this.flateLevel = flateLevel;
+    }
+
+    /**
+     * Opens the content streams of one render at the configured Flate level, and adds up
+     * their size before and after deflating. PDFBox deflated them before these presets
+     * too, so the difference is not a saving against earlier output; compare the saved
+     * sizes of two presets for that (the benchmark's --compression).
+     */
+    static class Streams {
+        private final int level;
+        private final AtomicLong rawBytes = new AtomicLong();
+        private final AtomicLong deflatedBytes = new AtomicLong();
+
+        private Streams(int level) {
+            this.level = level;
+        }
+
+        /**
+         * Output for the stream's content, Flate-compressed as it is written
+         */
+        OutputStream open(COSStream stream) throws IOException {
+            OutputStream raw = stream.createRawOutputStream();
+            stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+            return new DeflaterOutputStream(raw, new Deflater(level), 8192) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        rawBytes.addAndGet(def.getBytesRead());
+                        deflatedBytes.addAndGet(def.getBytesWritten());
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Content written to the streams opened so far, before deflating
+         */
+        long rawBytes() {
+            return rawBytes.get();
+        }
+
+        /**
+         * Deflated size of the streams opened so far
+         */
+        long deflatedBytes() {
+            return deflatedBytes.get();
+        }
+    }
+
+    /**
+     * Pick the preset from orgchart.pdf.compression (BALANCED if unset; an unknown name is
+     * logged and BALANCED used) and its Flate level. Called when an engine is configured.
+     */
+    static synchronized PdfCompression configure() {
+        String name = System.getProperty("orgchart.pdf.compression", "").trim();
+        PdfCompression preset = null;
+        for (PdfCompression candidate : values()) {
+            if (candidate.name().equalsIgnoreCase(name)) {
+                preset = candidate;
+            }
+        }
+        if (preset == null) {
+            if (!name.isEmpty()) {
+                OrgChartEngine.log("PdfCompression").warn("Unknown orgchart.pdf.compression '" + name
+                        + "'; expected SIZE, BALANCED or SPEED, using BALANCED");
+            }
+            preset = BALANCED;
+        }
+        configuredLevel = preset.flateLevel();
+        configured = preset;
+        return preset;
+    }
+
+    /**
+     * The configured preset; configures it now if no engine has yet
+     */
+    static PdfCompression current() {
+        PdfCompression preset = configured;
+        return preset != null ? preset : configure();
+    }
+
+    /**
+     * Flate level of the preset or orgchart.pdf.flateLevel; -1 for zlib's default
+     */
+    private int flateLevel() {
+        Integer level = Integer.getInteger("orgchart.pdf.flateLevel");
+        return level != null ? Math.max(-1, Math.min(9, level)) : flateLevel;
+    }
+
+    /**
+     * Save parameters of the preset
+     */
+    CompressParameters parameters() {
+        return parameters;
+    }
+
+    /**
+     * Streams for one render at the configured level
+     */
+    Streams streams() {
+        return new Streams(configuredLevel);
+    }
+
+    /**
+     * "balanced/6"-style summary of the configured settings, part of the render cache keys
+     */
+    String describe() {
+        int level = configuredLevel;
+        return name().toLowerCase(Locale.ROOT) + "/" + (level == -1 ? 6 : level);
+    }
+}
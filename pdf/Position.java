@@ -14,6 +14,10 @@ public class Position {
     private Integer norm; // Default will be null, which is what we want
     private String titleCode;
     private List<Position> positions;
+    private HierarchyIndex.Node hierarchyNode; // Set once indexed; code strings are then rebuilt from the trie
+    private boolean parentCodeFromNode;
+    private int hiddenCount; // Positions below a scoped render's last level, summarized on this node
+    private int hiddenNorm;
 
     public Position() {
         this.positions = new ArrayList<>();
@@ -37,6 +41,9 @@ public class Position {
     }
 
     public String getHierarchyCode() {
+        if (hierarchyCode == null && hierarchyNode != null) {
+            return hierarchyNode.getCode();
+        }
         return hierarchyCode;
     }
 
@@ -45,11 +52,35 @@ public class Position {
     }
 
     public String getParentHierarchyCode() {
+        if (parentCodeFromNode && hierarchyNode != null) {
+            return hierarchyNode.getParent().getCode();
+        }
         return parentHierarchyCode;
     }
 
     public void setParentHierarchyCode(String parentHierarchyCode) {
         this.parentHierarchyCode = parentHierarchyCode;
+        this.parentCodeFromNode = false;
+    }
+
+    /**
+     * Drop the stored parent code; it equals the code of the parent trie node
+     */
+    void setParentHierarchyCodeFromNode() {
+        this.parentHierarchyCode = null;
+        this.parentCodeFromNode = true;
+    }
+
+    boolean isParentCodeFromNode() {
+        return parentCodeFromNode;
+    }
+
+    HierarchyIndex.Node getHierarchyNode() {
+        return hierarchyNode;
+    }
+
+    void setHierarchyNode(HierarchyIndex.Node hierarchyNode) {
+        this.hierarchyNode = hierarchyNode;
     }
 
     public Integer getNorm() {
@@ -68,6 +99,28 @@ public class Position {
         this.titleCode = titleCode;
     }
 
+    /**
+     * Number of positions below this one that a scoped render leaves out
+     */
+    public int getHiddenCount() {
+        return hiddenCount;
+    }
+
+    public void setHiddenCount(int hiddenCount) {
+        this.hiddenCount = hiddenCount;
+    }
+
+    /**
+     * Sum of Norm over the positions counted by getHiddenCount
+     */
+    public int getHiddenNorm() {
+        return hiddenNorm;
+    }
+
+    public void setHiddenNorm(int hiddenNorm) {
+        this.hiddenNorm = hiddenNorm;
+    }
+
     public List<Position> getPositions() {
         return positions != null ? positions : new ArrayList<>();
     }
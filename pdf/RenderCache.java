@@ -0,0 +1,764 @@
+package myfirstmodule.pdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of finished PDFs, keyed by a digest of everything that goes into a render.
+ *
+ * Callers build the key from the org JSON and every label, logo and option with key(),
+ * before parsing anything, and only render on a miss. An export read from a stream is
+ * hashed while it is parsed or sent to a worker instead (readingJson), so it is only
+ * read once. The memory tier is an LRU of at most orgchart.renderCache.maxBytes
+ * (default 64 MB) and holds no PDF above
+ * orgchart.renderCache.maxEntryBytes (default an eighth of that), so a large render does
+ * not keep a second copy of its output in memory while it is written. If
+ * orgchart.renderCache.dir is set (a path, or "temp" for the engine's temp directory)
+ * PDFs are also kept on disk, up to orgchart.renderCache.diskMaxBytes (default 512 MB),
+ * and survive restarts; a render's output is written there as it is produced, so large
+ * charts are cached on disk whatever the entry limit.
+ *
+ * Keys include VERSION, which must change whenever the output of the same inputs
+ * changes (style, fonts, layout), so stale disk entries are never served, and the
+ * compression settings.
+ */
+public class RenderCache {
+
+    /**
+     * Version of the rendered output; part of every key
+     */
+    static final String VERSION = "orgchart-pdf-4";
+
+    private static final long STALE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile RenderCache instance;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final File directory;
+    private final long diskMaxBytes;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Counters since the cache was created, and its current size
+     */
+    public static class Stats {
+        private final long memoryHits;
+        private final long diskHits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+
+        Stats(long memoryHits, long diskHits, long misses, long evictions, int entries, long bytes) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getMemoryHits() {
+            return memoryHits;
+        }
+
+        public long getDiskHits() {
+            return diskHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * PDFs dropped from memory to stay within maxBytes
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * PDFs currently held in memory
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Bytes currently held in memory
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            long lookups = memoryHits + diskHits + misses;
+            return "hits " + memoryHits + " memory + " + diskHits + " disk, misses " + misses
+                    + (lookups > 0 ? " (" + (100 * (memoryHits + diskHits) / lookups) + "% hit rate)" : "")
+                    + ", " + entries + " PDFs / " + bytes + " bytes in memory, " + evictions + " evicted";
+        }
+    }
+
+    /**
+     * Digest of the inputs of one render. Add the same values in the same order for the
+     * same render; JSON is normalized by dropping whitespace between tokens, so a
+     * re-serialized export hits the same entry.
+     */
+    public static class Key {
+        private final MessageDigest digest;
+        private final byte[] length = new byte[4];
+
+        private Key() {
+            digest = sha256();
+            text(VERSION);
+            text(PdfCompression.current().describe());
+        }
+
+        /**
+         * Add a label, logo or option; null and "" give different keys
+         */
+        public Key text(String value) {
+            if (value == null) {
+                return separator(-1);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            separator(bytes.length);
+            digest.update(bytes);
+            return this;
+        }
+
+        /**
+         * Add an option of any type by its string form
+         */
+        public Key option(Object value) {
+            return text(value != null ? value.toString() : null);
+        }
+
+        /**
+         * Add org JSON given as a string
+         */
+        public Key json(String json) {
+            if (json == null) {
+                return separator(-1);
+            }
+            return json(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Add org JSON given as UTF-8 bytes; the same key as for the decoded string
+         */
+        public Key json(byte[] json) {
+            MessageDigest value = sha256();
+            new JsonNormalizer(value).update(json, 0, json.length);
+            return jsonDigest(value.digest());
+        }
+
+        /**
+         * Add org JSON that was read through readingJson(); the same key as for the same
+         * text given as a string. The stream must have been read to its end or closed.
+         */
+        public Key json(JsonInput json) {
+            if (json == null) {
+                return separator(-1);
+            }
+            if (json.value == null) {
+                throw new IllegalStateException("The org JSON has not been read completely");
+            }
+            return jsonDigest(json.value);
+        }
+
+        /**
+         * Hex digest; the key cannot be extended afterwards
+         */
+        public String build() {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+
+        // Org JSON is added by the digest of its normalized bytes, so a stream can be hashed on its own
+        private Key jsonDigest(byte[] value) {
+            separator(-2);
+            digest.update(value);
+            return separator(-3);
+        }
+
+        // Every value is preceded by its length (or a marker), so values cannot run into each other
+        private Key separator(int value) {
+            length[0] = (byte) (value >>> 24);
+            length[1] = (byte) (value >>> 16);
+            length[2] = (byte) (value >>> 8);
+            length[3] = (byte) value;
+            digest.update(length);
+            return this;
+        }
+    }
+
+    /**
+     * Feeds JSON bytes to the digest without the whitespace between tokens. Whitespace
+     * inside an unquoted value is kept, as the parser keeps it there; only whitespace next
+     * to a structural character or a quoted string is dropped. A quote opens a string only
+     * where a value or key starts, as in the parser. Works on UTF-8 directly: multi-byte
+     * sequences never contain ASCII quotes, whitespace or structural characters.
+     */
+    private static class JsonNormalizer {
+        private final MessageDigest digest;
+        private final byte[] out = new byte[8192];
+        private byte[] space = new byte[16];
+        private int spaceLength;
+        private int quote;
+        private boolean escaped;
+        private boolean bare;
+        private int n;
+
+        JsonNormalizer(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        void update(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byte b = bytes[i];
+                if (quote != 0) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    // Held until the next byte shows whether it is inside an unquoted value
+                    if (bare) {
+                        if (spaceLength == space.length) {
+                            space = Arrays.copyOf(space, spaceLength * 2);
+                        }
+                        space[spaceLength++] = b;
+                    }
+                    continue;
+                } else if (b == '}' || b == ']' || b == ',' || b == ':' || (!bare && (b == '{' || b == '['))) {
+                    // Structural; an unquoted value runs on through { and [, as in the parser
+                    spaceLength = 0;
+                    bare = false;
+                } else {
+                    for (int k = 0; k < spaceLength; k++) {
+                        write(space[k]);
+                    }
+                    spaceLength = 0;
+                    if (!bare && (b == '"' || b == '\'')) {
+                        quote = b;
+                    } else {
+                        bare = true;
+                    }
+                }
+                write(b);
+            }
+            digest.update(out, 0, n);
+            n = 0;
+        }
+
+        private void write(byte b) {
+            out[n++] = b;
+            if (n == out.length) {
+                digest.update(out, 0, n);
+                n = 0;
+            }
+        }
+    }
+
+    /**
+     * Hashes UTF-8 org JSON as it is read, so an export can be parsed or sent to a render
+     * worker and keyed in the same pass. The value is complete once the stream has reached
+     * its end; closing it hashes whatever was left unread first.
+     */
+    public static class JsonInput extends FilterInputStream {
+        private final MessageDigest digest = sha256();
+        private final JsonNormalizer normalizer = new JsonNormalizer(digest);
+        private byte[] value;
+
+        private JsonInput(InputStream json) {
+            super(json);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                normalizer.update(b, off, read);
+            } else if (read < 0 && value == null) {
+                value = digest.digest();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] buffer = new byte[8192];
+                while (value == null && read(buffer, 0, buffer.length) >= 0) {
+                    // Hash the rest; whitespace after the JSON is dropped anyway
+                }
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Passes a render's output through and keeps a copy; finish() caches the copy once the
+     * render has completed. The memory copy is dropped as soon as the output grows beyond
+     * the entry limit. With a disk tier the output is also written to a temporary file in
+     * the cache directory, which finish() moves into place, up to the disk limit. Call
+     * discard() when the render failed, so the temporary file is deleted.
+     */
+    public class Recorder extends FilterOutputStream {
+        private final String key;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private File temp;
+        private OutputStream disk;
+        private long diskBytes;
+        private final byte[] one = new byte[1];
+
+        private Recorder(String key, OutputStream out) {
+            super(out);
+            this.key = key;
+            File file = file(key);
+            if (file != null) {
+                try {
+                    temp = File.createTempFile(key, ".tmp", directory);
+                    disk = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024);
+                } catch (IOException e) {
+                    OrgChartEngine.log("RenderCache").warn("Cannot write cached PDF " + file + ": " + e.getMessage());
+                    dropDisk();
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                if (copy.size() > maxEntryBytes) {
+                    copy = null;
+                }
+            }
+            if (disk != null) {
+                one[0] = (byte) b;
+                record(one, 0, 1);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                if (copy.size() > maxEntryBytes) {
+                    copy = null;
+                }
+            }
+            if (disk != null) {
+                record(b, off, len);
+            }
+        }
+
+        /**
+         * Cache what was written; call only after the render succeeded
+         */
+        public void finish() {
+            if (copy != null) {
+                remember(key, copy.toByteArray());
+                copy = null;
+            }
+            if (disk != null) {
+                File file = file(key);
+                try {
+                    disk.close();
+                    disk = null;
+                    if (file != null) {
+                        move(temp, file);
+                        temp = null;
+                        trimDisk();
+                    }
+                } catch (IOException e) {
+                    OrgChartEngine.log("RenderCache").warn("Cannot write cached PDF " + file + ": " + e.getMessage());
+                }
+            }
+            dropDisk();
+        }
+
+        /**
+         * Cache nothing; a no-op after finish()
+         */
+        public void discard() {
+            copy = null;
+            dropDisk();
+        }
+
+        private void record(byte[] b, int off, int len) {
+            diskBytes += len;
+            if (diskBytes > diskMaxBytes) {
+                dropDisk();
+                return;
+            }
+            try {
+                disk.write(b, off, len);
+            } catch (IOException e) {
+                OrgChartEngine.log("RenderCache").warn("Cannot write cached PDF " + temp + ": " + e.getMessage());
+                dropDisk();
+            }
+        }
+
+        private void dropDisk() {
+            if (disk != null) {
+                try {
+                    disk.close();
+                } catch (IOException e) {
+                    // Deleted below anyway
+                }
+                disk = null;
+            }
+            if (temp != null) {
+                if (temp.exists() && !temp.delete()) {
+                    OrgChartEngine.log("RenderCache").warn("Cannot delete " + temp);
+                }
+                temp = null;
+            }
+        }
+    }
+
+    public RenderCache(long maxBytes, long maxEntryBytes, File directory, long diskMaxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxEntryBytes = Math.max(0, Math.min(maxEntryBytes, this.maxBytes));
+        this.directory = directory;
+        this.diskMaxBytes = Math.max(0, diskMaxBytes);
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            OrgChartEngine.log("RenderCache").warn("Cannot create render cache directory " + directory + "; caching in memory only");
+        } else if (directory != null) {
+            deleteStale(directory);
+        }
+    }
+
+    /**
+     * Delete temporary files that recorders of an earlier process left behind, e.g. when it
+     * was killed mid-render; they are neither cached PDFs nor counted against diskMaxBytes
+     */
+    private static void deleteStale(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - STALE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                OrgChartEngine.log("RenderCache").warn("Cannot delete stale temporary file " + file);
+            }
+        }
+    }
+
+    /**
+     * The shared cache used by the Java actions
+     */
+    public static RenderCache getInstance() {
+        RenderCache cache = instance;
+        if (cache == null) {
+            synchronized (RenderCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    long maxBytes = Long.getLong("orgchart.renderCache.maxBytes", 64L * 1024 * 1024);
+                    long maxEntryBytes = Long.getLong("orgchart.renderCache.maxEntryBytes", maxBytes / 8);
+                    long diskMaxBytes = Long.getLong("orgchart.renderCache.diskMaxBytes", 512L * 1024 * 1024);
+                    String dir = System.getProperty("orgchart.renderCache.dir", "").trim();
+                    File directory = null;
+                    if ("temp".equalsIgnoreCase(dir)) {
+                        directory = new File(OrgChartEngine.getInstance().getResources().getTempDirectory(), "orgchart-render-cache");
+                    } else if (!dir.isEmpty()) {
+                        directory = new File(dir);
+                    }
+                    cache = new RenderCache(maxBytes, maxEntryBytes, directory, diskMaxBytes);
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Start a key; the renderer output version is already part of it
+     */
+    public static Key key() {
+        return new Key();
+    }
+
+    /**
+     * Hash org JSON while it is read through the returned stream; closing it closes json
+     */
+    public static JsonInput readingJson(InputStream json) {
+        return new JsonInput(json);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The cached PDF, from memory or else from disk, or null on a miss. A disk entry is
+     * read into memory as a whole; to write a PDF out without that, use open().
+     */
+    public byte[] get(String key) {
+        byte[] pdf;
+        synchronized (memory) {
+            pdf = memory.get(key);
+        }
+        if (pdf != null) {
+            memoryHits.incrementAndGet();
+            return pdf;
+        }
+
+        File file = file(key);
+        if (file != null && file.isFile()) {
+            try {
+                pdf = Files.readAllBytes(file.toPath());
+                // Keep recently used files out of reach of the eviction
+                file.setLastModified(System.currentTimeMillis());
+                diskHits.incrementAndGet();
+                remember(key, pdf);
+                return pdf;
+            } catch (IOException e) {
+                OrgChartEngine.log("RenderCache").warn("Cannot read cached PDF " + file + ": " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * The cached PDF as a stream, or null on a miss. A disk entry above the memory tier's
+     * entry limit is streamed from its file instead of being read into memory, so a caller
+     * that writes the PDF out never holds it as a whole; smaller ones are read and kept in
+     * memory as by get(). The caller must close the stream.
+     */
+    public InputStream open(String key) {
+        byte[] pdf;
+        synchronized (memory) {
+            pdf = memory.get(key);
+        }
+        if (pdf != null) {
+            memoryHits.incrementAndGet();
+            return new ByteArrayInputStream(pdf);
+        }
+
+        File file = file(key);
+        if (file != null && file.isFile()) {
+            try {
+                InputStream in;
+                if (file.length() <= maxEntryBytes) {
+                    pdf = Files.readAllBytes(file.toPath());
+                    remember(key, pdf);
+                    in = new ByteArrayInputStream(pdf);
+                } else {
+                    // An open file can still be read if trimDisk deletes it meanwhile
+                    in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+                }
+                file.setLastModified(System.currentTimeMillis());
+                diskHits.incrementAndGet();
+                return in;
+            } catch (IOException e) {
+                OrgChartEngine.log("RenderCache").warn("Cannot read cached PDF " + file + ": " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache a rendered PDF in memory and, if configured, on disk
+     */
+    public void put(String key, byte[] pdf) {
+        remember(key, pdf);
+        File file = file(key);
+        if (file == null || pdf.length > diskMaxBytes) {
+            return;
+        }
+        try {
+            File temp = File.createTempFile(key, ".tmp", directory);
+            Files.write(temp.toPath(), pdf);
+            move(temp, file);
+            trimDisk();
+        } catch (IOException e) {
+            OrgChartEngine.log("RenderCache").warn("Cannot write cached PDF " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pass the output through to out and cache it once the render calls finish()
+     */
+    public Recorder record(String key, OutputStream out) {
+        return new Recorder(key, out);
+    }
+
+    /**
+     * Drop one PDF from both tiers
+     */
+    public void invalidate(String key) {
+        synchronized (memory) {
+            byte[] pdf = memory.remove(key);
+            if (pdf != null) {
+                memoryBytes -= pdf.length;
+            }
+        }
+        File file = file(key);
+        if (file != null && file.exists() && !file.delete()) {
+            OrgChartEngine.log("RenderCache").warn("Cannot delete cached PDF " + file);
+        }
+    }
+
+    /**
+     * Drop every PDF from both tiers, e.g. after fonts or styles changed
+     */
+    public void invalidateAll() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        for (File file : diskFiles()) {
+            if (!file.delete()) {
+                OrgChartEngine.log("RenderCache").warn("Cannot delete cached PDF " + file);
+            }
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (memory) {
+            return new Stats(memoryHits.get(), diskHits.get(), misses.get(), evictions.get(), memory.size(), memoryBytes);
+        }
+    }
+
+    private void remember(String key, byte[] pdf) {
+        if (pdf.length > maxEntryBytes) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] previous = memory.put(key, pdf);
+            memoryBytes += pdf.length - (previous != null ? previous.length : 0);
+            Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().length;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Move a completely written file into place, so readers never see a partial file
+     */
+    private static void move(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the directory fits diskMaxBytes
+     */
+    private void trimDisk() {
+        File[] files = diskFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= diskMaxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= diskMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File[] diskFiles() {
+        File[] files = directory != null ? directory.listFiles((dir, name) -> name.endsWith(".pdf")) : null;
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * The file of the key; null without a disk tier, or for anything but a hex digest,
+     * so a key can never point outside the directory
+     */
+    private File file(String key) {
+        if (directory == null || key.isEmpty() || !directory.isDirectory()) {
+            return null;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.digit(key.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        return new File(directory, key + ".pdf");
+    }
+}
@@ -0,0 +1,232 @@
+package myfirstmodule.pdf;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for PDF renders.
+ *
+ * At most maxConcurrent renders run at once; up to maxQueued further callers wait
+ * (first come, first served) for at most maxWaitMillis. Anything beyond that is
+ * rejected immediately with a RejectedExecutionException, so a burst of exports caps
+ * peak memory instead of piling up renders. Admitted renders run on virtual threads
+ * when the JVM provides them, otherwise on pooled platform threads.
+ *
+ * Defaults come from the system properties orgchart.render.maxConcurrent (available
+ * processors), orgchart.render.maxQueued (twice that) and orgchart.render.maxWaitMillis
+ * (30000), and can be changed at runtime with configure().
+ */
+public class RenderExecutor {
+
+    private static volatile RenderExecutor instance;
+
+    private volatile int maxConcurrent;
+    private volatile int maxQueued;
+    private volatile long maxWaitMillis;
+    private final Permits permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ExecutorService threads;
+
+    public RenderExecutor(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.permits = new Permits(maxConcurrent);
+        this.threads = newRenderThreads();
+    }
+
+    /**
+     * The shared executor used by the Java actions
+     */
+    public static RenderExecutor getInstance() {
+        RenderExecutor executor = instance;
+        if (executor == null) {
+            synchronized (RenderExecutor.class) {
+                executor = instance;
+                if (executor == null) {
+                    int processors = Runtime.getRuntime().availableProcessors();
+                    int maxConcurrent = Integer.getInteger("orgchart.render.maxConcurrent", processors);
+                    int maxQueued = Integer.getInteger("orgchart.render.maxQueued", maxConcurrent * 2);
+                    long maxWaitMillis = Long.getLong("orgchart.render.maxWaitMillis", 30000L);
+                    executor = new RenderExecutor(maxConcurrent, maxQueued, maxWaitMillis);
+                    instance = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Change the limits of the shared executor. Its permits are resized rather than
+     * replaced, so renders already running count against the new limit: when it is
+     * lowered, no new render starts until enough of them have finished.
+     */
+    public static void configure(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        getInstance().resize(maxConcurrent, maxQueued, maxWaitMillis);
+        OrgChartEngine.log("RenderExecutor").info("Render limits set to " + maxConcurrent + " concurrent, "
+                + maxQueued + " queued, " + maxWaitMillis + " ms wait");
+    }
+
+    /**
+     * Wait for admission on the calling thread, then start the task on a render thread.
+     * Throws RejectedExecutionException when the queue is full or the wait times out.
+     */
+    public <T> Future<T> submit(Callable<T> task) throws InterruptedException {
+        admit();
+        return start(task);
+    }
+
+    /**
+     * Start the task on a render thread only if a render slot is free right now; null
+     * otherwise, and the caller runs it itself. For work split off an admitted render,
+     * which must neither queue behind nor exceed the render limit.
+     */
+    public <T> Future<T> trySubmit(Callable<T> task) throws InterruptedException {
+        // A zero timeout still honours fairness, unlike tryAcquire()
+        if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        return start(task);
+    }
+
+    private synchronized void resize(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        int delta = maxConcurrent - this.maxConcurrent;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * Run an admitted task, releasing its permit when it ends
+     */
+    private <T> Future<T> start(Callable<T> task) {
+        try {
+            return threads.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Run the task through the executor and wait for its result, rethrowing its failure
+     */
+    public <T> T execute(Callable<T> task) throws Exception {
+        Future<T> future = submit(task);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Most renders that run at once
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Renders currently running; more than getMaxConcurrent() for a while after the
+     * limit was lowered
+     */
+    public int getRunning() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Callers currently waiting for admission
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    private void admit() throws InterruptedException {
+        // A zero timeout still honours fairness, unlike tryAcquire()
+        if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            throw reject("all " + maxConcurrent + " render slots and " + maxQueued + " queue places are taken");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw reject("no render slot became free within " + maxWaitMillis + " ms");
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * A fair semaphore whose size can also be lowered while permits are held
+     */
+    private static class Permits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        Permits(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    private RejectedExecutionException reject(String reason) {
+        OrgChartEngine.log("RenderExecutor").warn("Rejected PDF render: " + reason);
+        return new RejectedExecutionException("The PDF renderer is busy (" + reason + "), please try again later");
+    }
+
+    /**
+     * Virtual threads when running on Java 21+, otherwise a cached pool of daemon threads
+     */
+    private static ExecutorService newRenderThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "RenderExecutor-render-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package myfirstmodule.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a PDF writer on a helper thread and exposes its output as an InputStream,
+ * so consumers that only accept streams (e.g. Mendix FileDocument storage) can read
+ * the document while it is being written instead of after it was buffered in memory.
+ * If the writer fails, reading ends with an IOException instead of the end of the stream.
+ */
+public class RenderPipe extends InputStream {
+
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the whole output to the given stream
+     */
+    public interface Writer {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    private final PipedInputStream in;
+    private final Thread thread;
+    private final Future<?> future;
+    private volatile Throwable failure;
+
+    public RenderPipe(Writer writer, String threadName) throws IOException {
+        this.in = new PipedInputStream(PIPE_BUFFER_SIZE);
+        this.thread = new Thread(writeTask(writer, new PipedOutputStream(in)), threadName);
+        this.thread.setDaemon(true);
+        this.future = null;
+        this.thread.start();
+    }
+
+    /**
+     * Run the writer through the render executor; waits for admission on the calling thread
+     * and throws RejectedExecutionException when the executor is saturated
+     */
+    public RenderPipe(Writer writer, RenderExecutor executor) throws IOException, InterruptedException {
+        this.in = new PipedInputStream(PIPE_BUFFER_SIZE);
+        Runnable task = writeTask(writer, new PipedOutputStream(in));
+        this.thread = null;
+        this.future = executor.submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private Runnable writeTask(Writer writer, PipedOutputStream out) {
+        return () -> {
+            try {
+                writer.writeTo(out);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                // Only after failure is set, so the reader sees it at the end of the stream
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // The reader closed the pipe; await reports the writer's failure, if any
+                }
+            }
+        };
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = in.read();
+        return read < 0 ? end() : read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        return read < 0 ? end() : read;
+    }
+
+    /**
+     * End of the stream: -1 if the writer completed, else its failure, so a consumer never
+     * takes the output of a failed render for a complete document
+     */
+    private int end() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IOException("Writing the PDF failed: " + t.getMessage(), t);
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Wait for the writer to finish and rethrow its failure, if any.
+     * Must be called after the consumer has read the stream and closed it.
+     */
+    public void await() throws Exception {
+        if (thread != null) {
+            thread.join();
+        } else {
+            future.get();
+        }
+        Throwable t = failure;
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Wait for the writer after the consumer failed; the writer's failure, if any, is added
+     * to the consumer's as suppressed, so the consumer's failure stays the one reported
+     */
+    public void await(Throwable consumerFailure) {
+        try {
+            await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            consumerFailure.addSuppressed(e);
+        } catch (Exception | Error e) {
+            // Already among the consumer's causes when its read saw the writer fail
+            for (Throwable cause = consumerFailure; cause != null; cause = cause.getCause()) {
+                if (cause == e) {
+                    return;
+                }
+            }
+            consumerFailure.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package myfirstmodule.pdf;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Wall time and allocated bytes of one render, per phase.
+ *
+ * A caller creates the profile, hands it to OrgChartParser and OrgChartRenderer and
+ * measures its own phases (such as ENCODE) with start, ending the span in a finally block.
+ * Phases can run on several threads at once, e.g. the TR and EN pages; their times are
+ * added up, so the phase total may exceed the wall time of the render. Allocation is
+ * measured per thread through the HotSpot ThreadMXBean and reported as -1 where the JVM
+ * does not support it. The actions log the profile; toJson() gives it in a form a caller
+ * can store.
+ */
+public class RenderProfile {
+
+    public enum Phase {
+        /** Reading positions from the JSON */
+        PARSE,
+        /** Linking positions into a tree by HierarchyCode, applying the scope */
+        TREE_BUILD,
+        /** Layout and page planning */
+        LAYOUT,
+        /** Header, boxes, texts and connectors */
+        DRAW,
+        /** Footer text and logo */
+        FOOTER,
+        /** Writing the PDF to its stream */
+        SAVE,
+        /** Turning the written PDF into the caller's result, e.g. Base64 */
+        ENCODE
+    }
+
+    /**
+     * A running measurement; ending it adds it to its phase
+     */
+    public interface Span {
+        void end();
+    }
+
+    private static final Span NONE = () -> { };
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray bytes = new AtomicLongArray(Phase.values().length);
+    private final long created = System.nanoTime();
+    private volatile long outputBytes = -1;
+    private volatile String compression;
+    private volatile long contentStreamRawBytes;
+    private volatile long contentStreamBytes;
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()) {
+                return (com.sun.management.ThreadMXBean) bean;
+            }
+        } catch (LinkageError | RuntimeException e) {
+            // Not a HotSpot JVM; times are still measured
+        }
+        return null;
+    }
+
+    /**
+     * Start measuring the phase on the current thread
+     */
+    public Span start(Phase phase) {
+        long thread = Thread.currentThread().getId();
+        long startBytes = THREADS != null ? THREADS.getThreadAllocatedBytes(thread) : 0;
+        long startNanos = System.nanoTime();
+        return () -> {
+            nanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+            if (THREADS != null) {
+                bytes.addAndGet(phase.ordinal(), THREADS.getThreadAllocatedBytes(thread) - startBytes);
+            }
+        };
+    }
+
+    /**
+     * Start measuring the phase if there is a profile; a no-op span otherwise
+     */
+    static Span start(RenderProfile profile, Phase phase) {
+        return profile != null ? profile.start(phase) : NONE;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * Bytes allocated during the phase, or -1 if the JVM cannot tell
+     */
+    public long getAllocatedBytes(Phase phase) {
+        return THREADS != null ? bytes.get(phase.ordinal()) : -1;
+    }
+
+    /**
+     * Wall time since the profile was created
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - created;
+    }
+
+    /**
+     * Size of the saved PDF, or -1 if it was not saved
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * Compression preset and Flate level of the saved PDF, e.g. "balanced/6"
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Size of the page and form content streams of the saved PDF before deflating
+     */
+    public long getContentStreamRawBytes() {
+        return contentStreamRawBytes;
+    }
+
+    /**
+     * Deflated size of the page and form content streams of the saved PDF
+     */
+    public long getContentStreamBytes() {
+        return contentStreamBytes;
+    }
+
+    void setOutput(long bytes, String compression, long contentStreamRawBytes, long contentStreamBytes) {
+        this.outputBytes = bytes;
+        this.compression = compression;
+        this.contentStreamRawBytes = contentStreamRawBytes;
+        this.contentStreamBytes = contentStreamBytes;
+    }
+
+    /**
+     * Log the summary as one INFO line
+     */
+    public void log(String logNode, String what) {
+        OrgChartEngine.log(logNode).info(what + ": " + this);
+    }
+
+    /**
+     * The profile as a JSON object, for storing it with the document
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"elapsedMs\":").append(millis(getElapsedNanos()));
+        for (Phase phase : Phase.values()) {
+            json.append(",\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\":{\"ms\":")
+                    .append(millis(getNanos(phase))).append(",\"allocatedBytes\":")
+                    .append(getAllocatedBytes(phase)).append('}');
+        }
+        json.append(",\"pdfBytes\":").append(outputBytes);
+        if (compression != null) {
+            json.append(",\"compression\":\"").append(compression).append('"')
+                    .append(",\"contentStreamRawBytes\":").append(contentStreamRawBytes)
+                    .append(",\"contentStreamBytes\":").append(contentStreamBytes);
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * "412.3 ms total; parse 20.1 ms / 8.4 MB, tree_build ...; pdf 96.4 KB balanced/6,
+     * content streams 702.5 KB deflated to 61.0 KB" with phases that did not run left out
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder(millis(getElapsedNanos())).append(" ms total");
+        char separator = ';';
+        for (Phase phase : Phase.values()) {
+            if (getNanos(phase) == 0) {
+                continue;
+            }
+            summary.append(separator).append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+                    .append(millis(getNanos(phase))).append(" ms");
+            if (getAllocatedBytes(phase) >= 0) {
+                summary.append(" / ").append(String.format(Locale.ROOT, "%.1f", getAllocatedBytes(phase) / (1024.0 * 1024.0)))
+                        .append(" MB");
+            }
+            separator = ',';
+        }
+        if (outputBytes >= 0) {
+            summary.append("; pdf ").append(String.format(Locale.ROOT, "%.1f", outputBytes / 1024.0)).append(" KB ")
+                    .append(compression).append(", content streams ")
+                    .append(String.format(Locale.ROOT, "%.1f", contentStreamRawBytes / 1024.0))
+                    .append(" KB deflated to ")
+                    .append(String.format(Locale.ROOT, "%.1f", contentStreamBytes / 1024.0)).append(" KB");
+        }
+        return summary.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,297 @@
+package myfirstmodule.pdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Entry point of a render worker process started by RenderWorkerPool.
+ *
+ * The worker reads requests from stdin and answers on stdout; logs go to stderr, which
+ * the pool forwards to its own log. Every frame starts with a type byte:
+ *
+ *   PING                                            answered with PONG
+ *   RENDER job-json org-json-tr org-json-en GO|SKIP  on GO answered with CHUNK frames of
+ *                                                   the PDF, then DONE or FAILED; SKIP
+ *                                                   is not answered
+ *
+ * Byte arrays are an int length followed by the bytes; -1 stands for null. The org JSON
+ * is streamed: int-length chunks ended by a 0 length, or -2 when the pool could not read
+ * all of it, and -1 alone for no JSON. The worker parses it as it arrives; the pool sends
+ * GO or SKIP once it has sent both, e.g. SKIP when the inputs turned out to be cached.
+ * CHUNK carries a byte array, DONE the profile summary and FAILED the error message, both
+ * as UTF-8 byte arrays. The worker renders one job at a time and exits when stdin is
+ * closed. It is started with -XX:+ExitOnOutOfMemoryError, so a job that runs out of
+ * heap ends the process and the pool replaces it.
+ */
+public class RenderWorker {
+
+    static final byte PING = 1;
+    static final byte PONG = 2;
+    static final byte RENDER = 3;
+    static final byte CHUNK = 4;
+    static final byte DONE = 5;
+    static final byte FAILED = 6;
+    static final byte GO = 7;
+    static final byte SKIP = 8;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), CHUNK_SIZE + 8));
+        // stdout carries the protocol; anything a library prints goes to the log instead
+        System.setOut(new PrintStream(System.err, true));
+
+        OrgChartEngine engine = OrgChartEngine.getInstance();
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            switch (type) {
+                case PING:
+                    out.writeByte(PONG);
+                    out.flush();
+                    break;
+                case RENDER:
+                    render(engine, in, out);
+                    break;
+                default:
+                    throw new IOException("Unknown request type " + type);
+            }
+        }
+    }
+
+    private static void render(OrgChartEngine engine, DataInputStream in, DataOutputStream out) throws IOException {
+        String jobJson = readText(in);
+        RenderProfile profile = new RenderProfile();
+        OrgChartJob job = null;
+        Position dataTR = null;
+        Position dataEN = null;
+        Exception failure = null;
+        try {
+            job = OrgChartJob.listFromJson(jobJson).get(0);
+        } catch (Exception e) {
+            failure = e;
+        }
+        // Both streams are read to their end even after a failure, so the protocol stays in step
+        try (InputStream json = readJson(in)) {
+            if (failure == null) {
+                dataTR = engine.parse(json, job, profile);
+            }
+        } catch (Exception e) {
+            failure = failure != null ? failure : e;
+        }
+        try (InputStream json = readJson(in)) {
+            if (failure == null) {
+                dataEN = engine.parse(json, job, profile);
+            }
+        } catch (Exception e) {
+            failure = failure != null ? failure : e;
+        }
+        if (in.readByte() == SKIP) {
+            return;
+        }
+
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            try (OutputStream pdf = new ChunkOutputStream(out)) {
+                engine.render(job, dataTR, dataEN, profile, pdf);
+            }
+            out.writeByte(DONE);
+            writeText(out, profile.toString());
+        } catch (Exception e) {
+            // The pool holds the chunks until DONE and drops the ones sent so far
+            OrgChartEngine.log("RenderWorker").error("Render failed: " + e.getMessage(), e);
+            out.writeByte(FAILED);
+            writeText(out, String.valueOf(e.getMessage()));
+        }
+        out.flush();
+    }
+
+    /**
+     * The next streamed org JSON, or null if none was sent; closing it skips what was not read
+     */
+    private static InputStream readJson(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length == -1 ? null : new ChunkInputStream(in, length);
+    }
+
+    /**
+     * Send the org JSON read from json as a stream of chunks; null sends no JSON. A failure
+     * reading json ends the stream as incomplete and is returned rather than thrown, so the
+     * worker stays in step; failures writing to the worker are thrown.
+     */
+    static IOException writeJson(DataOutputStream out, InputStream json) throws IOException {
+        if (json == null) {
+            out.writeInt(-1);
+            return null;
+        }
+        byte[] buffer = new byte[CHUNK_SIZE];
+        while (true) {
+            int read;
+            try {
+                read = json.read(buffer);
+            } catch (IOException e) {
+                out.writeInt(-2);
+                return e;
+            }
+            if (read < 0) {
+                out.writeInt(0);
+                return null;
+            }
+            if (read > 0) {
+                out.writeInt(read);
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a streamed org JSON up to its end marker
+     */
+    private static class ChunkInputStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean ended;
+
+        ChunkInputStream(DataInputStream in, int length) throws IOException {
+            this.in = in;
+            next(length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                if (ended) {
+                    return -1;
+                }
+                next(in.readInt());
+            }
+            int read = in.read(b, off, Math.min(len, remaining));
+            if (read < 0) {
+                throw new EOFException("The org JSON ended early");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // Skip the rest of the stream
+            }
+        }
+
+        private void next(int length) throws IOException {
+            if (length == 0) {
+                ended = true;
+            } else if (length == -2) {
+                ended = true;
+                throw new IOException("The org JSON could not be read completely");
+            } else if (length < 0) {
+                throw new IOException("Unexpected org JSON chunk length " + length);
+            } else {
+                remaining = length;
+            }
+        }
+    }
+
+    /**
+     * Sends what is written as CHUNK frames; closing sends the rest but leaves the protocol stream open
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        ChunkOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                send();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    send();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                send();
+            }
+        }
+
+        private void send() throws IOException {
+            out.writeByte(CHUNK);
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
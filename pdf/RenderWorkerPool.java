@@ -0,0 +1,517 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.io.RandomAccess;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders in a pool of separate JVM processes (RenderWorker), so the PDFBox heap of a
+ * large chart never grows, or collects, the heap of the Mendix runtime.
+ *
+ * Jobs, their org JSON and the PDFs streamed back travel over each worker's stdin and
+ * stdout. A PDF is
+ * held in scratch storage until its worker reports it complete, so a failed render never
+ * leaves part of a PDF in the sink. Workers
+ * are started on demand, checked with a ping when they were idle longer than
+ * orgchart.worker.healthCheckMillis (default 30000), and replaced after
+ * orgchart.worker.maxJobs jobs (default 200), when they run out of heap, time out
+ * (orgchart.worker.timeoutMillis, default 120000) or stop answering.
+ *
+ * The pool is off unless orgchart.worker.count is above 0. orgchart.worker.heap sets
+ * each worker's -Xmx (default 1g), orgchart.worker.javaOpts adds JVM options and
+ * orgchart.worker.classpath replaces the classpath found from the loaded classes. Other
+ * orgchart.* system properties are passed on to the workers.
+ */
+public class RenderWorkerPool implements AutoCloseable {
+
+    private static final String[] CLASSPATH_CLASSES = {
+        "myfirstmodule.pdf.RenderWorker",
+        "org.apache.pdfbox.pdmodel.PDDocument",
+        "org.apache.pdfbox.io.RandomAccessRead",
+        "org.apache.fontbox.ttf.TTFParser",
+        "org.apache.commons.logging.LogFactory",
+        "net.minidev.json.parser.JSONParser",
+        "net.minidev.asm.Accessor",
+        "org.objectweb.asm.ClassVisitor"
+    };
+
+    private static final long PING_TIMEOUT_MILLIS = 5000;
+
+    private static volatile RenderWorkerPool instance;
+    private static volatile boolean configured;
+
+    private final List<String> command;
+    private final int maxJobs;
+    private final long timeoutMillis;
+    private final long healthCheckMillis;
+    private final int size;
+    private final Semaphore slots;
+    private final Deque<Worker> idle = new ArrayDeque<>();
+    private final AtomicInteger started = new AtomicInteger();
+    private final ScheduledExecutorService watchdog;
+    private volatile boolean closed;
+
+    /**
+     * A running worker process and its protocol streams
+     */
+    private static class Worker {
+        final int id;
+        final Process process;
+        final DataOutputStream requests;
+        final DataInputStream responses;
+        int jobs;
+        long lastUsed = System.nanoTime();
+
+        Worker(int id, Process process) {
+            this.id = id;
+            this.process = process;
+            this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+    }
+
+    /**
+     * @param size        number of worker processes
+     * @param command     command line that starts RenderWorker
+     * @param maxJobs     jobs after which a worker is replaced
+     * @param timeoutMillis longest a job may take before its worker is killed
+     * @param healthCheckMillis idle time after which a worker is pinged before use
+     */
+    public RenderWorkerPool(int size, List<String> command, int maxJobs, long timeoutMillis, long healthCheckMillis) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        this.command = new ArrayList<>(command);
+        this.maxJobs = Math.max(1, maxJobs);
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.healthCheckMillis = Math.max(0, healthCheckMillis);
+        this.size = size;
+        this.slots = new Semaphore(size, true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RenderWorkerPool-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The shared pool used by the Java actions, or null when orgchart.worker.count is 0
+     */
+    public static RenderWorkerPool getInstance() {
+        if (!configured) {
+            synchronized (RenderWorkerPool.class) {
+                if (!configured) {
+                    int count = Integer.getInteger("orgchart.worker.count", 0);
+                    if (count > 0) {
+                        instance = new RenderWorkerPool(count, defaultCommand(),
+                                Integer.getInteger("orgchart.worker.maxJobs", 200),
+                                Long.getLong("orgchart.worker.timeoutMillis", 120000L),
+                                Long.getLong("orgchart.worker.healthCheckMillis", 30000L));
+                        OrgChartEngine.log("RenderWorkerPool").info("Rendering in " + count + " worker processes");
+                    }
+                    configured = true;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The java command for a worker: this JVM's java, the worker heap and options, the
+     * classpath of the renderer and its libraries, the font directory and the orgchart.*
+     * properties of this JVM
+     */
+    static List<String> defaultCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xmx" + System.getProperty("orgchart.worker.heap", "1g"));
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-Djava.awt.headless=true");
+        // One line per log record, forwarded line by line
+        command.add("-Djava.util.logging.SimpleFormatter.format=%4$s %3$s: %5$s%6$s%n");
+        String javaOpts = System.getProperty("orgchart.worker.javaOpts", "").trim();
+        if (!javaOpts.isEmpty()) {
+            command.addAll(Arrays.asList(javaOpts.split("\\s+")));
+        }
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = String.valueOf(property.getKey());
+            if (name.startsWith("orgchart.") && !name.startsWith("orgchart.worker.")) {
+                command.add("-D" + name + "=" + property.getValue());
+            }
+        }
+        if (System.getProperty("orgchart.fontDir") == null) {
+            File fontDirectory = FontRegistry.fontDirectory(Style.FONT_REGULAR);
+            if (fontDirectory != null) {
+                command.add("-Dorgchart.fontDir=" + fontDirectory.getAbsolutePath());
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("orgchart.worker.classpath", classpath()));
+        command.add(RenderWorker.class.getName());
+        return command;
+    }
+
+    private static String classpath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (String className : CLASSPATH_CLASSES) {
+            try {
+                Class<?> type = Class.forName(className, false, RenderWorkerPool.class.getClassLoader());
+                CodeSource source = type.getProtectionDomain().getCodeSource();
+                if (source != null && source.getLocation() != null) {
+                    entries.add(new File(source.getLocation().toURI()).getAbsolutePath());
+                }
+            } catch (Exception | LinkageError e) {
+                // Not on the classpath here; the worker may not need it
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Receives the PDF of a render whose inputs are streamed
+     */
+    public interface Sink {
+        /**
+         * Called once the worker has all inputs: the stream for the PDF, or null to skip
+         * the render, e.g. because the inputs turned out to be cached
+         */
+        OutputStream open() throws Exception;
+    }
+
+    /**
+     * Render the job in a worker and copy its PDF to the sink once it is complete. Waits
+     * for a free worker; a job that fails in the worker fails here with its message and
+     * writes nothing. A failing sink fails the call but not the worker.
+     */
+    public void render(OrgChartJob job, OutputStream out) throws Exception {
+        render(job, null, null, () -> out);
+    }
+
+    /**
+     * Render the job with its org JSON streamed into the worker from jsonTR and jsonEN in
+     * place of the job's own (unless null), so an export is never held as text here. The
+     * streams are read to their end but not closed. Failures reading them or opening the
+     * sink fail the call but not the worker.
+     */
+    public void render(OrgChartJob job, InputStream jsonTR, InputStream jsonEN, Sink sink) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("The render worker pool is closed");
+        }
+        try (RandomAccessStreamCache scratch = ScratchStorage.streamCache().create();
+             RandomAccess pdf = scratch.createBuffer()) {
+            slots.acquire();
+            if (closed) {
+                slots.release();
+                throw new IllegalStateException("The render worker pool is closed");
+            }
+            Worker worker = null;
+            boolean reusable = false;
+            Transfer transfer;
+            try {
+                worker = borrow();
+                transfer = render(worker, job, jsonTR, jsonEN, sink, pdf);
+                reusable = true;
+            } catch (WorkerFailure e) {
+                // The worker reported the failure itself and can take the next job
+                reusable = true;
+                throw new IOException(e.getMessage());
+            } finally {
+                if (worker != null) {
+                    giveBack(worker, reusable);
+                }
+                slots.release();
+            }
+            if (transfer.failure != null) {
+                throw transfer.failure;
+            }
+            if (transfer.out == null) {
+                return;
+            }
+
+            pdf.seek(0);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = pdf.read(buffer)) > 0) {
+                transfer.out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Where a job's PDF goes, or why it went nowhere
+     */
+    private static class Transfer {
+        OutputStream out;
+        Exception failure;
+    }
+
+    /**
+     * Send the job and buffer the PDF chunks until the worker reports DONE or FAILED.
+     * Errors reading the inputs, opening the sink or writing the buffer are returned
+     * rather than thrown: the worker is told to skip or its chunks are still read, so it
+     * stays in step and can be reused. Read and protocol errors mean the worker died.
+     */
+    private Transfer render(Worker worker, OrgChartJob job, InputStream jsonTR, InputStream jsonEN,
+                            Sink sink, RandomAccess pdf) throws IOException, WorkerFailure {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            timedOut.set(true);
+            worker.process.destroyForcibly();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        Transfer transfer = new Transfer();
+        String summary = null;
+        try {
+            worker.requests.writeByte(RenderWorker.RENDER);
+            RenderWorker.writeText(worker.requests, job.toJson(false));
+            transfer.failure = RenderWorker.writeJson(worker.requests, jsonTR != null ? jsonTR : text(job.getOrgJsonTR()));
+            IOException failureEN = RenderWorker.writeJson(worker.requests,
+                    transfer.failure == null ? (jsonEN != null ? jsonEN : text(job.getOrgJsonEN())) : null);
+            if (transfer.failure == null) {
+                transfer.failure = failureEN;
+            }
+            if (transfer.failure == null) {
+                try {
+                    transfer.out = sink.open();
+                } catch (Exception e) {
+                    transfer.failure = e;
+                }
+            }
+            if (transfer.failure != null || transfer.out == null) {
+                transfer.out = null;
+                worker.requests.writeByte(RenderWorker.SKIP);
+                worker.requests.flush();
+                return transfer;
+            }
+            worker.requests.writeByte(RenderWorker.GO);
+            worker.requests.flush();
+            worker.jobs++;
+
+            boolean done = false;
+            while (!done) {
+                byte type = worker.responses.readByte();
+                switch (type) {
+                    case RenderWorker.CHUNK:
+                        int length = worker.responses.readInt();
+                        byte[] chunk = new byte[length];
+                        worker.responses.readFully(chunk);
+                        if (transfer.failure == null) {
+                            try {
+                                pdf.write(chunk);
+                            } catch (IOException e) {
+                                transfer.failure = e;
+                            }
+                        }
+                        break;
+                    case RenderWorker.DONE:
+                        summary = RenderWorker.readText(worker.responses);
+                        done = true;
+                        break;
+                    case RenderWorker.FAILED:
+                        throw new WorkerFailure(RenderWorker.readText(worker.responses));
+                    default:
+                        throw new IOException("Unexpected response " + type + " from render worker " + worker.id);
+                }
+            }
+        } catch (IOException e) {
+            throw new IOException(died(worker, timedOut.get()), e);
+        } finally {
+            timeout.cancel(false);
+        }
+        OrgChartEngine.log("RenderWorkerPool").info("Worker " + worker.id + " rendered '"
+                + job.getFileName() + "': " + summary);
+        return transfer;
+    }
+
+    private static InputStream text(String json) {
+        return json != null ? new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)) : null;
+    }
+
+    private static class WorkerFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        WorkerFailure(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Why the worker stopped answering
+     */
+    private String died(Worker worker, boolean timedOut) {
+        if (timedOut) {
+            return "Render worker " + worker.id + " took longer than " + timeoutMillis + " ms and was stopped";
+        }
+        try {
+            if (worker.process.waitFor(1, TimeUnit.SECONDS)) {
+                // ExitOnOutOfMemoryError exits with 3
+                return worker.process.exitValue() == 3
+                        ? "Render worker " + worker.id + " ran out of memory"
+                        : "Render worker " + worker.id + " exited with " + worker.process.exitValue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "Render worker " + worker.id + " stopped answering";
+    }
+
+    /**
+     * An idle worker that is alive and answered a ping if it was idle for long, or a new one
+     */
+    private Worker borrow() throws IOException {
+        while (true) {
+            Worker worker;
+            synchronized (idle) {
+                worker = idle.pollFirst();
+            }
+            if (worker == null) {
+                return start();
+            }
+            if (healthy(worker)) {
+                return worker;
+            }
+            OrgChartEngine.log("RenderWorkerPool").warn("Render worker " + worker.id + " failed its health check; replacing it");
+            stop(worker);
+        }
+    }
+
+    private boolean healthy(Worker worker) {
+        if (!worker.process.isAlive()) {
+            return false;
+        }
+        if (System.nanoTime() - worker.lastUsed < TimeUnit.MILLISECONDS.toNanos(healthCheckMillis)) {
+            return true;
+        }
+        ScheduledFuture<?> timeout = watchdog.schedule(worker.process::destroyForcibly, PING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            worker.requests.writeByte(RenderWorker.PING);
+            worker.requests.flush();
+            return worker.responses.readByte() == RenderWorker.PONG;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    private void giveBack(Worker worker, boolean reusable) {
+        if (!reusable || closed || worker.jobs >= maxJobs || !worker.process.isAlive()) {
+            if (reusable && worker.jobs >= maxJobs) {
+                OrgChartEngine.log("RenderWorkerPool").info("Recycling render worker " + worker.id + " after " + worker.jobs + " jobs");
+            }
+            stop(worker);
+            return;
+        }
+        worker.lastUsed = System.nanoTime();
+        synchronized (idle) {
+            idle.addFirst(worker);
+        }
+    }
+
+    private Worker start() throws IOException {
+        int id = started.incrementAndGet();
+        Process process = new ProcessBuilder(command).start();
+        Worker worker = new Worker(id, process);
+        forwardLog(worker);
+        return worker;
+    }
+
+    /**
+     * Pass the worker's stderr on to this JVM's log, one line at a time
+     */
+    private static void forwardLog(Worker worker) {
+        Thread thread = new Thread(() -> {
+            EngineLog log = OrgChartEngine.log("RenderWorker");
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(worker.process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.startsWith("SEVERE") || line.startsWith("WARNING")) {
+                        log.warn("[worker " + worker.id + "] " + line);
+                    } else {
+                        log.info("[worker " + worker.id + "] " + line);
+                    }
+                }
+            } catch (IOException e) {
+                // The worker is gone
+            }
+        }, "RenderWorkerPool-log-" + worker.id);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void stop(Worker worker) {
+        try {
+            // Closing stdin lets the worker exit on its own
+            worker.requests.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        try {
+            if (!worker.process.waitFor(2, TimeUnit.SECONDS)) {
+                worker.process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            worker.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reject new jobs, stop the idle workers and wait for the jobs in progress (each at
+     * most its timeout), whose workers are stopped as they finish; then stop the watchdog.
+     * The next getInstance() configures a new shared pool.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (RenderWorkerPool.class) {
+            if (instance == this) {
+                instance = null;
+                configured = false;
+            }
+        }
+        List<Worker> workers;
+        synchronized (idle) {
+            workers = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (Worker worker : workers) {
+            stop(worker);
+        }
+        // Holding every slot means no job is left to schedule a timeout
+        slots.acquireUninterruptibly(size);
+        try {
+            watchdog.shutdown();
+        } finally {
+            // Jobs still waiting for a slot see that the pool is closed
+            slots.release(size);
+        }
+    }
+}
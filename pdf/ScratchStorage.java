@@ -0,0 +1,89 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where a render keeps the streams of its document until it is saved.
+ *
+ * Each document gets its own PDFBox scratch file: content streams, forms, font subsets
+ * and images are held in memory up to orgchart.scratch.maxMemoryBytes (default 64 MB)
+ * and spill to a temporary file beyond that, so a giant chart costs disk I/O instead
+ * of heap. 0 keeps everything on disk and -1 everything in memory, as PDFBox does by
+ * default. orgchart.scratch.maxStorageBytes (default unlimited) caps memory and disk
+ * together. RenderWorkerPool buffers the PDFs coming back from its workers the same way.
+ *
+ * The temporary files live in orgchart.scratch.dir (default orgchart-scratch in the
+ * engine's temp directory) and are deleted when the document is closed. Files left by
+ * a JVM that was killed mid-render are removed once they are a day old.
+ */
+class ScratchStorage {
+
+    static final long MAX_MEMORY_BYTES = Long.getLong("orgchart.scratch.maxMemoryBytes", 64L * 1024 * 1024);
+    static final long MAX_STORAGE_BYTES = Long.getLong("orgchart.scratch.maxStorageBytes", -1L);
+
+    private static final long STALE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile File directory;
+
+    private ScratchStorage() {
+    }
+
+    /**
+     * Stream cache for a new PDDocument or a worker's PDF; closing it (or the document)
+     * deletes its temporary file
+     */
+    static RandomAccessStreamCache.StreamCacheCreateFunction streamCache() {
+        File dir = MAX_MEMORY_BYTES >= 0 ? directory() : null;
+        if (dir == null) {
+            return IOUtils.createMemoryOnlyStreamCache();
+        }
+        MemoryUsageSetting setting = MAX_MEMORY_BYTES == 0
+                ? MemoryUsageSetting.setupTempFileOnly(MAX_STORAGE_BYTES)
+                : MemoryUsageSetting.setupMixed(MAX_MEMORY_BYTES, MAX_STORAGE_BYTES);
+        return setting.setTempDir(dir).streamCache;
+    }
+
+    /**
+     * The scratch directory, created and cleared of stale files on first use; null if it
+     * cannot be created, in which case documents stay in memory
+     */
+    private static File directory() {
+        File dir = directory;
+        if (dir == null) {
+            synchronized (ScratchStorage.class) {
+                dir = directory;
+                if (dir == null) {
+                    String configured = System.getProperty("orgchart.scratch.dir", "").trim();
+                    dir = !configured.isEmpty()
+                            ? new File(configured)
+                            : new File(OrgChartEngine.getInstance().getResources().getTempDirectory(), "orgchart-scratch");
+                    if (!dir.isDirectory() && !dir.mkdirs()) {
+                        OrgChartEngine.log("ScratchStorage").warn("Cannot create scratch directory " + dir + "; documents stay in memory");
+                        return null;
+                    }
+                    deleteStale(dir);
+                    directory = dir;
+                }
+            }
+        }
+        return dir;
+    }
+
+    private static void deleteStale(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("PDFBox") && name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - STALE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                OrgChartEngine.log("ScratchStorage").warn("Cannot delete stale scratch file " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * What was shown in one font on pages or forms whose glyphs must end up in another
+ * instance's subset: the code points, and the glyph IDs GSUB substituted for some of
+ * them (ligatures such as "fl"). The subsetter maps code points through the cmap only,
+ * so a substituted glyph that is not added by ID is embedded as .notdef.
+ */
+class ShownText {
+
+    private final BitSet codePoints = new BitSet();
+    private final BitSet glyphIds = new BitSet();
+
+    /**
+     * Record text shown with the given substituted glyphs (see ContentWriter.showText)
+     */
+    void add(String text, Set<Integer> substituted) {
+        text.codePoints().forEach(codePoints::set);
+        for (int glyphId : substituted) {
+            glyphIds.set(glyphId);
+        }
+    }
+
+    void addAll(ShownText other) {
+        codePoints.or(other.codePoints);
+        glyphIds.or(other.glyphIds);
+    }
+
+    /**
+     * Add everything recorded to the font's subset
+     */
+    void addToSubset(PDFont font) {
+        codePoints.stream().forEach(font::addToSubset);
+        if (!glyphIds.isEmpty() && font instanceof PDType0Font) {
+            ((PDType0Font) font).addGlyphsToSubset(glyphIds.stream().boxed().collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Approximate size in bytes, for cache accounting
+     */
+    long size() {
+        return (codePoints.size() + glyphIds.size()) / 8;
+    }
+}
@@ -47,6 +47,10 @@ public class Style {
     // Children row styles
     public static final float CHILDREN_ROW_MARGIN_TOP = 45f;  // More vertical space between levels (50% increase)
     
+    // Markers next to a node: continuation pages of tiled output, hidden-subtree badges of scoped renders
+    public static final float CONTINUATION_FONT_SIZE = 17f;
+    public static final float CONTINUATION_MARGIN = 8f;
+    
     // Footer styles - made very readable
     public static final float FOOTER_MARGIN_TOP = 40f;  // Increased from 30
     public static final float FOOTER_PADDING_HORIZONTAL = 0f;  // No extra padding - align with title
@@ -59,11 +63,11 @@ public class Style {
     public static final float NODE_WIDTH_EFFECTIVE = NODE_WIDTH + (NODE_CONTAINER_PADDING_HORIZONTAL * 2);
     public static final float NODE_HEIGHT_EFFECTIVE = NODE_HEIGHT + (NODE_CONTAINER_PADDING_VERTICAL * 2) + CHILDREN_ROW_MARGIN_TOP;
     
-    // Page size constants - unlimited, will auto-fit
+    // Page size constants - auto-fit up to the largest page PDF allows, tiled beyond that
     public static final float MIN_PAGE_WIDTH = 1190f;
     public static final float MIN_PAGE_HEIGHT = 842f;
-    public static final float MAX_PAGE_WIDTH = 20000f;  // Very large, effectively unlimited
-    public static final float MAX_PAGE_HEIGHT = 20000f; // Very large, effectively unlimited
+    public static final float MAX_PAGE_WIDTH = 14400f;  // PDF limit for page dimensions (200 inches)
+    public static final float MAX_PAGE_HEIGHT = 14400f; // PDF limit for page dimensions (200 inches)
     public static final float PAGE_WIDTH_EXTRA = 500f;  // Increased for margins
     public static final float PAGE_HEIGHT_EXTRA = 500f; // Increased for margins
     public static final float PAGE_EXTRA_HORIZONTAL_PADDING = 200f; // Extra padding on left/right of the whole chart
@@ -0,0 +1,181 @@
+package myfirstmodule.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of drawn department subtrees, keyed by a structural hash of the
+ * subtree: PositionIDs, names, norms, title codes, badges and the shape of the tree.
+ *
+ * A subtree's layout relative to its own root depends only on the subtree, in both
+ * layout modes, so its drawing (boxes, texts, badges and the connectors inside it) can
+ * be replayed wherever the subtree ends up. The renderer keeps the compressed content
+ * stream of each form XObject it draws for a subtree, together with the resource names
+ * it uses and the characters it shows; a later render containing the same subtree
+ * rebuilds the form from that without wrapping, measuring or encoding any text.
+ *
+ * The cache saves drawing only: every render still parses and lays out the whole chart
+ * and hashes each node once (see Keys), which is linear and small next to drawing. On
+ * tiled pages the continuation markers are drawn over the forms, so a cut subtree is
+ * cached like any other. A form's content is compressed on its own rather than with the
+ * page, so a chart drawn with forms comes out larger than one drawn node by node.
+ *
+ * Only subtrees of at least orgchart.subtreeCache.minNodes positions (default 4) are
+ * drawn as forms. The cache holds at most orgchart.subtreeCache.maxBytes (default
+ * 32 MB) of content and evicts the least recently used subtrees beyond that; 0 turns
+ * subtree forms off.
+ */
+class SubtreeCache {
+
+    static final long MAX_BYTES = Long.getLong("orgchart.subtreeCache.maxBytes", 32L * 1024 * 1024);
+    static final int MIN_NODES = Integer.getInteger("orgchart.subtreeCache.minNodes", 4);
+
+    private static final LinkedHashMap<String, Entry> SUBTREES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes;
+
+    /**
+     * A drawn subtree: the filtered content stream in coordinates relative to the top left
+     * corner of the subtree root's box, its bounding box, the resources it refers to by
+     * name (true for the bold font, false for the regular one, or a node box style) and
+     * the code points and substituted glyphs shown in each font
+     */
+    static class Entry {
+        final byte[] content;
+        final float[] bbox;
+        final Map<COSName, Boolean> fonts;
+        final Map<COSName, Object> forms;
+        final ShownText regularShown;
+        final ShownText boldShown;
+
+        Entry(byte[] content, float[] bbox, Map<COSName, Boolean> fonts, Map<COSName, Object> forms,
+              ShownText regularShown, ShownText boldShown) {
+            this.content = content;
+            this.bbox = bbox;
+            this.fonts = fonts;
+            this.forms = forms;
+            this.regularShown = regularShown;
+            this.boldShown = boldShown;
+        }
+
+        long size() {
+            return content.length + regularShown.size() + boldShown.size();
+        }
+    }
+
+    private SubtreeCache() {
+    }
+
+    /**
+     * Whether the node's subtree is large enough to be drawn as a form
+     */
+    static boolean enabled(int nodeCount) {
+        return MAX_BYTES > 0 && nodeCount >= MIN_NODES;
+    }
+
+    /**
+     * Keys of the subtrees of one tree for one layout mode, by pre-order index. Each node
+     * gets a 128-bit hash of its PositionID, name, norm, title code, badges and child
+     * count, combined with the hashes of its children in order, so one bottom-up pass
+     * gives the key of every subtree at every level and a node is hashed once, not once
+     * for each subtree above it. The hash is not cryptographic; at 128 bits a collision
+     * between two subtrees of real org data is not a practical concern.
+     */
+    static class Keys {
+        private final String prefix;
+        private final long[] hashes;
+
+        private Keys(String prefix, long[] hashes) {
+            this.prefix = prefix;
+            this.hashes = hashes;
+        }
+
+        String get(int index) {
+            return prefix + hex(hashes[2 * index]) + hex(hashes[2 * index + 1]);
+        }
+
+        private static String hex(long value) {
+            String digits = Long.toHexString(value);
+            return "0000000000000000".substring(digits.length()) + digits;
+        }
+    }
+
+    static Keys keys(TreeAnalytics tree, OrgChartLayout.Mode mode) {
+        long[] hashes = new long[2 * tree.size()];
+        for (int i = tree.size() - 1; i >= 0; i--) {
+            Position position = tree.node(i);
+            long[] lanes = {0x243F6A8885A308D3L, 0x13198A2E03707344L};
+            add(lanes, tree.childCount(i));
+            add(lanes, position.getPositionID());
+            add(lanes, position.getPositionName());
+            add(lanes, position.getNorm());
+            add(lanes, position.getTitleCode());
+            add(lanes, position.getHiddenCount());
+            add(lanes, position.getHiddenNorm());
+            for (int k = 0; k < tree.childCount(i); k++) {
+                int child = tree.child(i, k);
+                add(lanes, hashes[2 * child]);
+                add(lanes, hashes[2 * child + 1]);
+            }
+            hashes[2 * i] = finish(lanes[0]);
+            hashes[2 * i + 1] = finish(lanes[1]);
+        }
+        return new Keys(RenderCache.key().text("subtree").option(mode).build(), hashes);
+    }
+
+    private static void add(long[] lanes, String value) {
+        if (value == null) {
+            add(lanes, -1L);
+            return;
+        }
+        add(lanes, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            add(lanes, value.charAt(i));
+        }
+    }
+
+    private static void add(long[] lanes, Integer value) {
+        add(lanes, value != null ? value.longValue() ^ 0x5555555555555555L : -1L);
+    }
+
+    private static void add(long[] lanes, long value) {
+        lanes[0] = Long.rotateLeft((lanes[0] ^ value) * 0x9E3779B97F4A7C15L, 29);
+        lanes[1] = Long.rotateLeft((lanes[1] ^ value) * 0xC2B2AE3D27D4EB4FL, 31);
+    }
+
+    /**
+     * Murmur3's 64-bit finalizer, so that every input bit reaches every output bit
+     */
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC5L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static Entry get(String key) {
+        synchronized (SUBTREES) {
+            return SUBTREES.get(key);
+        }
+    }
+
+    static void put(String key, Entry entry) {
+        long size = entry.size();
+        if (size > MAX_BYTES) {
+            return;
+        }
+        synchronized (SUBTREES) {
+            Entry previous = SUBTREES.put(key, entry);
+            cachedBytes += size - (previous != null ? previous.size() : 0);
+            Iterator<Map.Entry<String, Entry>> eldest = SUBTREES.entrySet().iterator();
+            while (cachedBytes > MAX_BYTES && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().size();
+                eldest.remove();
+            }
+        }
+    }
+}
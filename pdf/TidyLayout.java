@@ -0,0 +1,237 @@
+package myfirstmodule.pdf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact tree layout (Reingold-Tilford as improved by Walker, in the linear-time form
+ * of Buchheim, Jünger and Leipert).
+ *
+ * Subtrees are pushed together until their contours are one NODE_WIDTH_EFFECTIVE apart
+ * on every level, instead of giving each leaf its own column. Parents are centered over
+ * their first and last child and levels stay aligned, so the result plugs into the same
+ * NodeLayout contract and connector drawing as the classic layout.
+ *
+ * Neither walk recurses, so very deep organizations cannot overflow the stack.
+ */
+class TidyLayout {
+
+    private static final float DISTANCE = Style.NODE_WIDTH_EFFECTIVE;
+    private static final float LEVEL_HEIGHT = Style.NODE_HEIGHT
+            + Style.NODE_CONTAINER_PADDING_VERTICAL * 2 + Style.CHILDREN_ROW_MARGIN_TOP;
+
+    private static class Node {
+        final int index;
+        final Node parent;
+        final int number;
+        final int level;
+        Node[] children;
+        float prelim;
+        float mod;
+        float change;
+        float shift;
+        Node thread;
+        Node ancestor;
+
+        Node(int index, Node parent, int number, int level) {
+            this.index = index;
+            this.parent = parent;
+            this.number = number;
+            this.level = level;
+            this.ancestor = this;
+        }
+
+        boolean isLeaf() {
+            return children.length == 0;
+        }
+
+        Node leftSibling() {
+            return number > 0 ? parent.children[number - 1] : null;
+        }
+
+        Node leftmostSibling() {
+            return parent != null ? parent.children[0] : this;
+        }
+
+        Node nextLeft() {
+            return children.length > 0 ? children[0] : thread;
+        }
+
+        Node nextRight() {
+            return children.length > 0 ? children[children.length - 1] : thread;
+        }
+    }
+
+    /**
+     * Per-node state of the first walk: the next child to visit and the default ancestor
+     */
+    private static class Frame {
+        final Node node;
+        int next;
+        Node defaultAncestor;
+
+        Frame(Node node) {
+            this.node = node;
+            this.defaultAncestor = node.children.length > 0 ? node.children[0] : null;
+        }
+    }
+
+    /**
+     * Place every node of the tree; the leftmost box starts at startX, the root's top at startY
+     */
+    static void layout(TreeAnalytics tree, float startX, float startY, LayoutStore store) {
+        Node[] nodes = build(tree);
+        firstWalk(nodes[0]);
+
+        // Second walk: absolute x = prelim + sum of the ancestors' modifiers.
+        // Parents come before children in pre-order, so one forward pass suffices.
+        int n = nodes.length;
+        float[] modSums = new float[n];
+        float minCenter = Float.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Node v = nodes[i];
+            if (v.parent != null) {
+                modSums[i] = modSums[v.parent.index] + v.parent.mod;
+            }
+            store.x[i] = v.prelim + modSums[i];
+            minCenter = Math.min(minCenter, store.x[i]);
+        }
+
+        for (int i = 0; i < n; i++) {
+            int level = nodes[i].level;
+            store.set(i, startX + (store.x[i] - minCenter), startY - level * LEVEL_HEIGHT,
+                    Style.NODE_WIDTH, Style.NODE_HEIGHT, level);
+        }
+    }
+
+    private static Node[] build(TreeAnalytics tree) {
+        Node[] nodes = new Node[tree.size()];
+        nodes[0] = new Node(0, null, 0, 0);
+        for (int i = 0; i < nodes.length; i++) {
+            Node v = nodes[i];
+            int count = tree.childCount(i);
+            v.children = new Node[count];
+            for (int k = 0; k < count; k++) {
+                int child = tree.child(i, k);
+                nodes[child] = new Node(child, v, k, v.level + 1);
+                v.children[k] = nodes[child];
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Post-order pass computing preliminary x coordinates and modifiers. Each child is
+     * apportioned against its left siblings right after its own subtree is finished,
+     * before the next sibling is visited, exactly as in the recursive formulation.
+     */
+    private static void firstWalk(Node tree) {
+        List<Frame> stack = new ArrayList<>();
+        stack.add(new Frame(tree));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            Node v = frame.node;
+            if (frame.next < v.children.length) {
+                stack.add(new Frame(v.children[frame.next]));
+                continue;
+            }
+
+            Node left = v.leftSibling();
+            if (v.isLeaf()) {
+                v.prelim = left != null ? left.prelim + DISTANCE : 0;
+            } else {
+                executeShifts(v);
+                float midpoint = (v.children[0].prelim + v.children[v.children.length - 1].prelim) / 2f;
+                if (left != null) {
+                    v.prelim = left.prelim + DISTANCE;
+                    v.mod = v.prelim - midpoint;
+                } else {
+                    v.prelim = midpoint;
+                }
+            }
+
+            stack.remove(stack.size() - 1);
+            if (!stack.isEmpty()) {
+                Frame parent = stack.get(stack.size() - 1);
+                parent.defaultAncestor = apportion(v, parent.defaultAncestor);
+                parent.next++;
+            }
+        }
+    }
+
+    /**
+     * Push the subtree of v to the right until it clears the subtrees of its left siblings
+     */
+    private static Node apportion(Node v, Node defaultAncestor) {
+        Node w = v.leftSibling();
+        if (w == null) {
+            return defaultAncestor;
+        }
+
+        Node vir = v;
+        Node vor = v;
+        Node vil = w;
+        Node vol = v.leftmostSibling();
+        float sir = vir.mod;
+        float sor = vor.mod;
+        float sil = vil.mod;
+        float sol = vol.mod;
+
+        while (vil.nextRight() != null && vir.nextLeft() != null) {
+            vil = vil.nextRight();
+            vir = vir.nextLeft();
+            vol = vol.nextLeft();
+            vor = vor.nextRight();
+            vor.ancestor = v;
+            float shift = (vil.prelim + sil) - (vir.prelim + sir) + DISTANCE;
+            if (shift > 0) {
+                moveSubtree(ancestor(vil, v, defaultAncestor), v, shift);
+                sir += shift;
+                sor += shift;
+            }
+            sil += vil.mod;
+            sir += vir.mod;
+            sol += vol.mod;
+            sor += vor.mod;
+        }
+
+        if (vil.nextRight() != null && vor.nextRight() == null) {
+            vor.thread = vil.nextRight();
+            vor.mod += sil - sor;
+        }
+        if (vir.nextLeft() != null && vol.nextLeft() == null) {
+            vol.thread = vir.nextLeft();
+            vol.mod += sir - sol;
+            defaultAncestor = v;
+        }
+        return defaultAncestor;
+    }
+
+    private static void moveSubtree(Node wl, Node wr, float shift) {
+        int subtrees = wr.number - wl.number;
+        wr.change -= shift / subtrees;
+        wr.shift += shift;
+        wl.change += shift / subtrees;
+        wr.prelim += shift;
+        wr.mod += shift;
+    }
+
+    /**
+     * Apply the shifts recorded by moveSubtree to the children in between, in one right-to-left pass
+     */
+    private static void executeShifts(Node v) {
+        float shift = 0;
+        float change = 0;
+        for (int i = v.children.length - 1; i >= 0; i--) {
+            Node w = v.children[i];
+            w.prelim += shift;
+            w.mod += shift;
+            change += w.change;
+            shift += w.shift + change;
+        }
+    }
+
+    private static Node ancestor(Node vil, Node v, Node defaultAncestor) {
+        return vil.ancestor.parent == v.parent ? vil.ancestor : defaultAncestor;
+    }
+}
@@ -0,0 +1,284 @@
+package myfirstmodule.pdf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-node statistics of an org tree, computed in one iterative traversal.
+ *
+ * For every node: level, subtree height, leaf count, node count and subtree norm; for
+ * the tree: width of every level. Nodes are numbered in pre-order (parents before
+ * children, siblings left to right), the same order the recursive helpers used, so
+ * callers can walk the tree from the stored order without recursion.
+ * A node reachable twice (a malformed, cyclic input) is only counted the first time.
+ */
+public class TreeAnalytics {
+
+    private final Position[] order;
+    private final Map<Position, Integer> indexOf;
+    private final int[] parent;
+    private final int[] level;
+    private final int[] height;
+    private final int[] leafCount;
+    private final int[] nodeCount;
+    private final int[] norm;
+    private final int[] levelWidths;
+    private final int[] childStart;
+    private final int[] children;
+
+    private TreeAnalytics(Position[] order, Map<Position, Integer> indexOf, int[] parent, int[] level,
+                          int[] height, int[] leafCount, int[] nodeCount, int[] norm, int[] levelWidths) {
+        this.order = order;
+        this.indexOf = indexOf;
+        this.parent = parent;
+        this.level = level;
+        this.height = height;
+        this.leafCount = leafCount;
+        this.nodeCount = nodeCount;
+        this.norm = norm;
+        this.levelWidths = levelWidths;
+
+        // Children of every node in one flat array; ascending pre-order keeps sibling order
+        int n = order.length;
+        this.childStart = new int[n + 1];
+        for (int i = 1; i < n; i++) {
+            childStart[parent[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        this.children = new int[Math.max(0, n - 1)];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 1; i < n; i++) {
+            children[fill[parent[i]]++] = i;
+        }
+    }
+
+    /**
+     * Analyze the tree below root: one pre-order walk to number the nodes, then one
+     * reverse sweep (a post-order for aggregation) to sum every subtree
+     */
+    public static TreeAnalytics of(Position root) {
+        List<Position> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Map<Position, Integer> indexOf = new IdentityHashMap<>();
+
+        if (root != null) {
+            List<Position> stack = new ArrayList<>();
+            List<Integer> stackParents = new ArrayList<>();
+            stack.add(root);
+            stackParents.add(-1);
+            while (!stack.isEmpty()) {
+                Position node = stack.remove(stack.size() - 1);
+                int parentIndex = stackParents.remove(stackParents.size() - 1);
+                if (indexOf.putIfAbsent(node, nodes.size()) != null) {
+                    continue;
+                }
+                nodes.add(node);
+                parents.add(parentIndex);
+                int index = nodes.size() - 1;
+                List<Position> children = node.getPositions();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    if (children.get(i) != null) {
+                        stack.add(children.get(i));
+                        stackParents.add(index);
+                    }
+                }
+            }
+        }
+
+        return of(nodes, parents, indexOf);
+    }
+
+    /**
+     * Analyze a tree already listed in pre-order, with the index of each node's parent
+     * (-1 for the root), such as one built while copying part of another tree
+     */
+    static TreeAnalytics of(List<Position> nodes, List<Integer> parents) {
+        Map<Position, Integer> indexOf = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            indexOf.put(nodes.get(i), i);
+        }
+        return of(nodes, parents, indexOf);
+    }
+
+    private static TreeAnalytics of(List<Position> nodes, List<Integer> parents, Map<Position, Integer> indexOf) {
+        int n = nodes.size();
+        int[] parent = new int[n];
+        int[] level = new int[n];
+        int maxLevel = -1;
+        for (int i = 0; i < n; i++) {
+            parent[i] = parents.get(i);
+            level[i] = parent[i] < 0 ? 0 : level[parent[i]] + 1;
+            maxLevel = Math.max(maxLevel, level[i]);
+        }
+
+        int[] levelWidths = new int[maxLevel + 1];
+        int[] height = new int[n];
+        int[] leafCount = new int[n];
+        int[] nodeCount = new int[n];
+        int[] norm = new int[n];
+        Arrays.fill(height, 1);
+
+        // Children always come after their parent, so a reverse sweep sees every subtree complete
+        for (int i = n - 1; i >= 0; i--) {
+            levelWidths[level[i]]++;
+            nodeCount[i]++;
+            if (leafCount[i] == 0) {
+                leafCount[i] = 1;
+            }
+            Integer value = nodes.get(i).getNorm();
+            norm[i] += (value != null ? value : 0) + nodes.get(i).getHiddenNorm();
+
+            int p = parent[i];
+            if (p >= 0) {
+                height[p] = Math.max(height[p], height[i] + 1);
+                leafCount[p] += leafCount[i];
+                nodeCount[p] += nodeCount[i];
+                norm[p] += norm[i];
+            }
+        }
+
+        return new TreeAnalytics(nodes.toArray(new Position[0]), indexOf, parent, level,
+                height, leafCount, nodeCount, norm, levelWidths);
+    }
+
+    /**
+     * Number of nodes in the tree
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Nodes in pre-order: parents before children, siblings left to right
+     */
+    public List<Position> preOrder() {
+        return Collections.unmodifiableList(Arrays.asList(order));
+    }
+
+    /**
+     * Parent of the node within the analyzed tree, or null for the root
+     */
+    public Position getParent(Position node) {
+        int i = index(node);
+        return i >= 0 && parent[i] >= 0 ? order[parent[i]] : null;
+    }
+
+    /**
+     * Number of levels of the whole tree (a single node has depth 1)
+     */
+    public int getDepth() {
+        return levelWidths.length;
+    }
+
+    /**
+     * Number of nodes on the widest level
+     */
+    public int getMaxLevelWidth() {
+        int max = 0;
+        for (int width : levelWidths) {
+            max = Math.max(max, width);
+        }
+        return max;
+    }
+
+    /**
+     * Number of nodes on the given level (the root is level 0)
+     */
+    public int getLevelWidth(int level) {
+        return level >= 0 && level < levelWidths.length ? levelWidths[level] : 0;
+    }
+
+    /**
+     * Sum of Norm over the whole tree, including positions a scoped render left out
+     */
+    public int getTotalNorm() {
+        return order.length > 0 ? norm[0] : 0;
+    }
+
+    /**
+     * Level of the node (the root is level 0), or -1 if it is not in the tree
+     */
+    public int getLevel(Position node) {
+        int i = index(node);
+        return i >= 0 ? level[i] : -1;
+    }
+
+    /**
+     * Number of levels in the node's subtree (a leaf has height 1)
+     */
+    public int getHeight(Position node) {
+        int i = index(node);
+        return i >= 0 ? height[i] : 0;
+    }
+
+    /**
+     * Number of leaves in the node's subtree (a leaf counts itself)
+     */
+    public int getLeafCount(Position node) {
+        int i = index(node);
+        return i >= 0 ? leafCount[i] : 0;
+    }
+
+    /**
+     * Number of nodes in the node's subtree, including the node
+     */
+    public int getNodeCount(Position node) {
+        int i = index(node);
+        return i >= 0 ? nodeCount[i] : 0;
+    }
+
+    /**
+     * Sum of Norm over the node's subtree, including the node
+     */
+    public int getSubtreeNorm(Position node) {
+        int i = index(node);
+        return i >= 0 ? norm[i] : 0;
+    }
+
+    /**
+     * Pre-order index of the node, or -1 if it is not in the tree
+     */
+    int index(Position node) {
+        Integer i = node != null ? indexOf.get(node) : null;
+        return i != null ? i : -1;
+    }
+
+    Position node(int index) {
+        return order[index];
+    }
+
+    /**
+     * Index of the parent, or -1 for the root
+     */
+    int parentIndex(int index) {
+        return parent[index];
+    }
+
+    int levelOf(int index) {
+        return level[index];
+    }
+
+    /**
+     * Number of nodes in the subtree at the index; they are the indexes index..index+count-1
+     */
+    int nodeCount(int index) {
+        return nodeCount[index];
+    }
+
+    int childCount(int index) {
+        return childStart[index + 1] - childStart[index];
+    }
+
+    /**
+     * Index of the k-th child of the node
+     */
+    int child(int index, int k) {
+        return children[childStart[index] + k];
+    }
+}
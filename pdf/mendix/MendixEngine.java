@@ -0,0 +1,77 @@
+package myfirstmodule.pdf.mendix;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import myfirstmodule.pdf.EngineLog;
+import myfirstmodule.pdf.OrgChartEngine;
+
+import java.io.File;
+
+/**
+ * The render engine inside the Mendix runtime: logs go to Mendix log nodes, fonts are
+ * also found under the deployment's resources directory and temporary files go to the
+ * runtime's temp path. The Java actions call get() before anything else is rendered.
+ */
+public class MendixEngine {
+
+    private static volatile OrgChartEngine engine;
+
+    private MendixEngine() {
+    }
+
+    /**
+     * The Mendix engine, installed as the engine of this JVM on first use
+     */
+    public static OrgChartEngine get() {
+        OrgChartEngine current = engine;
+        if (current == null) {
+            synchronized (MendixEngine.class) {
+                current = engine;
+                if (current == null) {
+                    String base = Core.getConfiguration().getResourcesPath().getAbsolutePath();
+                    current = new OrgChartEngine(MendixLog::new, new OrgChartEngine.DirectoryResources(
+                            Core.getConfiguration().getTempPath(),
+                            new File(base, "font"),
+                            new File(base, "fonts"),
+                            new File("resources" + File.separator + "font")));
+                    OrgChartEngine.install(current);
+                    engine = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static class MendixLog implements EngineLog {
+        private final ILogNode node;
+
+        MendixLog(String name) {
+            this.node = Core.getLogger(name);
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+            return node.isTraceEnabled();
+        }
+
+        @Override
+        public void trace(String message) {
+            node.trace(message);
+        }
+
+        @Override
+        public void info(String message) {
+            node.info(message);
+        }
+
+        @Override
+        public void warn(String message) {
+            node.warn(message);
+        }
+
+        @Override
+        public void error(String message, Throwable cause) {
+            node.error(message, cause);
+        }
+    }
+}